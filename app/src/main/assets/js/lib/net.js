@@ -14,4 +14,14 @@ function http(url, options = {}) {
             url
         }
     })
-};
\ No newline at end of file
+};
+
+// 异步请求, 返回 Promise, 不阻塞爬虫所在的 JS 线程
+let reqAsync = (url, options) => http(url, Object.assign({}, options, {
+    async: true
+}));
+
+// 并发请求多个地址, 按传入顺序返回结果; 每项可以是地址字符串或 {url, options}
+function batchReq(list) {
+    return Promise.all((list || []).map(item => typeof item === 'string' ? reqAsync(item) : reqAsync(item.url, item.options)))
+};
@@ -0,0 +1,105 @@
+package com.github.catvod.crawler;
+
+import com.github.tvbox.osc.base.App;
+import com.github.tvbox.osc.util.LOG;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dalvik.system.DexClassLoader;
+import java9.util.concurrent.CompletableFuture;
+
+/**
+ * jar 下载完成或在缓存里找到时立即在后台线程创建 DexClassLoader 完成 dex 优化, 调用方通过 future 等待 "jar 可用",
+ * 不再 sleep 重试; 每个 jar 的优化/等待/初始化耗时在初始化完成后写入日志
+ */
+public class DexPreloader {
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private static final ConcurrentHashMap<String, CompletableFuture<DexClassLoader>> preparing = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Timing> timings = new ConcurrentHashMap<>();
+
+    static class Timing {
+        public final String jar;
+        public volatile long optimizeMs;
+        public volatile long waitMs;
+        public volatile long initMs;
+
+        Timing(String jar) {
+            this.jar = jar;
+        }
+
+        @Override
+        public String toString() {
+            return new File(jar).getName() + " 优化 " + optimizeMs + "ms, 等待 " + waitMs + "ms, 初始化 " + initMs + "ms";
+        }
+    }
+
+    /**
+     * 在后台开始优化 jar, 重复调用返回同一个 future
+     *
+     * @param probeClass 优化完成后预先加载的类, 让第一次 loadClass 不再阻塞
+     */
+    public static CompletableFuture<DexClassLoader> prepare(String jar, String optDir, String probeClass) {
+        return preparing.computeIfAbsent(versionKey(jar), k -> CompletableFuture.supplyAsync(() -> create(jar, optDir, probeClass), executor));
+    }
+
+    /**
+     * 等待 jar 可用, 返回的 ClassLoader 只交给一个调用方, 之后再加载同一文件会重新创建
+     *
+     * @throws Exception 无法加载 probeClass 时抛出, 不会返回不可用的 ClassLoader
+     */
+    public static DexClassLoader await(String jar, String optDir, String probeClass) throws Exception {
+        long start = System.currentTimeMillis();
+        CompletableFuture<DexClassLoader> future = prepare(jar, optDir, probeClass);
+        try {
+            return future.get();
+        } finally {
+            preparing.remove(versionKey(jar), future);
+            timing(jar).waitMs = System.currentTimeMillis() - start;
+        }
+    }
+
+    public static void recordInit(String jar, long ms) {
+        Timing timing = timing(jar);
+        timing.initMs = ms;
+        LOG.i("DexPreloader", timing.toString());
+    }
+
+    /**
+     * 同一路径的 jar 可能被替换, 用修改时间和大小区分版本
+     */
+    private static String versionKey(String jar) {
+        File file = new File(jar);
+        return jar + "@" + file.lastModified() + ":" + file.length();
+    }
+
+    private static Timing timing(String jar) {
+        Timing timing = timings.get(jar);
+        if (timing == null) {
+            timing = new Timing(jar);
+            Timing old = timings.putIfAbsent(jar, timing);
+            if (old != null)
+                timing = old;
+        }
+        return timing;
+    }
+
+    private static DexClassLoader create(String jar, String optDir, String probeClass) {
+        long start = System.currentTimeMillis();
+        File cacheDir = new File(optDir);
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+        DexClassLoader classLoader = new DexClassLoader(jar, cacheDir.getAbsolutePath(), null, App.getInstance().getClassLoader());
+        try {
+            // DexClassLoader 构造时已同步完成优化, 找不到类说明 jar 本身有问题, 重试也没用
+            classLoader.loadClass(probeClass);
+            return classLoader;
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(new File(jar).getName() + " 中找不到 " + probeClass, e);
+        } finally {
+            timing(jar).optimizeMs = System.currentTimeMillis() - start;
+        }
+    }
+}
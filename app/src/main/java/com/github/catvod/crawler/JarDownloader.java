@@ -0,0 +1,92 @@
+package com.github.catvod.crawler;
+
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.util.MD5;
+import com.lzy.okgo.OkGo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+import okhttp3.Response;
+
+/**
+ * 站点 jar 下载: 边下载边计算 MD5, 写入临时文件后再原子重命名, 避免并发调用者读到写了一半的 jar;
+ * MD5 与配置不符的下载直接丢弃
+ */
+public class JarDownloader {
+
+    /**
+     * 不要在主线程调用我
+     *
+     * @param url    jar 地址
+     * @param md5    期望的 md5, 为空时总是重新下载
+     * @param target 本地缓存文件
+     * @return 可用的本地 jar, 失败返回 null
+     */
+    public static File fetch(String url, String md5, File target) {
+        if (!md5.isEmpty() && target.exists() && MD5.getFileMd5(target).equalsIgnoreCase(md5))
+            return target;
+        File dir = target.getParentFile();
+        if (dir != null && !dir.exists())
+            dir.mkdirs();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(target.getName(), ".tmp", dir);
+            Response response = OkGo.<File>get(url).execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                response.close();
+                tmp.delete();
+                return target.exists() ? target : null;
+            }
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            InputStream is = response.body().byteStream();
+            OutputStream os = new FileOutputStream(tmp);
+            try {
+                byte[] buffer = new byte[8192];
+                int length;
+                while ((length = is.read(buffer)) != -1) {
+                    os.write(buffer, 0, length);
+                    digest.update(buffer, 0, length);
+                }
+            } finally {
+                try {
+                    is.close();
+                    os.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            String actual = toHex(digest.digest());
+            if (!md5.isEmpty() && !md5.equalsIgnoreCase(actual)) {
+                // 下载不完整或被篡改, 丢弃, 保留原来的 jar
+                LOG.e("jar md5 不一致: " + url + " 期望 " + md5 + " 实际 " + actual);
+                tmp.delete();
+                return target.exists() ? target : null;
+            }
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                return target.exists() ? target : null;
+            }
+            return target;
+        } catch (Throwable e) {
+            e.printStackTrace();
+            if (tmp != null)
+                tmp.delete();
+        }
+        return target.exists() ? target : null;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            int v = b & 0xff;
+            if (v < 16)
+                sb.append('0');
+            sb.append(Integer.toHexString(v));
+        }
+        return sb.toString();
+    }
+}
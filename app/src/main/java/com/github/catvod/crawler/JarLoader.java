@@ -4,14 +4,10 @@ import android.content.Context;
 
 import com.github.tvbox.osc.base.App;
 import com.github.tvbox.osc.util.MD5;
-import com.lzy.okgo.OkGo;
 
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -19,116 +15,188 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import dalvik.system.DexClassLoader;
-import okhttp3.Response;
+import java9.util.concurrent.CompletableFuture;
 
 public class JarLoader {
+    private static final String INIT_CLASS = "com.github.catvod.spider.Init";
     private ConcurrentHashMap<String, DexClassLoader> classLoaders = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, Method> proxyMethods = new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, Spider> spiders = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, CompletableFuture<DexClassLoader>> loading = new ConcurrentHashMap<>();
+    // 站点 key -> 所属 jar key, 主 jar 更新时只重建来自主 jar 的爬虫
+    private ConcurrentHashMap<String, String> spiderJars = new ConcurrentHashMap<>();
+    // jar key -> 已加载的站点 jar 的 md5, 配置里的 md5 变化时换掉旧的 ClassLoader
+    private ConcurrentHashMap<String, String> jarMd5s = new ConcurrentHashMap<>();
     private volatile String recentJarKey = "";
+    private volatile String mainJarMd5 = "";
 
     /**
      * 不要在主线程调用我
+     * 主 jar 内容未变化时保留已加载的 ClassLoader 和爬虫
      *
      * @param cache
      */
     public boolean load(String cache) {
-        spiders.clear();
+        String md5 = MD5.getFileMd5(new File(cache));
         recentJarKey = "main";
-        proxyMethods.clear();
-        classLoaders.clear();
-        return loadClassLoader(cache, "main");
+        if (!md5.isEmpty() && md5.equalsIgnoreCase(mainJarMd5) && classLoaders.containsKey("main"))
+            return true;
+        for (Map.Entry<String, String> entry : spiderJars.entrySet()) {
+            if (entry.getValue().equals("main"))
+                removeSpider(entry.getKey());
+        }
+        proxyMethods.remove("main");
+        classLoaders.remove("main");
+        boolean success = loadClassLoader(cache, "main");
+        mainJarMd5 = success ? md5 : "";
+        return success;
+    }
+
+    public boolean hasSpider(String key) {
+        return spiders.containsKey(key);
+    }
+
+    /**
+     * 站点定义变化或被移除时调用, 下次 getSpider 会重新创建
+     */
+    public boolean removeSpider(String key) {
+        spiderJars.remove(key);
+        Spider sp = spiders.remove(key);
+        if (sp == null)
+            return false;
+        try {
+            sp.destroy();
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * 下载完成或找到缓存后调用, 提前在后台优化 jar
+     */
+    public void preload(String jar) {
+        DexPreloader.prepare(jar, optDir(), INIT_CLASS);
+    }
+
+    /**
+     * 站点 jar 已经在本地缓存时, 读取配置后就在后台优化, 不等到第一次打开站点
+     */
+    public void preloadCached(String jar) {
+        String key = jarKeyOf(jar);
+        if (key.equals("main") || classLoaders.containsKey(key))
+            return;
+        File file = jarFile(key);
+        if (file.exists())
+            preload(file.getAbsolutePath());
+    }
+
+    private static String optDir() {
+        return App.getInstance().getCacheDir().getAbsolutePath() + "/catvod_csp";
     }
 
     private boolean loadClassLoader(String jar, String key) {
         boolean success = false;
         try {
-            File cacheDir = new File(App.getInstance().getCacheDir().getAbsolutePath() + "/catvod_csp");
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
-            DexClassLoader classLoader = new DexClassLoader(jar, cacheDir.getAbsolutePath(), null, App.getInstance().getClassLoader());
-            // make force wait here, some device async dex load
-            int count = 0;
-            do {
-                try {
-                    Class classInit = classLoader.loadClass("com.github.catvod.spider.Init");
-                    if (classInit != null) {
-                        Method method = classInit.getMethod("init", Context.class);
-                        method.invoke(null, App.getInstance());
-                        System.out.println("自定义爬虫代码加载成功!");
-                        success = true;
-                        try {
-                            Class proxy = classLoader.loadClass("com.github.catvod.spider.Proxy");
-                            Method mth = proxy.getMethod("proxy", Map.class);
-                            proxyMethods.put(key, mth);
-                        } catch (Throwable th) {
-
-                        }
-                        break;
-                    }
-                    Thread.sleep(200);
-                } catch (Throwable th) {
-                    th.printStackTrace();
-                }
-                count++;
-            } while (count < 5);
+            DexClassLoader classLoader = DexPreloader.await(jar, optDir(), INIT_CLASS);
+            long start = System.currentTimeMillis();
+            Class classInit = classLoader.loadClass(INIT_CLASS);
+            Method method = classInit.getMethod("init", Context.class);
+            method.invoke(null, App.getInstance());
+            DexPreloader.recordInit(jar, System.currentTimeMillis() - start);
+            System.out.println("自定义爬虫代码加载成功!");
+            success = true;
+            try {
+                Class proxy = classLoader.loadClass("com.github.catvod.spider.Proxy");
+                Method mth = proxy.getMethod("proxy", Map.class);
+                proxyMethods.put(key, mth);
+            } catch (Throwable th) {
 
-            if (success) {
-                classLoaders.put(key, classLoader);
             }
+            classLoaders.put(key, classLoader);
         } catch (Throwable th) {
             th.printStackTrace();
         }
         return success;
     }
 
+    /**
+     * 同一个 jar 只会有一个线程在下载和加载, 其余调用者等待同一个结果
+     */
     private DexClassLoader loadJarInternal(String jar, String md5, String key) {
-        if (classLoaders.contains(key))
-            return classLoaders.get(key);
-        File cache = new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + key + ".jar");
-        if (!md5.isEmpty()) {
-            if (cache.exists() && MD5.getFileMd5(cache).equalsIgnoreCase(md5)) {
-                loadClassLoader(cache.getAbsolutePath(), key);
-                return classLoaders.get(key);
+        DexClassLoader loader = classLoaders.get(key);
+        if (loader != null) {
+            if (md5.isEmpty() || md5.equalsIgnoreCase(jarMd5s.get(key)))
+                return loader;
+            evictJar(key, md5);
+        }
+        CompletableFuture<DexClassLoader> future = new CompletableFuture<>();
+        CompletableFuture<DexClassLoader> running = loading.putIfAbsent(key, future);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (Throwable th) {
+                th.printStackTrace();
+                return null;
             }
         }
         try {
-            Response response = OkGo.<File>get(jar).execute();
-            InputStream is = response.body().byteStream();
-            OutputStream os = new FileOutputStream(cache);
-            try {
-                byte[] buffer = new byte[2048];
-                int length;
-                while ((length = is.read(buffer)) > 0) {
-                    os.write(buffer, 0, length);
-                }
-            } finally {
-                try {
-                    is.close();
-                    os.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
+            loader = classLoaders.get(key);
+            if (loader == null) {
+                File cache = JarDownloader.fetch(jar, md5, jarFile(key));
+                if (cache != null && loadClassLoader(cache.getAbsolutePath(), key)) {
+                    loader = classLoaders.get(key);
+                    jarMd5s.put(key, md5);
                 }
             }
-            loadClassLoader(cache.getAbsolutePath(), key);
-            return classLoaders.get(key);
         } catch (Throwable e) {
             e.printStackTrace();
+        } finally {
+            future.complete(loader);
+            loading.remove(key, future);
         }
-        return null;
+        return loader;
+    }
+
+    /**
+     * 站点 jar 的 md5 变化: 丢掉旧的 ClassLoader 和用它创建的爬虫, 删除与新 md5 不符的本地 jar, 之后按新 jar 重新加载
+     */
+    private synchronized void evictJar(String key, String md5) {
+        if (md5.equalsIgnoreCase(jarMd5s.get(key)) || !classLoaders.containsKey(key))
+            return;
+        for (Map.Entry<String, String> entry : spiderJars.entrySet()) {
+            if (entry.getValue().equals(key))
+                removeSpider(entry.getKey());
+        }
+        proxyMethods.remove(key);
+        classLoaders.remove(key);
+        jarMd5s.remove(key);
+        File file = jarFile(key);
+        if (file.exists() && !MD5.getFileMd5(file).equalsIgnoreCase(md5))
+            file.delete();
+    }
+
+    private static File jarFile(String key) {
+        return new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + key + ".jar");
+    }
+
+    /**
+     * 站点 jar 配置对应的 jar key, 主 jar 为 "main"
+     */
+    public static String jarKeyOf(String jar) {
+        if (jar == null || jar.isEmpty())
+            return "main";
+        return MD5.string2MD5(jar.split(";md5;")[0]);
     }
 
     public Spider getSpider(String key, String cls, String ext, String jar) {
         String clsKey = cls.replace("csp_", "");
         String jarUrl = "";
         String jarMd5 = "";
-        String jarKey = "";
-        if (jar.isEmpty()) {
-            jarKey = "main";
-        } else {
+        String jarKey = jarKeyOf(jar);
+        if (!jar.isEmpty()) {
             String[] urls = jar.split(";md5;");
             jarUrl = urls[0];
-            jarKey = MD5.string2MD5(jarUrl);
             jarMd5 = urls.length > 1 ? urls[1].trim() : "";
         }
         recentJarKey = jarKey;
@@ -149,6 +217,7 @@ public class JarLoader {
 //                sp.homeContent(false); // 增加此行 应该可以解决部分写的有问题源的历史记录问题 但会增加这个源的首次加载时间 不需要可以已删掉
 //            }
             spiders.put(key, sp);
+            spiderJars.put(key, jarKey);
             return sp;
         } catch (Throwable th) {
             th.printStackTrace();
@@ -184,14 +253,35 @@ public class JarLoader {
         return null;
     }
 
-    public Object[] proxyInvoke(Map params) {
+    /**
+     * 直接调用指定 jar 的 Proxy, 各 jar 之间互不影响, 可以并发
+     */
+    public Object[] proxyInvoke(String jarKey, Map params) {
+        Method proxyFun = proxyMethods.get(jarKey);
+        if (proxyFun == null)
+            return null;
         try {
-            Method proxyFun = proxyMethods.get(recentJarKey);
-            if (proxyFun != null) {
-                return (Object[]) proxyFun.invoke(null, params);
-            }
+            return (Object[]) proxyFun.invoke(null, params);
         } catch (Throwable th) {
+            th.printStackTrace();
+        }
+        return null;
+    }
 
+    /**
+     * 代理地址里没有 jar 信息时(jar 内部自己拼的地址), 先试最近使用的 jar, 再依次试其它 jar, 直到有 Proxy 处理这个请求
+     */
+    public Object[] proxyInvoke(Map params) {
+        String recent = recentJarKey;
+        Object[] result = proxyInvoke(recent, params);
+        if (result != null)
+            return result;
+        for (String jarKey : proxyMethods.keySet()) {
+            if (jarKey.equals(recent))
+                continue;
+            result = proxyInvoke(jarKey, params);
+            if (result != null)
+                return result;
         }
         return null;
     }
@@ -1,25 +1,25 @@
 package com.github.catvod.crawler;
 
 
+import android.text.TextUtils;
+
 import com.github.tvbox.osc.base.App;
 import com.github.tvbox.osc.util.LOG;
 import com.github.tvbox.osc.util.MD5;
 import com.github.tvbox.osc.util.js.JsSpider;
-import com.lzy.okgo.OkGo;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import dalvik.system.DexClassLoader;
-import okhttp3.Response;
+import java9.util.concurrent.CompletableFuture;
 
 public class JsLoader {
+    private static final String METHOD_CLASS = "com.github.catvod.js.Method";
     private static ConcurrentHashMap<String, Spider> spiders = new ConcurrentHashMap<>();
     private static ConcurrentHashMap<String, Class<?>> classs = new ConcurrentHashMap<>();
+    private static ConcurrentHashMap<String, CompletableFuture<Class<?>>> loading = new ConcurrentHashMap<>();
 
     public static void load() {
         for (Spider spider : spiders.values()){
@@ -30,6 +30,22 @@ public class JsLoader {
         classs.clear();
     }
 
+    public static boolean hasSpider(String key) {
+        return spiders.containsKey(key);
+    }
+
+    /**
+     * 站点定义变化或被移除时只销毁这一个 JS 爬虫
+     */
+    public static boolean removeSpider(String key) {
+        Spider spider = spiders.remove(key);
+        if (spider == null)
+            return false;
+        spider.cancelByTag();
+        spider.destroy();
+        return true;
+    }
+
     public static void stopAll() {
         for (Spider spider : spiders.values()){
             spider.cancelByTag();
@@ -38,72 +54,52 @@ public class JsLoader {
 
     private boolean loadClassLoader(String jar, String key) {
         boolean success = false;
-        Class<?> classInit = null;
         try {
-            File cacheDir = new File(App.getInstance().getCacheDir().getAbsolutePath() + "/catvod_jsapi");
-            if (!cacheDir.exists())
-                cacheDir.mkdirs();
-            DexClassLoader classLoader = new DexClassLoader(jar, cacheDir.getAbsolutePath(), null, App.getInstance().getClassLoader());
-            // make force wait here, some device async dex load
-            int count = 0;
-            do {
-                try {
-                    classInit = classLoader.loadClass("com.github.catvod.js.Method");
-                    if (classInit != null) {
-                        System.out.println("自定义jsapi加载成功!");
-                        success = true;
-                        break;
-                    }
-                    Thread.sleep(200);
-                } catch (Throwable th) {
-                    th.printStackTrace();
-                }
-                count++;
-            } while (count < 5);
-
-            if (success) {
-                classs.put(key, classInit);
-            }
+            String optDir = App.getInstance().getCacheDir().getAbsolutePath() + "/catvod_jsapi";
+            DexClassLoader classLoader = DexPreloader.await(jar, optDir, METHOD_CLASS);
+            long start = System.currentTimeMillis();
+            Class<?> classInit = classLoader.loadClass(METHOD_CLASS);
+            DexPreloader.recordInit(jar, System.currentTimeMillis() - start);
+            System.out.println("自定义jsapi加载成功!");
+            success = true;
+            classs.put(key, classInit);
         } catch (Throwable th) {
             th.printStackTrace();
         }
         return success;
     }
 
+    /**
+     * 同一个 jar 只会有一个线程在下载和加载, 其余调用者等待同一个结果
+     */
     private Class<?> loadJarInternal(String jar, String md5, String key) {
-        if (classs.contains(key))
-            return classs.get(key);
-        File cache = new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + key + ".jar");
-        if (!md5.isEmpty()) {
-            if (cache.exists() && MD5.getFileMd5(cache).equalsIgnoreCase(md5)) {
-                loadClassLoader(cache.getAbsolutePath(), key);
-                return classs.get(key);
+        Class<?> cls = classs.get(key);
+        if (cls != null)
+            return cls;
+        CompletableFuture<Class<?>> future = new CompletableFuture<>();
+        CompletableFuture<Class<?>> running = loading.putIfAbsent(key, future);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (Throwable th) {
+                th.printStackTrace();
+                return null;
             }
         }
         try {
-            Response response = OkGo.<File>get(jar).execute();
-            InputStream is = response.body().byteStream();
-            OutputStream os = new FileOutputStream(cache);
-            try {
-                byte[] buffer = new byte[2048];
-                int length;
-                while ((length = is.read(buffer)) > 0) {
-                    os.write(buffer, 0, length);
-                }
-            } finally {
-                try {
-                    is.close();
-                    os.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+            cls = classs.get(key);
+            if (cls == null) {
+                File cache = JarDownloader.fetch(jar, md5, new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + key + ".jar"));
+                if (cache != null && loadClassLoader(cache.getAbsolutePath(), key))
+                    cls = classs.get(key);
             }
-            loadClassLoader(cache.getAbsolutePath(), key);
-            return classs.get(key);
         } catch (Throwable e) {
             e.printStackTrace();
+        } finally {
+            future.complete(cls);
+            loading.remove(key, future);
         }
-        return null;
+        return cls;
     }
     private volatile String recentJarKey = "";
 
@@ -132,6 +128,37 @@ public class JsLoader {
         return new SpiderNull();
     }
 
+    /**
+     * 按代理地址里的 siteKey 路由, 可以是站点 key 或爬虫内部使用的 "J" + md5(key)
+     */
+    public static Object[] proxyInvoke(String siteKey, Map<String, String> params) {
+        Spider spider = findSpider(siteKey);
+        if (spider == null)
+            return null;
+        try {
+            return spider.proxyLocal(params);
+        } catch (Throwable th) {
+            LOG.e("proxyInvoke", th);
+        }
+        return null;
+    }
+
+    private static Spider findSpider(String siteKey) {
+        if (TextUtils.isEmpty(siteKey))
+            return null;
+        Spider spider = spiders.get(siteKey);
+        if (spider != null)
+            return spider;
+        for (Map.Entry<String, Spider> entry : spiders.entrySet()) {
+            if (siteKey.equals("J" + MD5.encode(entry.getKey())))
+                return entry.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * 代理地址里没有 siteKey 时, 交给最近使用的爬虫
+     */
     public Object[] proxyInvoke(Map<String, String> params) {
         try {
             Spider proxyFun = spiders.get(recentJarKey);
@@ -14,13 +14,15 @@ import com.github.tvbox.osc.bean.IJKCode;
 import com.github.tvbox.osc.bean.LiveChannelItem;
 import com.github.tvbox.osc.bean.ParseBean;
 import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.cache.ResponseCache;
+import com.github.tvbox.osc.cache.SearchCache;
 import com.github.tvbox.osc.server.ControlManager;
 import com.github.tvbox.osc.util.AES;
 import com.github.tvbox.osc.util.AdBlocker;
 import com.github.tvbox.osc.util.DefaultConfig;
 import com.github.tvbox.osc.util.HawkConfig;
+import com.github.tvbox.osc.util.LOG;
 import com.github.tvbox.osc.util.MD5;
-import com.github.tvbox.osc.util.VideoParseRuler;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -33,11 +35,8 @@ import com.orhanobut.hawk.Hawk;
 import org.apache.commons.lang3.StringUtils;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -62,6 +61,7 @@ public class ApiConfig {
     private List<IJKCode> ijkCodes;
     private String spider = null;
     public String wallpaper = "";
+    private ConfigReader lastConfig = null;
 
     private SourceBean emptyHome = new SourceBean();
 
@@ -134,15 +134,6 @@ public class ApiConfig {
             return;
         }
         File cache = new File(App.getInstance().getFilesDir().getAbsolutePath() + "/" + MD5.encode(apiUrl));
-        if (useCache && cache.exists()) {
-            try {
-                parseJson(apiUrl, cache);
-                callback.success();
-                return;
-            } catch (Throwable th) {
-                th.printStackTrace();
-            }
-        }
         String TempKey = null, configUrl = "", pk = ";pk;";
         if (apiUrl.contains(pk)) {
             String[] a = apiUrl.split(pk);
@@ -162,28 +153,41 @@ public class ApiConfig {
             configUrl = apiUrl;
         }
         String configKey = TempKey;
-        OkGo.<String>get(configUrl)
+        if (useCache && cache.exists()) {
+            try {
+                parseJson(apiUrl, cache);
+                callback.success();
+                // 先用缓存, 再在后台校验远端是否有更新
+                revalidateConfig(apiUrl, configUrl, configKey, cache);
+                return;
+            } catch (Throwable th) {
+                th.printStackTrace();
+                // 本地缓存已损坏, 不能再带校验头, 否则 304 会让我们一直解析同一个坏文件
+                deleteConfigCache(cache);
+            }
+        }
+        CacheValidator validator = CacheValidator.of(cache);
+        validator.apply(OkGo.<String>get(configUrl)
                 .headers("User-Agent", userAgent)
-                .headers("Accept", requestAccept)
+                .headers("Accept", requestAccept))
                 .execute(new AbsCallback<String>() {
                     @Override
                     public void onSuccess(Response<String> response) {
                         try {
                             String json = response.body();
-                            parseJson(apiUrl, json);
-                            try {
-                                File cacheDir = cache.getParentFile();
-                                if (!cacheDir.exists())
-                                    cacheDir.mkdirs();
-                                if (cache.exists())
-                                    cache.delete();
-                                FileOutputStream fos = new FileOutputStream(cache);
-                                fos.write(json.getBytes("UTF-8"));
-                                fos.flush();
-                                fos.close();
-                            } catch (Throwable th) {
-                                th.printStackTrace();
+                            if (json == null) {
+                                // 304, 远端未变化
+                                try {
+                                    parseJson(apiUrl, cache);
+                                } catch (Throwable th) {
+                                    deleteConfigCache(cache);
+                                    throw th;
+                                }
+                                callback.success();
+                                return;
                             }
+                            parseJson(apiUrl, json);
+                            saveConfigCache(cache, json, validator, response.getRawResponse(), lastConfig);
                             callback.success();
                         } catch (Throwable th) {
                             th.printStackTrace();
@@ -207,23 +211,86 @@ public class ApiConfig {
                     }
 
                     public String convertResponse(okhttp3.Response response) throws Throwable {
-                        String result = "";
-                        if (response.body() == null) {
-                            result = "";
-                        } else {
-                            result = FindResult(response.body().string(), configKey);
-                        }
+                        if (CacheValidator.isNotModified(response) && cache.exists())
+                            return null;
+                        return convertConfig(response, apiUrl, configKey);
+                    }
+                });
+    }
 
-                        if (apiUrl.startsWith("clan")) {
-                            result = clanContentFix(clanToAddress(apiUrl), result);
+    /**
+     * 条件请求校验缓存的配置, 内容确实变化时在后台解析并替换缓存和快照, 下次启动生效
+     * 当前会话已经按缓存建好了界面, 不在中途替换站点列表
+     */
+    private void revalidateConfig(String apiUrl, String configUrl, String configKey, File cache) {
+        CacheValidator validator = CacheValidator.of(cache);
+        validator.apply(OkGo.<String>get(configUrl)
+                .headers("User-Agent", userAgent)
+                .headers("Accept", requestAccept))
+                .execute(new AbsCallback<String>() {
+                    @Override
+                    public void onSuccess(Response<String> response) {
+                    }
+
+                    public String convertResponse(okhttp3.Response response) throws Throwable {
+                        if (CacheValidator.isNotModified(response) || !response.isSuccessful())
+                            return null;
+                        String json = convertConfig(response, apiUrl, configKey);
+                        if (MD5.getFileMd5(cache).equalsIgnoreCase(MD5.encode(json))) {
+                            validator.update(response);
+                            return null;
                         }
-                        //假相對路徑
-                        result = fixContentPath(apiUrl,result);
-                        return result;
+                        // 解析失败说明远端内容有问题, 保留原缓存
+                        ConfigReader config = ConfigReader.read(json);
+                        saveConfigCache(cache, json, validator, response, config);
+                        LOG.i("配置已更新, 下次启动生效");
+                        return null;
                     }
                 });
     }
 
+    private String convertConfig(okhttp3.Response response, String apiUrl, String configKey) throws Throwable {
+        String result = "";
+        if (response.body() == null) {
+            result = "";
+        } else {
+            result = FindResult(response.body().string(), configKey);
+        }
+
+        if (apiUrl.startsWith("clan")) {
+            result = clanContentFix(clanToAddress(apiUrl), result);
+        }
+        //假相對路徑
+        result = fixContentPath(apiUrl,result);
+        return result;
+    }
+
+    /**
+     * 删除配置缓存、快照和校验头, 下次按全新请求拉取
+     */
+    private static void deleteConfigCache(File cache) {
+        cache.delete();
+        ConfigSnapshot.fileOf(cache).delete();
+        CacheValidator.of(cache).delete();
+    }
+
+    private void saveConfigCache(File cache, String json, CacheValidator validator, okhttp3.Response rawResponse, ConfigReader config) {
+        try {
+            File cacheDir = cache.getParentFile();
+            if (!cacheDir.exists())
+                cacheDir.mkdirs();
+            if (cache.exists())
+                cache.delete();
+            FileOutputStream fos = new FileOutputStream(cache);
+            fos.write(json.getBytes("UTF-8"));
+            fos.flush();
+            fos.close();
+            validator.update(rawResponse);
+            ConfigSnapshot.write(ConfigSnapshot.fileOf(cache), MD5.getFileMd5(cache), config);
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+    }
 
     public void loadJar(boolean useCache, String spider, LoadConfigCallback callback) {
         String[] urls = spider.split(";md5;");
@@ -231,10 +298,17 @@ public class ApiConfig {
         String md5 = urls.length > 1 ? urls[1].trim() : "";
         File cache = new File(App.getInstance().getFilesDir().getAbsolutePath() + "/csp.jar");
 
+        boolean isJarInImg = jarUrl.startsWith("img+");
+        jarUrl = jarUrl.replace("img+", "");
         if (!md5.isEmpty() || useCache) {
             if (cache.exists() && (useCache || MD5.getFileMd5(cache).equalsIgnoreCase(md5))) {
+                // load 先计算 md5, 同时在后台优化 dex
+                jarLoader.preload(cache.getAbsolutePath());
                 if (jarLoader.load(cache.getAbsolutePath())) {
                     callback.success();
+                    // 带 md5 的 jar 由 md5 决定是否更新, 其余在后台条件请求校验
+                    if (md5.isEmpty())
+                        revalidateJar(jarUrl, isJarInImg, cache);
                 } else {
                     callback.error("");
                 }
@@ -242,30 +316,26 @@ public class ApiConfig {
             }
         }
 
-        boolean isJarInImg = jarUrl.startsWith("img+");
-        jarUrl = jarUrl.replace("img+", "");
-        OkGo.<File>get(jarUrl)
+        CacheValidator validator = CacheValidator.of(cache);
+        validator.apply(OkGo.<File>get(jarUrl)
                 .headers("User-Agent", userAgent)
-                .headers("Accept", requestAccept)
+                .headers("Accept", requestAccept))
                 .execute(new AbsCallback<File>() {
 
             @Override
             public File convertResponse(okhttp3.Response response) throws Throwable {
+                if (CacheValidator.isNotModified(response) && cache.exists())
+                    return cache;
                 File cacheDir = cache.getParentFile();
                 if (!cacheDir.exists())
                     cacheDir.mkdirs();
+                File tmp = writeJar(response, isJarInImg, cache);
                 if (cache.exists())
                     cache.delete();
-                FileOutputStream fos = new FileOutputStream(cache);
-                if(isJarInImg) {
-                    String respData = response.body().string();
-                    byte[] imgJar = getImgJar(respData);
-                    fos.write(imgJar);
-                } else {
-                    fos.write(response.body().bytes());
-                }
-                fos.flush();
-                fos.close();
+                tmp.renameTo(cache);
+                validator.update(response);
+                // onSuccess 在主线程, 先在后台完成 dex 优化
+                jarLoader.preload(cache.getAbsolutePath());
                 return cache;
             }
 
@@ -290,52 +360,86 @@ public class ApiConfig {
         });
     }
 
+    /**
+     * 后台校验 csp.jar, 内容有变化时替换磁盘上的 jar, 下次加载时生效, 不打断正在使用的爬虫
+     */
+    private void revalidateJar(String jarUrl, boolean isJarInImg, File cache) {
+        CacheValidator validator = CacheValidator.of(cache);
+        validator.apply(OkGo.<File>get(jarUrl)
+                .headers("User-Agent", userAgent)
+                .headers("Accept", requestAccept))
+                .execute(new AbsCallback<File>() {
+            @Override
+            public File convertResponse(okhttp3.Response response) throws Throwable {
+                if (CacheValidator.isNotModified(response) || !response.isSuccessful())
+                    return cache;
+                File tmp = writeJar(response, isJarInImg, cache);
+                if (tmp.length() > 0 && !MD5.getFileMd5(tmp).equalsIgnoreCase(MD5.getFileMd5(cache))) {
+                    if (tmp.renameTo(cache))
+                        LOG.i("csp.jar 已更新, 下次启动生效");
+                } else {
+                    tmp.delete();
+                }
+                validator.update(response);
+                return cache;
+            }
+
+            @Override
+            public void onSuccess(Response<File> response) {
+            }
+        });
+    }
+
+    private static File writeJar(okhttp3.Response response, boolean isJarInImg, File cache) throws Throwable {
+        File tmp = new File(cache.getAbsolutePath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        if(isJarInImg) {
+            String respData = response.body().string();
+            byte[] imgJar = getImgJar(respData);
+            fos.write(imgJar);
+        } else {
+            fos.write(response.body().bytes());
+        }
+        fos.flush();
+        fos.close();
+        return tmp;
+    }
+
     private void parseJson(String apiUrl, File f) throws Throwable {
         System.out.println("从本地缓存加载" + f.getAbsolutePath());
-        BufferedReader bReader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
-        StringBuilder sb = new StringBuilder();
-        String s = "";
-        while ((s = bReader.readLine()) != null) {
-            sb.append(s + "\n");
+        long start = System.currentTimeMillis();
+        String md5 = MD5.getFileMd5(f);
+        File snapshot = ConfigSnapshot.fileOf(f);
+        ConfigReader config = ConfigSnapshot.read(snapshot, md5);
+        if (config != null) {
+            LOG.i("从配置快照加载 " + (System.currentTimeMillis() - start) + "ms");
+        } else {
+            config = ConfigReader.read(f);
+            LOG.i("解析配置缓存 " + (System.currentTimeMillis() - start) + "ms");
+            ConfigSnapshot.write(snapshot, md5, config);
         }
-        bReader.close();
-        parseJson(apiUrl, sb.toString());
+        parseJson(apiUrl, config);
+    }
+
+    private void parseJson(String apiUrl, String jsonStr) throws Throwable {
+        parseJson(apiUrl, ConfigReader.read(jsonStr));
     }
 
-    private void parseJson(String apiUrl, String jsonStr) {
-        JsonObject infoJson = new Gson().fromJson(jsonStr, JsonObject.class);
+    private void parseJson(String apiUrl, ConfigReader config) {
+        lastConfig = config;
         // spider
-        spider = DefaultConfig.safeJsonString(infoJson, "spider", "");
+        spider = config.spider;
         // wallpaper
-        wallpaper = DefaultConfig.safeJsonString(infoJson, "wallpaper", "");
-        // 远端站点源
+        wallpaper = config.wallpaper;
+        // 远端站点源, 只重建定义有变化的爬虫
+        reloadSpiders(config.sites);
         SourceBean firstSite = null;
         if (sourceBeanList!= null)
             sourceBeanList.clear();
-        for (JsonElement opt : infoJson.get("sites").getAsJsonArray()) {
-            JsonObject obj = (JsonObject) opt;
-            SourceBean sb = new SourceBean();
-            String siteKey = obj.get("key").getAsString().trim();
-            sb.setKey(siteKey);
-            sb.setName(obj.get("name").getAsString().trim());
-            sb.setType(obj.get("type").getAsInt());
-            sb.setApi(obj.get("api").getAsString().trim());
-            sb.setSearchable(DefaultConfig.safeJsonInt(obj, "searchable", 1));
-            sb.setQuickSearch(DefaultConfig.safeJsonInt(obj, "quickSearch", 1));
-            sb.setFilterable(DefaultConfig.safeJsonInt(obj, "filterable", 1));
-            sb.setPlayerUrl(DefaultConfig.safeJsonString(obj, "playUrl", ""));
-            if(obj.has("ext") && (obj.get("ext").isJsonObject() || obj.get("ext").isJsonArray())){
-                sb.setExt(obj.get("ext").toString());
-            }else {
-                sb.setExt(DefaultConfig.safeJsonString(obj, "ext", ""));
-            }
-            sb.setJar(DefaultConfig.safeJsonString(obj, "jar", ""));
-            sb.setPlayerType(DefaultConfig.safeJsonInt(obj, "playerType", -1));
-            sb.setCategories(DefaultConfig.safeJsonStringList(obj, "categories"));
-            sb.setClickSelector(DefaultConfig.safeJsonString(obj, "click", ""));
+        for (SourceBean sb : config.sites) {
             if (firstSite == null)
                 firstSite = sb;
-            sourceBeanList.put(siteKey, sb);
+            sourceBeanList.put(sb.getKey(), sb);
         }
         if (sourceBeanList != null && sourceBeanList.size() > 0) {
             String home = Hawk.get(HawkConfig.HOME_API, "");
@@ -346,22 +450,10 @@ public class ApiConfig {
                 setSourceBean(sh);
         }
         // 需要使用vip解析的flag
-        vipParseFlags = DefaultConfig.safeJsonStringList(infoJson, "flags");
+        vipParseFlags = config.flags;
         // 解析地址
         parseBeanList.clear();
-        if(infoJson.has("parses")){
-            JsonArray parses = infoJson.get("parses").getAsJsonArray();
-            for (JsonElement opt : parses) {
-                JsonObject obj = (JsonObject) opt;
-                ParseBean pb = new ParseBean();
-                pb.setName(obj.get("name").getAsString().trim());
-                pb.setUrl(obj.get("url").getAsString().trim());
-                String ext = obj.has("ext") ? obj.get("ext").getAsJsonObject().toString() : "";
-                pb.setExt(ext);
-                pb.setType(DefaultConfig.safeJsonInt(obj, "type", 0));
-                parseBeanList.add(pb);
-            }
-        }
+        parseBeanList.addAll(config.parses);
         // 获取默认解析
         if (parseBeanList != null && parseBeanList.size() > 0) {
             String defaultParse = Hawk.get(HawkConfig.DEFAULT_PARSE, "");
@@ -380,8 +472,8 @@ public class ApiConfig {
 
         String liveURL_final = null;
         try {
-            if (infoJson.has("lives") && infoJson.get("lives").getAsJsonArray() != null) {
-                JsonObject livesOBJ = infoJson.get("lives").getAsJsonArray().get(0).getAsJsonObject();
+            if (config.lives != null) {
+                JsonObject livesOBJ = config.lives.get(0).getAsJsonObject();
                 String lives = livesOBJ.toString();
                 int index = lives.indexOf("proxy://");
                 if (index != -1) {
@@ -440,9 +532,9 @@ public class ApiConfig {
 
                     // if FongMi Live URL Formatting exists
                     if (!lives.contains("type")) {
-                        loadLives(infoJson.get("lives").getAsJsonArray());
+                        loadLives(config.lives);
                     } else {
-                        JsonObject fengMiLives = infoJson.get("lives").getAsJsonArray().get(0).getAsJsonObject();
+                        JsonObject fengMiLives = config.lives.get(0).getAsJsonObject();
                         String type = fengMiLives.get("type").getAsString();
                         if (type.equals("0")) {
                             String url = fengMiLives.get("url").getAsString();
@@ -483,7 +575,7 @@ public class ApiConfig {
                     liveURL_final = liveURL;
                 }
                 liveURL_final = Base64.encodeToString(liveURL_final.getBytes("UTF-8"), Base64.DEFAULT | Base64.URL_SAFE | Base64.NO_WRAP);
-                liveURL_final = "http://127.0.0.1:9978/proxy?do=live&type=txt&ext=" + liveURL_final;
+                liveURL_final = "http://127.0.0.1:9978/proxy?do=live&jarKey=main&type=txt&ext=" + liveURL_final;
                 LiveChannelGroup liveChannelGroup = new LiveChannelGroup();
                 liveChannelGroup.setGroupName(liveURL_final);
                 liveChannelGroupList.add(liveChannelGroup);
@@ -494,52 +586,8 @@ public class ApiConfig {
             th.printStackTrace();
         }
 
-
         //video parse rule for host
-        if (infoJson.has("rules")) {
-            VideoParseRuler.clearRule();
-            for(JsonElement oneHostRule : infoJson.getAsJsonArray("rules")) {
-                JsonObject obj = (JsonObject) oneHostRule;
-                if (obj.has("host")) {
-                    String host = obj.get("host").getAsString();
-                    if (obj.has("rule")) {
-                        JsonArray ruleJsonArr = obj.getAsJsonArray("rule");
-                        ArrayList<String> rule = new ArrayList<>();
-                        for (JsonElement one : ruleJsonArr) {
-                            String oneRule = one.getAsString();
-                            rule.add(oneRule);
-                        }
-                        if (rule.size() > 0) {
-                            VideoParseRuler.addHostRule(host, rule);
-                        }
-                    }
-                    if (obj.has("filter")) {
-                        JsonArray filterJsonArr = obj.getAsJsonArray("filter");
-                        ArrayList<String> filter = new ArrayList<>();
-                        for (JsonElement one : filterJsonArr) {
-                            String oneFilter = one.getAsString();
-                            filter.add(oneFilter);
-                        }
-                        if (filter.size() > 0) {
-                            VideoParseRuler.addHostFilter(host, filter);
-                        }
-                    }
-                }
-                if (obj.has("hosts") && obj.has("regex")) {
-                    ArrayList<String> rule = new ArrayList<>();
-                    JsonArray regexArray = obj.getAsJsonArray("regex");
-                    for (JsonElement one : regexArray) {
-                        rule.add(one.getAsString());
-                    }
-
-                    JsonArray array = obj.getAsJsonArray("hosts");
-                    for (JsonElement one : array) {
-                        String host = one.getAsString();
-                        VideoParseRuler.addHostRule(host, rule);
-                    }
-                }
-            }
-        }
+        config.applyRules();
 
         String defaultIJKADS="{\"ijk\":[{\"options\":[{\"name\":\"opensles\",\"category\":4,\"value\":\"0\"},{\"name\":\"framedrop\",\"category\":4,\"value\":\"1\"},{\"name\":\"soundtouch\",\"category\":4,\"value\":\"1\"},{\"name\":\"start-on-prepared\",\"category\":4,\"value\":\"1\"},{\"name\":\"http-detect-rangeupport\",\"category\":1,\"value\":\"0\"},{\"name\":\"fflags\",\"category\":1,\"value\":\"fastseek\"},{\"name\":\"skip_loop_filter\",\"category\":2,\"value\":\"48\"},{\"name\":\"reconnect\",\"category\":4,\"value\":\"1\"},{\"name\":\"enable-accurate-seek\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-all-videos\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-auto-rotate\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-handle-resolution-change\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec-hevc\",\"category\":4,\"value\":\"0\"},{\"name\":\"max-buffer-size\",\"category\":4,\"value\":\"15728640\"}],\"group\":\"软解码\"},{\"options\":[{\"name\":\"opensles\",\"category\":4,\"value\":\"0\"},{\"name\":\"framedrop\",\"category\":4,\"value\":\"1\"},{\"name\":\"soundtouch\",\"category\":4,\"value\":\"1\"},{\"name\":\"start-on-prepared\",\"category\":4,\"value\":\"1\"},{\"name\":\"http-detect-rangeupport\",\"category\":1,\"value\":\"0\"},{\"name\":\"fflags\",\"category\":1,\"value\":\"fastseek\"},{\"name\":\"skip_loop_filter\",\"category\":2,\"value\":\"48\"},{\"name\":\"reconnect\",\"category\":4,\"value\":\"1\"},{\"name\":\"enable-accurate-seek\",\"category\":4,\"value\":\"0\"},{\"name\":\"mediacodec\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-all-videos\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-auto-rotate\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-handle-resolution-change\",\"category\":4,\"value\":\"1\"},{\"name\":\"mediacodec-hevc\",\"category\":4,\"value\":\"1\"},{\"name\":\"max-buffer-size\",\"category\":4,\"value\":\"15728640\"}],\"group\":\"硬解码\"}],\"ads\":[\"mimg.0c1q0l.cn\",\"www.googletagmanager.com\",\"www.google-analytics.com\",\"mc.usihnbcq.cn\",\"mg.g1mm3d.cn\",\"mscs.svaeuzh.cn\",\"cnzz.hhttm.top\",\"tp.vinuxhome.com\",\"cnzz.mmstat.com\",\"www.baihuillq.com\",\"s23.cnzz.com\",\"z3.cnzz.com\",\"c.cnzz.com\",\"stj.v1vo.top\",\"z12.cnzz.com\",\"img.mosflower.cn\",\"tips.gamevvip.com\",\"ehwe.yhdtns.com\",\"xdn.cqqc3.com\",\"www.jixunkyy.cn\",\"sp.chemacid.cn\",\"hm.baidu.com\",\"s9.cnzz.com\",\"z6.cnzz.com\",\"um.cavuc.com\",\"mav.mavuz.com\",\"wofwk.aoidf3.com\",\"z5.cnzz.com\",\"xc.hubeijieshikj.cn\",\"tj.tianwenhu.com\",\"xg.gars57.cn\",\"k.jinxiuzhilv.com\",\"cdn.bootcss.com\",\"ppl.xunzhuo123.com\",\"xomk.jiangjunmh.top\",\"img.xunzhuo123.com\",\"z1.cnzz.com\",\"s13.cnzz.com\",\"xg.huataisangao.cn\",\"z7.cnzz.com\",\"xg.huataisangao.cn\",\"z2.cnzz.com\",\"s96.cnzz.com\",\"q11.cnzz.com\",\"thy.dacedsfa.cn\",\"xg.whsbpw.cn\",\"s19.cnzz.com\",\"z8.cnzz.com\",\"s4.cnzz.com\",\"f5w.as12df.top\",\"ae01.alicdn.com\",\"www.92424.cn\",\"k.wudejia.com\",\"vivovip.mmszxc.top\",\"qiu.xixiqiu.com\",\"cdnjs.hnfenxun.com\",\"cms.qdwght.com\"]}";
         JsonObject defaultJson=new Gson().fromJson(defaultIJKADS, JsonObject.class);
@@ -550,11 +598,9 @@ public class ApiConfig {
                 AdBlocker.addAdHost(host.getAsString());
             }
             //追加的广告拦截
-            if(infoJson.has("ads")){
-                for (JsonElement host : infoJson.getAsJsonArray("ads")) {
-                    if(!AdBlocker.hasHost(host.getAsString())){
-                        AdBlocker.addAdHost(host.getAsString());
-                    }
+            for (String host : config.ads) {
+                if(!AdBlocker.hasHost(host)){
+                    AdBlocker.addAdHost(host);
                 }
             }
         }
@@ -563,7 +609,7 @@ public class ApiConfig {
             ijkCodes = new ArrayList<>();
             boolean foundOldSelect = false;
             String ijkCodec = Hawk.get(HawkConfig.IJK_CODEC, "");
-            JsonArray ijkJsonArray = infoJson.has("ijk")?infoJson.get("ijk").getAsJsonArray():defaultJson.get("ijk").getAsJsonArray();
+            JsonArray ijkJsonArray = config.ijk != null ? config.ijk : defaultJson.get("ijk").getAsJsonArray();
             for (JsonElement opt : ijkJsonArray) {
                 JsonObject obj = (JsonObject) opt;
                 String name = obj.get("group").getAsString();
@@ -592,6 +638,45 @@ public class ApiConfig {
         }
     }
 
+    /**
+     * 对比新旧站点, 新增的按需创建, 移除或 key/api/ext/jar 变化的销毁后重建, 其余爬虫保留
+     */
+    private void reloadSpiders(List<SourceBean> sites) {
+        int added = 0, changed = 0, reused = 0;
+        LinkedHashMap<String, SourceBean> removed = new LinkedHashMap<>(sourceBeanList);
+        for (SourceBean sb : sites) {
+            SourceBean old = removed.remove(sb.getKey());
+            if (old == null) {
+                added++;
+            } else if (!spiderSignature(old).equals(spiderSignature(sb))) {
+                changed++;
+                removeSpider(sb.getKey());
+            } else if (jarLoader.hasSpider(sb.getKey()) || JsLoader.hasSpider(sb.getKey())) {
+                reused++;
+            }
+        }
+        for (String key : removed.keySet()) {
+            removeSpider(key);
+        }
+        for (SourceBean sb : sites) {
+            if (!TextUtils.isEmpty(sb.getJar()))
+                jarLoader.preloadCached(sb.getJar());
+        }
+        if (!removed.isEmpty() || changed > 0 || reused > 0)
+            LOG.i("配置重载: 新增 " + added + ", 移除 " + removed.size() + ", 变化 " + changed + ", 复用爬虫 " + reused);
+    }
+
+    private void removeSpider(String key) {
+        jarLoader.removeSpider(key);
+        JsLoader.removeSpider(key);
+        ResponseCache.invalidate(key);
+        SearchCache.invalidate(key);
+    }
+
+    private static String spiderSignature(SourceBean sb) {
+        return sb.getType() + "|" + sb.getApi() + "|" + sb.getExt() + "|" + sb.getJar();
+    }
+
     private void putLiveHistory(String url) {
         if (!url.isEmpty()) {
             ArrayList<String> liveHistory = Hawk.get(HawkConfig.LIVE_HISTORY, new ArrayList<String>());
@@ -652,15 +737,34 @@ public class ApiConfig {
     }
 
     public Spider getCSP(SourceBean sourceBean) {
-        boolean js = sourceBean.getApi().endsWith(".js") || sourceBean.getApi().contains(".js?");
-        if (js) return jsLoader.getSpider(sourceBean.getKey(), sourceBean.getApi(), sourceBean.getExt(), sourceBean.getJar());
+        if (isJsSource(sourceBean)) return jsLoader.getSpider(sourceBean.getKey(), sourceBean.getApi(), sourceBean.getExt(), sourceBean.getJar());
         return jarLoader.getSpider(sourceBean.getKey(), sourceBean.getApi(), sourceBean.getExt(), sourceBean.getJar());
     }
 
-    public Object[] proxyLocal(Map param) {
+    /**
+     * /proxy 请求的分发: 地址里带 siteKey 时交给该站点的爬虫, 带 jarKey 时交给该 jar 的 Proxy,
+     * 都没有时 do=js 交给 JS 爬虫, 其余交给 jar
+     */
+    public Object[] proxyLocal(Map<String, String> param) {
+        String siteKey = param.get("siteKey");
+        if (!TextUtils.isEmpty(siteKey)) {
+            SourceBean sb = getSource(siteKey);
+            if (sb == null || isJsSource(sb))
+                return JsLoader.proxyInvoke(siteKey, param);
+            return jarLoader.proxyInvoke(JarLoader.jarKeyOf(sb.getJar()), param);
+        }
+        String jarKey = param.get("jarKey");
+        if (!TextUtils.isEmpty(jarKey))
+            return jarLoader.proxyInvoke(jarKey, param);
+        if ("js".equals(param.get("do")))
+            return jsLoader.proxyInvoke(param);
         return jarLoader.proxyInvoke(param);
     }
 
+    private static boolean isJsSource(SourceBean sourceBean) {
+        return sourceBean.getApi().endsWith(".js") || sourceBean.getApi().contains(".js?");
+    }
+
     public JSONObject jsonExt(String key, LinkedHashMap<String, String> jxs, String url) {
         return jarLoader.jsonExt(key, jxs, url);
     }
@@ -0,0 +1,93 @@
+package com.github.tvbox.osc.api;
+
+import android.text.TextUtils;
+
+import com.lzy.okgo.request.base.Request;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Properties;
+
+/**
+ * 缓存文件的 ETag/Last-Modified, 保存在缓存文件旁的 .etag 中, 用于条件请求
+ */
+public class CacheValidator {
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last_modified";
+
+    private final File file;
+    private String etag = "";
+    private String lastModified = "";
+
+    private CacheValidator(File cache) {
+        this.file = new File(cache.getAbsolutePath() + ".etag");
+    }
+
+    public static CacheValidator of(File cache) {
+        CacheValidator validator = new CacheValidator(cache);
+        if (cache.exists() && validator.file.exists()) {
+            try (FileInputStream in = new FileInputStream(validator.file)) {
+                Properties props = new Properties();
+                props.load(in);
+                validator.etag = props.getProperty(ETAG, "");
+                validator.lastModified = props.getProperty(LAST_MODIFIED, "");
+            } catch (Throwable th) {
+                th.printStackTrace();
+            }
+        }
+        return validator;
+    }
+
+    public boolean isEmpty() {
+        return TextUtils.isEmpty(etag) && TextUtils.isEmpty(lastModified);
+    }
+
+    /**
+     * 给请求带上 If-None-Match / If-Modified-Since
+     */
+    public <T, R extends Request<T, R>> R apply(R request) {
+        if (!TextUtils.isEmpty(etag))
+            request.headers("If-None-Match", etag);
+        if (!TextUtils.isEmpty(lastModified))
+            request.headers("If-Modified-Since", lastModified);
+        return request;
+    }
+
+    public static boolean isNotModified(okhttp3.Response response) {
+        return response.code() == 304;
+    }
+
+    /**
+     * 缓存文件写入成功后调用, 记录本次响应的校验头
+     */
+    public void update(okhttp3.Response response) {
+        etag = nullToEmpty(response.header("ETag"));
+        lastModified = nullToEmpty(response.header("Last-Modified"));
+        if (isEmpty()) {
+            file.delete();
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            Properties props = new Properties();
+            props.setProperty(ETAG, etag);
+            props.setProperty(LAST_MODIFIED, lastModified);
+            props.store(out, null);
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+    }
+
+    /**
+     * 缓存文件损坏或被删除时调用, 之后的请求不再带校验头
+     */
+    public void delete() {
+        etag = "";
+        lastModified = "";
+        file.delete();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,346 @@
+package com.github.tvbox.osc.api;
+
+import com.github.tvbox.osc.bean.ParseBean;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.util.VideoParseRuler;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 订阅配置的流式解析
+ * 直接用 JsonReader 把 sites/parses/rules 读成 SourceBean、ParseBean 和 HostRule,
+ * 不再先构建整棵 JsonObject 树; 只有 lives/ijk 这类体积很小的节点才保留为 JsonArray
+ */
+public class ConfigReader {
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    public String spider = "";
+    public String wallpaper = "";
+    public final List<SourceBean> sites = new ArrayList<>();
+    public final List<ParseBean> parses = new ArrayList<>();
+    public ArrayList<String> flags = new ArrayList<>();
+    public final ArrayList<String> ads = new ArrayList<>();
+    public JsonArray lives = null;
+    public JsonArray ijk = null;
+    public boolean hasRules = false;
+    public final List<HostRule> rules = new ArrayList<>();
+
+    public static class HostRule {
+        public final String host;
+        public final ArrayList<String> rule;
+        public final boolean filter;
+
+        public HostRule(String host, ArrayList<String> rule, boolean filter) {
+            this.host = host;
+            this.rule = rule;
+            this.filter = filter;
+        }
+    }
+
+    public static ConfigReader read(File file) throws IOException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), BUFFER_SIZE)) {
+            return read(reader);
+        }
+    }
+
+    public static ConfigReader read(String json) throws IOException {
+        return read(new StringReader(json));
+    }
+
+    public static ConfigReader read(Reader in) throws IOException {
+        ConfigReader config = new ConfigReader();
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+        boolean hasSites = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "spider":
+                    config.spider = nextString(reader, "");
+                    break;
+                case "wallpaper":
+                    config.wallpaper = nextString(reader, "");
+                    break;
+                case "sites":
+                    hasSites = true;
+                    readSites(reader, config.sites);
+                    break;
+                case "parses":
+                    readParses(reader, config.parses);
+                    break;
+                case "flags":
+                    config.flags = nextStringList(reader);
+                    break;
+                case "lives":
+                    config.lives = nextArray(reader);
+                    break;
+                case "ijk":
+                    config.ijk = nextArray(reader);
+                    break;
+                case "ads":
+                    config.ads.addAll(nextStringList(reader));
+                    break;
+                case "rules":
+                    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        config.hasRules = true;
+                        readRules(reader, config.rules);
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (!hasSites)
+            throw new JsonParseException("配置缺少 sites");
+        return config;
+    }
+
+    private static void readSites(JsonReader reader, List<SourceBean> sites) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            SourceBean sb = new SourceBean();
+            sb.setSearchable(1);
+            sb.setQuickSearch(1);
+            sb.setFilterable(1);
+            sb.setPlayerUrl("");
+            sb.setExt("");
+            sb.setJar("");
+            sb.setPlayerType(-1);
+            sb.setCategories(new ArrayList<>());
+            sb.setClickSelector("");
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "key":
+                        sb.setKey(nextString(reader, null));
+                        break;
+                    case "name":
+                        sb.setName(nextString(reader, ""));
+                        break;
+                    case "type":
+                        sb.setType(nextInt(reader, 0));
+                        break;
+                    case "api":
+                        sb.setApi(nextString(reader, null));
+                        break;
+                    case "searchable":
+                        sb.setSearchable(nextInt(reader, 1));
+                        break;
+                    case "quickSearch":
+                        sb.setQuickSearch(nextInt(reader, 1));
+                        break;
+                    case "filterable":
+                        sb.setFilterable(nextInt(reader, 1));
+                        break;
+                    case "playUrl":
+                        sb.setPlayerUrl(nextString(reader, ""));
+                        break;
+                    case "ext":
+                        sb.setExt(nextRaw(reader));
+                        break;
+                    case "jar":
+                        sb.setJar(nextString(reader, ""));
+                        break;
+                    case "playerType":
+                        sb.setPlayerType(nextInt(reader, -1));
+                        break;
+                    case "categories":
+                        sb.setCategories(nextStringList(reader));
+                        break;
+                    case "click":
+                        sb.setClickSelector(nextString(reader, ""));
+                        break;
+                    case "timeout":
+                        sb.setTimeout(nextInt(reader, 0));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (sb.getKey() == null || sb.getApi() == null)
+                throw new JsonParseException("站点缺少 key/api");
+            sites.add(sb);
+        }
+        reader.endArray();
+    }
+
+    private static void readParses(JsonReader reader, List<ParseBean> parses) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ParseBean pb = new ParseBean();
+            pb.setExt("");
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name":
+                        pb.setName(nextString(reader, null));
+                        break;
+                    case "url":
+                        pb.setUrl(nextString(reader, null));
+                        break;
+                    case "ext":
+                        pb.setExt(nextRaw(reader));
+                        break;
+                    case "type":
+                        pb.setType(nextInt(reader, 0));
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (pb.getName() == null || pb.getUrl() == null)
+                throw new JsonParseException("解析缺少 name/url");
+            parses.add(pb);
+        }
+        reader.endArray();
+    }
+
+    private static void readRules(JsonReader reader, List<HostRule> rules) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String host = null;
+            ArrayList<String> rule = null;
+            ArrayList<String> filter = null;
+            ArrayList<String> hosts = null;
+            ArrayList<String> regex = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "host":
+                        host = nextString(reader, null);
+                        break;
+                    case "rule":
+                        rule = nextStringList(reader);
+                        break;
+                    case "filter":
+                        filter = nextStringList(reader);
+                        break;
+                    case "hosts":
+                        hosts = nextStringList(reader);
+                        break;
+                    case "regex":
+                        regex = nextStringList(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (host != null) {
+                if (rule != null && rule.size() > 0)
+                    rules.add(new HostRule(host, rule, false));
+                if (filter != null && filter.size() > 0)
+                    rules.add(new HostRule(host, filter, true));
+            }
+            if (hosts != null && regex != null) {
+                for (String one : hosts) {
+                    rules.add(new HostRule(one, regex, false));
+                }
+            }
+        }
+        reader.endArray();
+    }
+
+    /**
+     * 规则在整份配置解析成功后才写入 VideoParseRuler, 避免解析到一半失败时留下残缺的规则
+     */
+    public void applyRules() {
+        if (!hasRules)
+            return;
+        VideoParseRuler.clearRule();
+        for (HostRule one : rules) {
+            if (one.filter)
+                VideoParseRuler.addHostFilter(one.host, one.rule);
+            else
+                VideoParseRuler.addHostRule(one.host, one.rule);
+        }
+    }
+
+    private static String nextString(JsonReader reader, String defaultVal) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER)
+            return reader.nextString().trim();
+        if (token == JsonToken.BOOLEAN)
+            return String.valueOf(reader.nextBoolean());
+        reader.skipValue();
+        return defaultVal;
+    }
+
+    private static int nextInt(JsonReader reader, int defaultVal) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+            try {
+                return reader.nextInt();
+            } catch (NumberFormatException e) {
+                // nextInt 失败时不会消费当前值
+                reader.skipValue();
+                return defaultVal;
+            }
+        }
+        reader.skipValue();
+        return defaultVal;
+    }
+
+    /**
+     * ext 既可能是字符串, 也可能是对象/数组, 对象/数组按原样序列化为字符串
+     */
+    private static String nextRaw(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT || token == JsonToken.BEGIN_ARRAY)
+            return JsonParser.parseReader(reader).toString();
+        return nextString(reader, "");
+    }
+
+    private static ArrayList<String> nextStringList(JsonReader reader) throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return result;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = nextString(reader, null);
+            if (value != null)
+                result.add(value);
+        }
+        reader.endArray();
+        return result;
+    }
+
+    private static JsonArray nextArray(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        JsonElement element = JsonParser.parseReader(reader);
+        return element.getAsJsonArray();
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.tvbox.osc.api;
+
+import com.github.tvbox.osc.bean.ParseBean;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析后配置的二进制快照, 与 MD5(apiUrl) 缓存文件放在一起
+ * 启动时直接读快照恢复 ConfigReader, 跳过 JSON 解析; 快照版本或源文件 MD5 不一致时视为失效
+ */
+public class ConfigSnapshot {
+    private static final int MAGIC = 0x54564253; // TVBS
+    /**
+     * ConfigReader / SourceBean / ParseBean 字段有变化时必须递增
+     */
+    private static final int VERSION = 2;
+
+    public static File fileOf(File cache) {
+        return new File(cache.getAbsolutePath() + ".snap");
+    }
+
+    /**
+     * @return 快照不存在或已失效时返回 null
+     */
+    public static ConfigReader read(File file, String sourceMd5) {
+        if (!file.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            if (!sourceMd5.equalsIgnoreCase(readString(in)))
+                return null;
+            ConfigReader config = new ConfigReader();
+            config.spider = readString(in);
+            config.wallpaper = readString(in);
+            int siteCount = in.readInt();
+            for (int i = 0; i < siteCount; i++) {
+                SourceBean sb = new SourceBean();
+                sb.setKey(readString(in));
+                sb.setName(readString(in));
+                sb.setApi(readString(in));
+                sb.setType(in.readInt());
+                sb.setSearchable(in.readBoolean() ? 1 : 0);
+                sb.setQuickSearch(in.readBoolean() ? 1 : 0);
+                sb.setFilterable(in.readInt());
+                sb.setPlayerUrl(readString(in));
+                sb.setExt(readString(in));
+                sb.setJar(readString(in));
+                sb.setPlayerType(in.readInt());
+                sb.setCategories(readStringList(in));
+                sb.setClickSelector(readString(in));
+                sb.setTimeout(in.readInt());
+                config.sites.add(sb);
+            }
+            int parseCount = in.readInt();
+            for (int i = 0; i < parseCount; i++) {
+                ParseBean pb = new ParseBean();
+                pb.setName(readString(in));
+                pb.setUrl(readString(in));
+                pb.setExt(readString(in));
+                pb.setType(in.readInt());
+                config.parses.add(pb);
+            }
+            config.flags = readStringList(in);
+            config.ads.addAll(readStringList(in));
+            String lives = readString(in);
+            if (lives != null)
+                config.lives = JsonParser.parseString(lives).getAsJsonArray();
+            String ijk = readString(in);
+            if (ijk != null)
+                config.ijk = JsonParser.parseString(ijk).getAsJsonArray();
+            config.hasRules = in.readBoolean();
+            int ruleCount = in.readInt();
+            for (int i = 0; i < ruleCount; i++) {
+                String host = readString(in);
+                boolean filter = in.readBoolean();
+                config.rules.add(new ConfigReader.HostRule(host, readStringList(in), filter));
+            }
+            return config;
+        } catch (Throwable th) {
+            th.printStackTrace();
+            file.delete();
+        }
+        return null;
+    }
+
+    public static void write(File file, String sourceMd5, ConfigReader config) {
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 16 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, sourceMd5);
+            writeString(out, config.spider);
+            writeString(out, config.wallpaper);
+            out.writeInt(config.sites.size());
+            for (SourceBean sb : config.sites) {
+                writeString(out, sb.getKey());
+                writeString(out, sb.getName());
+                writeString(out, sb.getApi());
+                out.writeInt(sb.getType());
+                out.writeBoolean(sb.isSearchable());
+                out.writeBoolean(sb.isQuickSearch());
+                out.writeInt(sb.getFilterable());
+                writeString(out, sb.getPlayerUrl());
+                writeString(out, sb.getExt());
+                writeString(out, sb.getJar());
+                out.writeInt(sb.getPlayerType());
+                writeStringList(out, sb.getCategories());
+                writeString(out, sb.getClickSelector());
+                out.writeInt(sb.getTimeout());
+            }
+            out.writeInt(config.parses.size());
+            for (ParseBean pb : config.parses) {
+                writeString(out, pb.getName());
+                writeString(out, pb.getRawUrl());
+                writeString(out, pb.getExt());
+                out.writeInt(pb.getType());
+            }
+            writeStringList(out, config.flags);
+            writeStringList(out, config.ads);
+            writeString(out, config.lives == null ? null : config.lives.toString());
+            writeString(out, config.ijk == null ? null : config.ijk.toString());
+            out.writeBoolean(config.hasRules);
+            out.writeInt(config.rules.size());
+            for (ConfigReader.HostRule one : config.rules) {
+                writeString(out, one.host);
+                out.writeBoolean(one.filter);
+                writeStringList(out, one.rule);
+            }
+        } catch (Throwable th) {
+            th.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file))
+            tmp.delete();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStringList(DataOutputStream out, List<String> list) throws IOException {
+        if (list == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(list.size());
+        for (String one : list) {
+            writeString(out, one);
+        }
+    }
+
+    private static ArrayList<String> readStringList(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        ArrayList<String> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+}
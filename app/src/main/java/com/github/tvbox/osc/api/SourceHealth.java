@@ -0,0 +1,186 @@
+package com.github.tvbox.osc.api;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 单个站点某一类调用(SpiderInvoker 的方法名)最近的耗时/成功率统计和熔断状态
+ * 搜索另外记录返回的结果是否匹配搜索词(命中率), 用于决定搜索顺序; 统计由 SpiderInvoker 保存, 重启后继续使用, 熔断状态不保存
+ */
+public class SourceHealth {
+    private static final int WINDOW = 32;
+    // 连续失败多少次后熔断
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_MILLIS = 60 * 1000;
+    private static final long MAX_OPEN_MILLIS = 10 * 60 * 1000;
+    // 命中率的下限, 避免从未命中的站点代价无穷大
+    private static final float MIN_HIT_RATE = 0.05f;
+
+    public final String key;
+    public final String method;
+    private final long[] latencies = new long[WINDOW];
+    private final boolean[] results = new boolean[WINDOW];
+    private int count = 0;
+    private int index = 0;
+    private final boolean[] hits = new boolean[WINDOW];
+    private int hitCount = 0;
+    private int hitIndex = 0;
+    private transient int consecutiveFailures = 0;
+    private transient int openTimes = 0;
+    private transient long openUntil = 0;
+    private transient boolean probing = false;
+
+    public SourceHealth(String key, String method) {
+        this.key = key;
+        this.method = method;
+    }
+
+    /**
+     * 熔断期间直接拒绝; 熔断到期后只放行一个探测调用, 成功则恢复
+     */
+    public synchronized boolean tryAcquire() {
+        if (openUntil == 0)
+            return true;
+        if (System.currentTimeMillis() < openUntil || probing)
+            return false;
+        probing = true;
+        return true;
+    }
+
+    public synchronized void onSuccess(long costMillis) {
+        record(costMillis, true);
+        consecutiveFailures = 0;
+        openTimes = 0;
+        openUntil = 0;
+        probing = false;
+    }
+
+    public synchronized void onFailure(long costMillis) {
+        record(costMillis, false);
+        consecutiveFailures++;
+        if (probing || consecutiveFailures >= FAILURE_THRESHOLD) {
+            long open = Math.min(OPEN_MILLIS << Math.min(openTimes, 4), MAX_OPEN_MILLIS);
+            openTimes++;
+            openUntil = System.currentTimeMillis() + open;
+        }
+        probing = false;
+    }
+
+    /**
+     * 调用被取消时释放探测名额, 不计入统计
+     */
+    public synchronized void onCancel() {
+        probing = false;
+    }
+
+    /**
+     * 记录一次成功的搜索是否返回了匹配搜索词的结果
+     */
+    public synchronized void recordHit(boolean hit) {
+        hits[hitIndex] = hit;
+        hitIndex = (hitIndex + 1) % WINDOW;
+        if (hitCount < WINDOW)
+            hitCount++;
+    }
+
+    private void record(long costMillis, boolean success) {
+        latencies[index] = costMillis;
+        results[index] = success;
+        index = (index + 1) % WINDOW;
+        if (count < WINDOW)
+            count++;
+    }
+
+    public synchronized boolean isOpen() {
+        return openUntil != 0 && System.currentTimeMillis() < openUntil;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * @return 最近调用的成功率, 没有样本时返回 1
+     */
+    public synchronized float getSuccessRate() {
+        if (count == 0)
+            return 1f;
+        int success = 0;
+        for (int i = 0; i < count; i++) {
+            if (results[i])
+                success++;
+        }
+        return success / (float) count;
+    }
+
+    /**
+     * @return 最近调用耗时的中位数(毫秒), 没有样本时返回 -1
+     */
+    public synchronized long getP50Latency() {
+        if (count == 0)
+            return -1;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return sorted[count / 2];
+    }
+
+    /**
+     * @return 最近成功的搜索里返回匹配结果的比例, 没有样本时返回 1
+     */
+    public synchronized float getHitRate() {
+        if (hitCount == 0)
+            return 1f;
+        int hit = 0;
+        for (int i = 0; i < hitCount; i++) {
+            if (hits[i])
+                hit++;
+        }
+        return hit / (float) hitCount;
+    }
+
+    /**
+     * 预期代价: p50 耗时除以 成功率×命中率, 越小越值得先调用; 没有样本时返回 -1
+     */
+    public synchronized long getExpectedCost() {
+        if (count == 0)
+            return -1;
+        return (long) (getP50Latency() / Math.max(getSuccessRate() * getHitRate(), MIN_HIT_RATE));
+    }
+
+    /**
+     * 从文件读回的数据是否完整, 窗口大小变化过的旧数据直接丢弃
+     */
+    synchronized boolean isValid() {
+        return key != null && method != null && latencies != null && latencies.length == WINDOW && results != null && results.length == WINDOW
+                && hits != null && hits.length == WINDOW && count >= 0 && count <= WINDOW && index >= 0 && index < WINDOW
+                && hitCount >= 0 && hitCount <= WINDOW && hitIndex >= 0 && hitIndex < WINDOW;
+    }
+
+    public synchronized long getAvgLatency() {
+        if (count == 0)
+            return -1;
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += latencies[i];
+        }
+        return sum / count;
+    }
+
+    /**
+     * 界面上显示的简短状态, 没有样本时返回空字符串
+     */
+    public synchronized String getSummary() {
+        if (isOpen())
+            return "暂不可用";
+        if (count == 0)
+            return "";
+        long p50 = getP50Latency();
+        String latency = p50 < 1000 ? p50 + "ms" : String.format(Locale.US, "%.1fs", p50 / 1000f);
+        return latency + " " + Math.round(getSuccessRate() * 100) + "%";
+    }
+
+    @Override
+    public String toString() {
+        return key + " " + method + " p50 " + getP50Latency() + "ms, 成功率 " + Math.round(getSuccessRate() * 100) + "%" + (isOpen() ? ", 已熔断" : "");
+    }
+}
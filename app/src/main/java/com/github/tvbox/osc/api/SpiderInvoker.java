@@ -0,0 +1,221 @@
+package com.github.tvbox.osc.api;
+
+import com.github.catvod.crawler.Spider;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.util.FileUtils;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 所有 Spider 方法的统一调用入口
+ * 每次调用都有超时(站点配置的 timeout 或默认值), 连续失败/超时会熔断一段时间,
+ * 熔断和最近的耗时、成功率都按 (站点 key, 方法) 分开统计, 播放失败不会影响同一站点的浏览和搜索; 统计供搜索排序和界面展示,
+ * 保存在 files/source_health.json, 第一次用到时读回
+ */
+public class SpiderInvoker {
+    public static final String HOME = "home";
+    public static final String HOME_VIDEO = "homeVideo";
+    public static final String CATEGORY = "category";
+    public static final String DETAIL = "detail";
+    public static final String SEARCH = "search";
+    public static final String PLAY = "play";
+
+    private static final long DEFAULT_TIMEOUT_SECONDS = 15;
+    // 卡死的爬虫会一直占着线程, 线程数有上限, 占满后新的调用直接失败, 不再无限创建线程
+    private static final int MAX_THREADS = 32;
+
+    private static final ConcurrentHashMap<String, SourceHealth> healths = new ConcurrentHashMap<>();
+    private static volatile boolean loaded = false;
+    // 统计保存的位置, App 启动时设置; 没有设置时(JVM 测试)只在内存里统计
+    private static volatile File file;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    // 被卡死的调用只占用这里的线程, 不会拖住调用方的线程池
+    private static final ExecutorService executor = new ThreadPoolExecutor(0, MAX_THREADS, 30, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+        Thread thread = new Thread(r, "spider-invoke-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public interface SpiderCall<T> {
+        T call(Spider spider) throws Exception;
+    }
+
+    /**
+     * 站点处于熔断期时抛出
+     */
+    public static class CircuitOpenException extends Exception {
+        public CircuitOpenException(String key) {
+            super("站点暂时不可用: " + key);
+        }
+    }
+
+    /**
+     * 在调用线程上阻塞等待结果, 超时/失败/熔断都会抛出异常, 不要在主线程调用
+     *
+     * @throws RejectedExecutionException 调用线程已满(大量爬虫卡死), 不计入站点统计
+     */
+    public static <T> T invoke(SourceBean sourceBean, String method, SpiderCall<T> call) throws Exception {
+        SourceHealth health = getHealth(sourceBean.getKey(), method);
+        if (!health.tryAcquire())
+            throw new CircuitOpenException(sourceBean.getKey());
+        long start = System.currentTimeMillis();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> call.call(ApiConfig.get().getCSP(sourceBean)));
+        } catch (RejectedExecutionException e) {
+            health.onCancel();
+            throw e;
+        }
+        try {
+            T result = future.get(timeoutSeconds(sourceBean), TimeUnit.SECONDS);
+            health.onSuccess(System.currentTimeMillis() - start);
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            health.onFailure(System.currentTimeMillis() - start);
+            throw new TimeoutException(sourceBean.getKey() + " " + method + " 超时");
+        } catch (InterruptedException e) {
+            // 调用方被取消, 不计入站点统计
+            future.cancel(true);
+            health.onCancel();
+            throw e;
+        } catch (ExecutionException e) {
+            health.onFailure(System.currentTimeMillis() - start);
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    private static long timeoutSeconds(SourceBean sourceBean) {
+        if (sourceBean.getTimeout() > 0)
+            return sourceBean.getTimeout();
+        return DEFAULT_TIMEOUT_SECONDS;
+    }
+
+    /**
+     * 不经过 Spider 的调用(接口站点直接发的网络请求)在调用线程上执行, 同样计入统计和熔断; 超时由网络请求自己控制
+     */
+    public static <T> T track(SourceBean sourceBean, String method, Callable<T> call) throws Exception {
+        SourceHealth health = getHealth(sourceBean.getKey(), method);
+        if (!health.tryAcquire())
+            throw new CircuitOpenException(sourceBean.getKey());
+        long start = System.currentTimeMillis();
+        try {
+            T result = call.call();
+            health.onSuccess(System.currentTimeMillis() - start);
+            return result;
+        } catch (Throwable th) {
+            if (th instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                health.onCancel();
+            } else {
+                health.onFailure(System.currentTimeMillis() - start);
+            }
+            if (th instanceof Exception)
+                throw (Exception) th;
+            throw (Error) th;
+        }
+    }
+
+    public static SourceHealth getHealth(String key, String method) {
+        String id = key + "@" + method;
+        SourceHealth health = healths().get(id);
+        if (health == null) {
+            health = new SourceHealth(key, method);
+            SourceHealth old = healths.putIfAbsent(id, health);
+            if (old != null)
+                health = old;
+        }
+        return health;
+    }
+
+    /**
+     * @return 还没有调用过时返回 null
+     */
+    public static SourceHealth peekHealth(String key, String method) {
+        return healths().get(key + "@" + method);
+    }
+
+    public static boolean isAvailable(String key, String method) {
+        SourceHealth health = peekHealth(key, method);
+        return health == null || !health.isOpen();
+    }
+
+    public static List<SourceHealth> getAllHealth() {
+        return new ArrayList<>(healths().values());
+    }
+
+    /**
+     * 设置统计文件所在目录, 在第一次调用爬虫前调用
+     */
+    public static void init(File dir) {
+        file = new File(dir, "source_health.json");
+    }
+
+    /**
+     * 写入文件, 在工作线程调用
+     */
+    public static synchronized void save() {
+        if (!loaded || file == null)
+            return;
+        try {
+            Gson gson = new Gson();
+            JsonArray array = new JsonArray();
+            for (SourceHealth health : healths.values()) {
+                synchronized (health) {
+                    array.add(gson.toJsonTree(health));
+                }
+            }
+            FileUtils.writeSimple(array.toString().getBytes(StandardCharsets.UTF_8), file);
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+    }
+
+    private static ConcurrentHashMap<String, SourceHealth> healths() {
+        if (!loaded)
+            load();
+        return healths;
+    }
+
+    private static synchronized void load() {
+        if (loaded)
+            return;
+        try {
+            if (file == null || !file.exists())
+                return;
+            List<SourceHealth> saved = new Gson().fromJson(new String(FileUtils.readSimple(file), StandardCharsets.UTF_8), new TypeToken<List<SourceHealth>>() {
+            }.getType());
+            if (saved == null)
+                return;
+            for (SourceHealth health : saved) {
+                // 已经有调用记录的不覆盖
+                if (health != null && health.isValid())
+                    healths.putIfAbsent(health.key + "@" + health.method, health);
+            }
+        } catch (Throwable th) {
+            th.printStackTrace();
+        } finally {
+            loaded = true;
+        }
+    }
+}
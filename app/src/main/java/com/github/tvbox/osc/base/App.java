@@ -6,6 +6,7 @@ import androidx.multidex.MultiDexApplication;
 
 import com.github.catvod.crawler.JsLoader;
 import com.github.tvbox.osc.R;
+import com.github.tvbox.osc.api.SpiderInvoker;
 import com.github.tvbox.osc.bean.Subscription;
 import com.github.tvbox.osc.bean.VodInfo;
 import com.github.tvbox.osc.callback.EmptyCallback;
@@ -58,6 +59,7 @@ public class App extends MultiDexApplication {
         ControlManager.init(this);
         //初始化数据库
         AppDataManager.init();
+        SpiderInvoker.init(getFilesDir());
         LoadSir.beginBuilder()
                 .addCallback(new EmptyCallback())
                 .addCallback(new LoadingCallback())
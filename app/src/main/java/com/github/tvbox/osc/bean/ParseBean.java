@@ -30,6 +30,13 @@ public class ParseBean {
         return DefaultConfig.checkReplaceProxy(url);
     }
 
+    /**
+     * 未替换 proxy:// 的原始地址, 用于写入配置快照
+     */
+    public String getRawUrl() {
+        return url;
+    }
+
     public void setUrl(String url) {
         this.url = url;
     }
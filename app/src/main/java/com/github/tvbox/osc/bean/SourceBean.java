@@ -16,6 +16,7 @@ public class SourceBean {
     private ArrayList<String> categories = null; // 分类&排序
     private int playerType; // 0 system 1 ikj 2 exo 10 mxplayer -1 以参数设置页面的为准
     private String clickSelector; // 需要点击播放的嗅探站点selector   ddrk.me;#id
+    private int timeout; // 爬虫调用超时(秒), 0 使用默认值
 
     public String getKey() {
         return key;
@@ -112,4 +113,8 @@ public class SourceBean {
     public String getClickSelector() { return clickSelector; }
 
     public void setClickSelector(String clickSelector) { this.clickSelector = clickSelector; }
+
+    public int getTimeout() { return timeout; }
+
+    public void setTimeout(int timeout) { this.timeout = timeout; }
 }
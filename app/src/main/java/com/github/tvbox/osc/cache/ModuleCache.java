@@ -0,0 +1,287 @@
+package com.github.tvbox.osc.cache;
+
+import android.text.TextUtils;
+
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.util.UA;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.lzy.okgo.OkGo;
+import com.lzy.okgo.request.GetRequest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.Response;
+
+/**
+ * 远程 JS 模块缓存
+ * 模块内容按 sha1 存成原始字节文件(相同内容只存一份), index.json 记录 url -> (内容, ETag/Last-Modified, 校验时间);
+ * 命中时直接映射文件读取, 超过校验间隔的在后台发条件请求更新, 超过最长期限的才同步重新下载
+ */
+public class ModuleCache {
+    // 超过这个时间在后台校验一次
+    private static final long REVALIDATE_MILLIS = 60 * 60 * 1000;
+    // 超过这个时间必须重新下载, 下载失败时仍用旧内容
+    private static final long EXPIRE_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final ExecutorService revalidator = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "module-revalidate");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<String> revalidating = new HashSet<>();
+    private static HashMap<String, Entry> index;
+
+    private static class Entry {
+        String hash;
+        String etag;
+        String lastModified;
+        long checkedAt;
+    }
+
+    private static class Fetched {
+        final int code;
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+
+        Fetched(int code, byte[] body, String etag, String lastModified) {
+            this.code = code;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * @return 模块内容, 失败返回 ""; 会走网络, 不要在主线程调用
+     */
+    public static String get(String url) {
+        Entry entry;
+        synchronized (ModuleCache.class) {
+            entry = index().get(url);
+        }
+        String cached = entry == null ? null : readBlob(entry.hash);
+        if (cached == null)
+            return download(url, null);
+        long age = System.currentTimeMillis() - entry.checkedAt;
+        if (age > EXPIRE_MILLIS) {
+            String fresh = download(url, entry);
+            return TextUtils.isEmpty(fresh) ? cached : fresh;
+        }
+        if (age > REVALIDATE_MILLIS)
+            revalidate(url, entry);
+        return cached;
+    }
+
+    /**
+     * 直接读本地文件, 代替经过本机 http 服务中转
+     */
+    public static String readLocal(File file) {
+        String content = read(file);
+        return content == null ? "" : content;
+    }
+
+    public static synchronized void clear() {
+        index = new HashMap<>();
+        FileUtils.recursiveDelete(dir());
+    }
+
+    private static void revalidate(String url, Entry entry) {
+        synchronized (revalidating) {
+            if (!revalidating.add(url))
+                return;
+        }
+        revalidator.execute(() -> {
+            try {
+                download(url, entry);
+            } finally {
+                synchronized (revalidating) {
+                    revalidating.remove(url);
+                }
+            }
+        });
+    }
+
+    /**
+     * 下载并更新缓存, old 不为空时发条件请求, 未修改则只刷新校验时间
+     *
+     * @return 新内容, 未修改或失败返回 ""
+     */
+    private static String download(String url, Entry old) {
+        Fetched fetched = fetch(url, old);
+        if (fetched == null)
+            return "";
+        if (fetched.code == 304 && old != null) {
+            Entry entry = copy(old);
+            entry.checkedAt = System.currentTimeMillis();
+            update(url, entry);
+            return "";
+        }
+        if (fetched.body == null || fetched.body.length == 0)
+            return "";
+        Entry entry = new Entry();
+        entry.hash = sha1(fetched.body);
+        entry.etag = fetched.etag;
+        entry.lastModified = fetched.lastModified;
+        entry.checkedAt = System.currentTimeMillis();
+        File blob = blobOf(entry.hash);
+        if (!blob.exists())
+            writeAtomic(blob, fetched.body);
+        update(url, entry);
+        return new String(fetched.body, StandardCharsets.UTF_8);
+    }
+
+    private static Fetched fetch(String url, Entry old) {
+        try {
+            GetRequest<String> request = OkGo.<String>get(url).headers("User-Agent", url.startsWith("https://gitcode.net/") ? UA.random() : "okhttp/3.15");
+            if (old != null && !TextUtils.isEmpty(old.etag))
+                request.headers("If-None-Match", old.etag);
+            if (old != null && !TextUtils.isEmpty(old.lastModified))
+                request.headers("If-Modified-Since", old.lastModified);
+            try (Response response = request.execute()) {
+                if (response.code() == 304)
+                    return new Fetched(304, null, null, null);
+                if (!response.isSuccessful() || response.body() == null)
+                    return null;
+                return new Fetched(response.code(), response.body().bytes(), response.header("ETag"), response.header("Last-Modified"));
+            }
+        } catch (Throwable th) {
+            LOG.e(th);
+            return null;
+        }
+    }
+
+    private static synchronized void update(String url, Entry entry) {
+        Entry old = index().put(url, entry);
+        if (old != null && !old.hash.equals(entry.hash)) {
+            boolean shared = false;
+            for (Entry one : index.values()) {
+                if (one.hash.equals(old.hash)) {
+                    shared = true;
+                    break;
+                }
+            }
+            if (!shared)
+                blobOf(old.hash).delete();
+        }
+        writeAtomic(indexFile(), new Gson().toJson(index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static HashMap<String, Entry> index() {
+        if (index != null)
+            return index;
+        index = new HashMap<>();
+        dropLegacy();
+        String json = read(indexFile());
+        if (json != null) {
+            try {
+                HashMap<String, Entry> saved = new Gson().fromJson(json, new TypeToken<HashMap<String, Entry>>() {
+                }.getType());
+                if (saved != null) {
+                    for (Map.Entry<String, Entry> one : saved.entrySet()) {
+                        if (one.getValue() != null && one.getValue().hash != null)
+                            index.put(one.getKey(), one.getValue());
+                    }
+                }
+            } catch (Throwable th) {
+                LOG.e(th);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 删除旧版本 base64 + json 格式的 qjscache_*.js 缓存
+     */
+    private static void dropLegacy() {
+        File[] files = FileUtils.getExternalCacheDir() == null ? null : FileUtils.getExternalCacheDir().listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith("qjscache_") && !name.startsWith("qjscache_B_"))
+                file.delete();
+        }
+    }
+
+    private static Entry copy(Entry old) {
+        Entry entry = new Entry();
+        entry.hash = old.hash;
+        entry.etag = old.etag;
+        entry.lastModified = old.lastModified;
+        entry.checkedAt = old.checkedAt;
+        return entry;
+    }
+
+    private static File dir() {
+        return new File(FileUtils.getCacheDir(), "js_module");
+    }
+
+    private static File indexFile() {
+        return new File(dir(), "index.json");
+    }
+
+    private static File blobOf(String hash) {
+        return new File(dir(), hash + ".js");
+    }
+
+    private static String readBlob(String hash) {
+        return hash == null ? null : read(blobOf(hash));
+    }
+
+    /**
+     * 把文件映射到内存后直接按 UTF-8 解码, 不再经过 json 和 base64
+     */
+    private static String read(File file) {
+        if (!file.isFile())
+            return null;
+        try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+            return StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).toString();
+        } catch (Throwable th) {
+            LOG.e(th);
+            return null;
+        }
+    }
+
+    private static void writeAtomic(File file, byte[] data) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists())
+            dir.mkdirs();
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        } catch (Throwable th) {
+            LOG.e(th);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file))
+            tmp.delete();
+    }
+
+    private static String sha1(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (Throwable th) {
+            return Integer.toHexString(new String(data, StandardCharsets.UTF_8).hashCode());
+        }
+    }
+}
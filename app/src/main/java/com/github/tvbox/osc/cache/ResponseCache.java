@@ -0,0 +1,197 @@
+package com.github.tvbox.osc.cache;
+
+import android.util.LruCache;
+
+import com.github.tvbox.osc.api.SpiderInvoker;
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.MD5;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 爬虫 home/category/detail 返回 JSON 的缓存, 按 (站点 key, 方法, 参数) 索引
+ * 内存里是按字符数限制大小的 LRU, 磁盘上每条一个文件; 各方法有自己的有效期, 过期视为未命中
+ */
+public class ResponseCache {
+    // 内存缓存最多保存的字符数
+    private static final int MEMORY_CHARS = 4 * 1024 * 1024;
+    // 磁盘缓存最多保存的条目数
+    private static final int DISK_ENTRIES = 300;
+
+    private static final LruCache<String, Entry> memory = new LruCache<String, Entry>(MEMORY_CHARS) {
+        @Override
+        protected int sizeOf(String key, Entry value) {
+            return key.length() + value.json.length();
+        }
+    };
+
+    private static class Entry {
+        final String sourceKey;
+        final String json;
+        final long expireAt;
+
+        Entry(String sourceKey, String json, long expireAt) {
+            this.sourceKey = sourceKey;
+            this.json = json;
+            this.expireAt = expireAt;
+        }
+
+        boolean expired() {
+            return System.currentTimeMillis() > expireAt;
+        }
+    }
+
+    /**
+     * @return 方法的有效期(毫秒), 0 表示不缓存
+     */
+    private static long ttlOf(String method) {
+        switch (method) {
+            case SpiderInvoker.HOME:
+            case SpiderInvoker.HOME_VIDEO:
+                return 30 * 60 * 1000;
+            case SpiderInvoker.CATEGORY:
+                return 10 * 60 * 1000;
+            case SpiderInvoker.DETAIL:
+                return 60 * 60 * 1000;
+            default:
+                return 0;
+        }
+    }
+
+    private static String keyOf(String sourceKey, String method, String args) {
+        return sourceKey + "|" + method + "|" + args;
+    }
+
+    /**
+     * @return 未命中或已过期返回 null, 不要在主线程调用(可能读磁盘)
+     */
+    public static String get(String sourceKey, String method, String args) {
+        if (ttlOf(method) <= 0)
+            return null;
+        String key = keyOf(sourceKey, method, args);
+        Entry entry = memory.get(key);
+        if (entry == null) {
+            entry = readDisk(sourceKey, key);
+            if (entry != null)
+                memory.put(key, entry);
+        }
+        if (entry == null)
+            return null;
+        if (entry.expired()) {
+            memory.remove(key);
+            fileOf(sourceKey, key).delete();
+            return null;
+        }
+        return entry.json;
+    }
+
+    public static void put(String sourceKey, String method, String args, String json) {
+        long ttl = ttlOf(method);
+        if (ttl <= 0 || json == null || json.isEmpty())
+            return;
+        String key = keyOf(sourceKey, method, args);
+        Entry entry = new Entry(sourceKey, json, System.currentTimeMillis() + ttl);
+        memory.put(key, entry);
+        writeDisk(key, entry);
+    }
+
+    /**
+     * 清除某个站点的所有缓存, 站点配置变化或用户手动刷新时调用
+     */
+    public static void invalidate(String sourceKey) {
+        for (Map.Entry<String, Entry> one : memory.snapshot().entrySet()) {
+            if (one.getValue().sourceKey.equals(sourceKey))
+                memory.remove(one.getKey());
+        }
+        File[] files = dir().listFiles();
+        if (files == null)
+            return;
+        String prefix = MD5.string2MD5(sourceKey) + "_";
+        for (File file : files) {
+            if (file.getName().startsWith(prefix))
+                file.delete();
+        }
+    }
+
+    public static void invalidateAll() {
+        memory.evictAll();
+        FileUtils.recursiveDelete(dir());
+    }
+
+    private static File dir() {
+        return new File(FileUtils.getCacheDir(), "spider_response");
+    }
+
+    /**
+     * 文件名以站点 key 的 md5 开头, 按站点清除时不用逐个读文件
+     */
+    private static File fileOf(String sourceKey, String key) {
+        return new File(dir(), MD5.string2MD5(sourceKey) + "_" + MD5.string2MD5(key));
+    }
+
+    private static Entry readDisk(String sourceKey, String key) {
+        File file = fileOf(sourceKey, key);
+        if (!file.exists())
+            return null;
+        Entry entry = readFile(file);
+        if (entry == null)
+            file.delete();
+        return entry;
+    }
+
+    private static Entry readFile(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long expireAt = in.readLong();
+            String sourceKey = in.readUTF();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Entry(sourceKey, new String(bytes, StandardCharsets.UTF_8), expireAt);
+        } catch (Throwable th) {
+            return null;
+        }
+    }
+
+    private static synchronized void writeDisk(String key, Entry entry) {
+        File dir = dir();
+        if (!dir.exists() && !dir.mkdirs())
+            return;
+        trimDisk(dir);
+        File file = fileOf(entry.sourceKey, key);
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            byte[] bytes = entry.json.getBytes(StandardCharsets.UTF_8);
+            out.writeLong(entry.expireAt);
+            out.writeUTF(entry.sourceKey);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (Throwable th) {
+            th.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file))
+            tmp.delete();
+    }
+
+    /**
+     * 超出条目数时按修改时间删除最旧的一半
+     */
+    private static void trimDisk(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length < DISK_ENTRIES)
+            return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length / 2; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.github.tvbox.osc.cache;
+
+import android.util.LruCache;
+
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.MD5;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 搜索结果缓存, 按 (归一化搜索词, 是否快速搜索, 站点 key) 索引, 保存站点返回的原始内容
+ * 聚合搜索、详情页的快速搜索共用, 快速搜索没有自己的缓存时直接用完整搜索的; 内存 LRU 加磁盘文件两级,
+ * 没有结果的站点也缓存, 但有效期更短
+ */
+public class SearchCache {
+    public static final int FORMAT_JSON = 0;
+    public static final int FORMAT_XML = 1;
+
+    private static final long TTL = 15 * 60 * 1000;
+    private static final long EMPTY_TTL = 3 * 60 * 1000;
+    // 内存缓存最多保存的字符数
+    private static final int MEMORY_CHARS = 2 * 1024 * 1024;
+    // 磁盘缓存最多保存的条目数
+    private static final int DISK_ENTRIES = 500;
+
+    private static final LruCache<String, Entry> memory = new LruCache<String, Entry>(MEMORY_CHARS) {
+        @Override
+        protected int sizeOf(String key, Entry value) {
+            return key.length() + value.body.length();
+        }
+    };
+
+    public static class Entry {
+        final String sourceKey;
+        public final int format;
+        /**
+         * 站点返回的原始内容, 空字符串表示没有结果
+         */
+        public final String body;
+        final long expireAt;
+
+        Entry(String sourceKey, int format, String body, long expireAt) {
+            this.sourceKey = sourceKey;
+            this.format = format;
+            this.body = body;
+            this.expireAt = expireAt;
+        }
+
+        boolean expired() {
+            return System.currentTimeMillis() > expireAt;
+        }
+    }
+
+    /**
+     * 全角转半角、转小写、合并空白, 不做繁简转换, 站点对繁简的搜索结果可能不同
+     */
+    public static String normalizeQuery(String wd) {
+        if (wd == null)
+            return "";
+        StringBuilder sb = new StringBuilder(wd.length());
+        boolean space = false;
+        for (int i = 0; i < wd.length(); i++) {
+            char c = wd.charAt(i);
+            if (c == '\u3000') {
+                c = ' ';
+            } else if (c >= '\uFF01' && c <= '\uFF5E') {
+                c = (char) (c - 0xFEE0);
+            }
+            if (Character.isWhitespace(c)) {
+                space = sb.length() > 0;
+                continue;
+            }
+            if (space)
+                sb.append(' ');
+            space = false;
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static String keyOf(String wd, boolean quick, String sourceKey) {
+        return sourceKey + "|" + (quick ? "quick" : "search") + "|" + normalizeQuery(wd);
+    }
+
+    /**
+     * @return 未命中或已过期返回 null, 不要在主线程调用(可能读磁盘)
+     */
+    public static Entry get(String wd, boolean quick, String sourceKey) {
+        Entry entry = lookup(sourceKey, keyOf(wd, quick, sourceKey));
+        // 完整搜索的结果是快速搜索的超集
+        if (entry == null && quick)
+            entry = lookup(sourceKey, keyOf(wd, false, sourceKey));
+        return entry;
+    }
+
+    private static Entry lookup(String sourceKey, String key) {
+        Entry entry = memory.get(key);
+        if (entry == null) {
+            entry = readDisk(sourceKey, key);
+            if (entry != null)
+                memory.put(key, entry);
+        }
+        if (entry == null)
+            return null;
+        if (entry.expired()) {
+            memory.remove(key);
+            fileOf(sourceKey, key).delete();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 按解析结果缓存: 解析失败(data 为 null)不缓存; 解析出来没有结果的(包括站点返回的错误信息)按空结果缓存, 有效期短
+     *
+     * @param data body 解析后的结果
+     */
+    public static void put(String wd, boolean quick, String sourceKey, int format, String body, AbsXml data) {
+        if (data == null)
+            return;
+        boolean empty = data.movie == null || data.movie.videoList == null || data.movie.videoList.isEmpty();
+        put(wd, quick, sourceKey, format, empty ? "" : body);
+    }
+
+    /**
+     * @param body 站点返回的原始内容, 空表示没有结果
+     */
+    private static void put(String wd, boolean quick, String sourceKey, int format, String body) {
+        if (normalizeQuery(wd).isEmpty())
+            return;
+        if (body == null)
+            body = "";
+        String key = keyOf(wd, quick, sourceKey);
+        Entry entry = new Entry(sourceKey, format, body, System.currentTimeMillis() + (body.isEmpty() ? EMPTY_TTL : TTL));
+        memory.put(key, entry);
+        writeDisk(key, entry);
+    }
+
+    /**
+     * 清除某个站点的搜索缓存, 站点配置变化时调用
+     */
+    public static void invalidate(String sourceKey) {
+        for (Map.Entry<String, Entry> one : memory.snapshot().entrySet()) {
+            if (one.getValue().sourceKey.equals(sourceKey))
+                memory.remove(one.getKey());
+        }
+        File[] files = dir().listFiles();
+        if (files == null)
+            return;
+        String prefix = MD5.string2MD5(sourceKey) + "_";
+        for (File file : files) {
+            if (file.getName().startsWith(prefix))
+                file.delete();
+        }
+    }
+
+    public static void invalidateAll() {
+        memory.evictAll();
+        FileUtils.recursiveDelete(dir());
+    }
+
+    private static File dir() {
+        return new File(FileUtils.getCacheDir(), "spider_search");
+    }
+
+    private static File fileOf(String sourceKey, String key) {
+        return new File(dir(), MD5.string2MD5(sourceKey) + "_" + MD5.string2MD5(key));
+    }
+
+    private static Entry readDisk(String sourceKey, String key) {
+        File file = fileOf(sourceKey, key);
+        if (!file.exists())
+            return null;
+        Entry entry = readFile(file);
+        if (entry == null)
+            file.delete();
+        return entry;
+    }
+
+    private static Entry readFile(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long expireAt = in.readLong();
+            String sourceKey = in.readUTF();
+            int format = in.readInt();
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Entry(sourceKey, format, new String(bytes, StandardCharsets.UTF_8), expireAt);
+        } catch (Throwable th) {
+            return null;
+        }
+    }
+
+    private static synchronized void writeDisk(String key, Entry entry) {
+        File dir = dir();
+        if (!dir.exists() && !dir.mkdirs())
+            return;
+        trimDisk(dir);
+        File file = fileOf(entry.sourceKey, key);
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            byte[] bytes = entry.body.getBytes(StandardCharsets.UTF_8);
+            out.writeLong(entry.expireAt);
+            out.writeUTF(entry.sourceKey);
+            out.writeInt(entry.format);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (Throwable th) {
+            th.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file))
+            tmp.delete();
+    }
+
+    /**
+     * 超出条目数时按修改时间删除最旧的一半
+     */
+    private static void trimDisk(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null || files.length < DISK_ENTRIES)
+            return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length / 2; i++) {
+            files[i].delete();
+        }
+    }
+}
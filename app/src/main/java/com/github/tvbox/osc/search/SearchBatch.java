@@ -0,0 +1,34 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.bean.Movie;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * 一批回到主线程的搜索结果
+ */
+public class SearchBatch {
+    final int id;
+    /**
+     * 这一批新出现的分组, 按位置顺序追加到列表末尾即可
+     */
+    public final List<SearchGroup> added = new ArrayList<>();
+    /**
+     * 之前已经出现、这一批里增加了候选的分组
+     */
+    public final List<SearchGroup> updated = new ArrayList<>();
+    /**
+     * 各站点这一批通过匹配的结果, 按站点到达顺序
+     */
+    public final LinkedHashMap<String, List<Movie.Video>> bySource = new LinkedHashMap<>();
+
+    SearchBatch(int id) {
+        this.id = id;
+    }
+
+    public boolean isEmpty() {
+        return bySource.isEmpty();
+    }
+}
@@ -0,0 +1,251 @@
+package com.github.tvbox.osc.search;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.github.tvbox.osc.api.ApiConfig;
+import com.github.tvbox.osc.api.SpiderInvoker;
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.bean.Movie;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.cache.SearchCache;
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.viewmodel.SourceViewModel;
+import com.lzy.okgo.OkGo;
+import com.lzy.okgo.request.GetRequest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Response;
+
+/**
+ * 聚合搜索
+ * 所有搜索共用一个有界线程池(实际并发由 SearchScheduler 控制), 每次搜索是一个 SearchQuery: 有总的截止时间, 取消时清掉排队的站点、
+ * 中断进行中的调用(SpiderInvoker 会跟着取消爬虫调用)、取消网络请求和爬虫自己的请求;
+ * 结果在工作线程解析、匹配并合并成分组, 按批次回到主线程, 不再每个站点发一次 EventBus
+ */
+public class SearchEngine {
+    // 并发上限之外多一个线程给查缓存的任务
+    private static final int THREADS = SearchScheduler.MAX_LIMIT + 1;
+    static final long DEFAULT_DEADLINE_MS = 30 * 1000;
+    static final long BATCH_INTERVAL_MS = 200;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final AtomicInteger querySeq = new AtomicInteger();
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+        Thread thread = new Thread(r, "search-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // 测试时替换成桩实现, 见 Fetcher / Poster / Logger
+    static Fetcher fetcher = new DefaultFetcher();
+    static Poster poster;
+    static Logger logger = LOG::i;
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 站点请求的接入点, 默认实现走 SearchCache、网络和爬虫; JVM 上的测试换成桩爬虫, 不需要 Android 环境
+     */
+    interface Fetcher {
+        /**
+         * @return 未命中返回 null, 命中但没有结果返回空列表
+         */
+        List<Movie.Video> cached(SourceBean sourceBean, String wd, boolean quick) throws Exception;
+
+        /**
+         * 在工作线程上同步搜索一个站点, 没有结果返回 null
+         *
+         * @param quick 详情页的快速搜索
+         * @param tag   这次搜索的网络请求 tag
+         */
+        AbsXml fetch(SourceBean sourceBean, String wd, boolean quick, String tag) throws Exception;
+
+        /**
+         * 取消这次搜索发出的网络请求
+         */
+        void cancelTag(String tag);
+
+        /**
+         * 取消爬虫自己发出的请求, 在工作线程上调用
+         */
+        void cancelSpider(SourceBean sourceBean);
+    }
+
+    /**
+     * 回到主线程, 默认用主线程 Handler
+     */
+    interface Poster {
+        void post(Runnable task);
+
+        void postDelayed(Runnable task, long delayMs);
+
+        void remove(Runnable task);
+    }
+
+    /**
+     * 每次搜索结束时的统计日志, 默认写 LOG
+     */
+    interface Logger {
+        void log(String tag, String msg);
+    }
+
+    private static class MainPoster implements Poster {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void post(Runnable task) {
+            handler.post(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            handler.postDelayed(task, delayMs);
+        }
+
+        @Override
+        public void remove(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    }
+
+    private static class DefaultFetcher implements Fetcher {
+        @Override
+        public List<Movie.Video> cached(SourceBean sourceBean, String wd, boolean quick) {
+            SearchCache.Entry entry = SearchCache.get(wd, quick, sourceBean.getKey());
+            if (entry == null)
+                return null;
+            AbsXml result = parse(sourceBean.getKey(), entry.format, entry.body);
+            if (result == null || result.movie == null || result.movie.videoList == null)
+                return Collections.emptyList();
+            return result.movie.videoList;
+        }
+
+        @Override
+        public AbsXml fetch(SourceBean sourceBean, String wd, boolean quick, String tag) throws Exception {
+            return SearchEngine.fetch(sourceBean, wd, quick, tag);
+        }
+
+        @Override
+        public void cancelTag(String tag) {
+            OkGo.getInstance().cancelTag(tag);
+        }
+
+        @Override
+        public void cancelSpider(SourceBean sourceBean) {
+            SearchEngine.cancelSpider(sourceBean);
+        }
+    }
+
+    static synchronized Poster poster() {
+        if (poster == null)
+            poster = new MainPoster();
+        return poster;
+    }
+
+    public interface Listener {
+        /**
+         * 主线程, 一批站点的结果, 已经按标题合并到分组里
+         */
+        void onResults(SearchBatch batch);
+
+        /**
+         * 主线程, 所有站点完成或到达截止时间时回调一次, 主动取消后不再回调
+         *
+         * @param timeout 是否因截止时间结束
+         */
+        void onComplete(boolean timeout);
+    }
+
+    public static SearchQuery search(String wd, List<SourceBean> sources, Listener listener) {
+        return search(wd, sources, DEFAULT_DEADLINE_MS, listener);
+    }
+
+    public static SearchQuery search(String wd, List<SourceBean> sources, long deadlineMs, Listener listener) {
+        SearchQuery query = new SearchQuery(wd, "search_" + querySeq.incrementAndGet(), sources, deadlineMs, false, listener);
+        query.start();
+        return query;
+    }
+
+    /**
+     * 详情页的快速搜索(searchContent 的 quick 参数), 和聚合搜索共用线程池、并发控制和截止时间, 缓存分开
+     */
+    public static SearchQuery quickSearch(String wd, List<SourceBean> sources, Listener listener) {
+        SearchQuery query = new SearchQuery(wd, "quick_search_" + querySeq.incrementAndGet(), sources, DEFAULT_DEADLINE_MS, true, listener);
+        query.start();
+        return query;
+    }
+
+    static Future<?> submit(Runnable task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * 在工作线程上同步搜索一个站点, 返回解析好的结果, 没有结果返回 null; 能解析的返回会写入 SearchCache
+     *
+     * @param tag 网络请求的 tag, 取消时按它 cancelTag
+     */
+    static AbsXml fetch(SourceBean sourceBean, String wd, boolean quick, String tag) throws Exception {
+        int type = sourceBean.getType();
+        if (type == 3) {
+            String search = SpiderInvoker.invoke(sourceBean, SpiderInvoker.SEARCH, sp -> sp.searchContent(wd, quick));
+            return parseAndCache(sourceBean, wd, quick, SearchCache.FORMAT_JSON, search);
+        }
+        GetRequest<String> request = OkGo.<String>get(sourceBean.getApi()).params("wd", wd).tag(tag);
+        if (type == 1) {
+            request.params("ac", "detail");
+        } else if (type == 4) {
+            request.params("ac", "detail").params("quick", String.valueOf(quick));
+        } else if (type != 0) {
+            return null;
+        }
+        // 接口站点不经过 Spider, 同样计入站点统计和熔断
+        String body = SpiderInvoker.track(sourceBean, SpiderInvoker.SEARCH, () -> {
+            try (Response response = request.execute()) {
+                if (response.body() == null)
+                    throw new IllegalStateException("网络请求错误");
+                return response.body().string();
+            }
+        });
+        return parseAndCache(sourceBean, wd, quick, type == 0 ? SearchCache.FORMAT_XML : SearchCache.FORMAT_JSON, body);
+    }
+
+    /**
+     * 先解析, 解析失败或没有返回内容的不缓存, 解析成功但没有结果的按空结果短时间缓存
+     */
+    private static AbsXml parseAndCache(SourceBean sourceBean, String wd, boolean quick, int format, String body) {
+        AbsXml data = parse(sourceBean.getKey(), format, body);
+        SearchCache.put(wd, quick, sourceBean.getKey(), format, body, data);
+        return data;
+    }
+
+    static AbsXml parse(String sourceKey, int format, String body) {
+        if (body == null || body.isEmpty())
+            return null;
+        if (format == SearchCache.FORMAT_XML)
+            return SourceViewModel.parseXml(body, sourceKey);
+        return SourceViewModel.parseJson(body, sourceKey);
+    }
+
+    /**
+     * 取消爬虫自己发出的请求(JS 爬虫按 tag 取消 OkHttp 请求, jar 爬虫由各自实现), 在工作线程上调用
+     */
+    static void cancelSpider(SourceBean sourceBean) {
+        if (sourceBean.getType() != 3)
+            return;
+        try {
+            ApiConfig.get().getCSP(sourceBean).cancelByTag();
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+    }
+}
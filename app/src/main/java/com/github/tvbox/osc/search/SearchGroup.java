@@ -0,0 +1,92 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.bean.Movie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 归一化标题相同的一组搜索结果, 每个候选来自一个站点, 按站点优先级排序(数值小的在前, 同优先级按到达顺序)
+ * 在搜索线程上只追加(均摊 O(1)), 同时记下排在最前的候选(单个 volatile 引用, 主线程读到的总是完整的候选); 完整排序推迟到主线程读取 getVideos 时再做,
+ * 先写元素再写 size(volatile), 主线程按 size 读取不会看到写了一半的数据
+ */
+public class SearchGroup {
+    private static class Candidate {
+        final Movie.Video video;
+        final int priority;
+
+        Candidate(Movie.Video video, int priority) {
+            this.video = video;
+            this.priority = priority;
+        }
+    }
+
+    private static final Comparator<Candidate> BY_PRIORITY = (a, b) -> Integer.compare(a.priority, b.priority);
+
+    private final String key;
+    private final int position;
+    private volatile Candidate[] candidates = new Candidate[2];
+    private volatile int size;
+    private volatile Candidate first;
+    int createdIn;
+    int updatedIn;
+
+    SearchGroup(String key, int position) {
+        this.key = key;
+        this.position = position;
+    }
+
+    void add(Movie.Video video, int priority) {
+        int count = size;
+        Candidate[] array = candidates;
+        if (count == array.length) {
+            array = Arrays.copyOf(array, count * 2);
+            candidates = array;
+        }
+        Candidate candidate = new Candidate(video, priority);
+        array[count] = candidate;
+        size = count + 1;
+        if (first == null || priority < first.priority)
+            first = candidate;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return 分组在结果列表里的位置, 按第一次出现的顺序
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return 排在最前的候选, 用于列表展示
+     */
+    public Movie.Video getVideo() {
+        return first.video;
+    }
+
+    /**
+     * @return 按优先级排好序的全部候选
+     */
+    public List<Movie.Video> getVideos() {
+        int count = size;
+        Candidate[] sorted = Arrays.copyOf(candidates, count);
+        // 对象数组的排序是稳定的, 同优先级保持到达顺序
+        Arrays.sort(sorted, BY_PRIORITY);
+        List<Movie.Video> videos = new ArrayList<>(count);
+        for (Candidate candidate : sorted) {
+            videos.add(candidate.video);
+        }
+        return Collections.unmodifiableList(videos);
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.bean.Movie;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 一次搜索的增量聚合索引
+ * 结果按归一化标题分组(哈希查找), 标题不包含全部搜索词的直接丢弃; 匹配用只做过 fold 的标题,
+ * 免得搜索词里的年份、"第一季"被归一化去掉后对不上; 归一化由 keys 在加锁前完成,
+ * add 只做查找和插入, 由调用方保证串行
+ */
+public class SearchIndex {
+    private final String[] words;
+    private final HashMap<String, SearchGroup> groups = new HashMap<>();
+    private final ArrayList<SearchGroup> ordered = new ArrayList<>();
+
+    public SearchIndex(String wd) {
+        ArrayList<String> list = new ArrayList<>();
+        if (wd != null) {
+            for (String word : wd.trim().split("\\s+")) {
+                String folded = TitleNormalizer.compact(TitleNormalizer.fold(word));
+                if (!folded.isEmpty())
+                    list.add(folded);
+            }
+        }
+        words = list.toArray(new String[0]);
+    }
+
+    /**
+     * 计算每个结果的分组 key, 不匹配搜索词的为 null; 不访问索引状态, 可以在任意线程并发调用
+     */
+    public String[] keys(List<Movie.Video> videos) {
+        String[] keys = new String[videos.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Movie.Video video = videos.get(i);
+            if (video == null || video.name == null || video.name.isEmpty())
+                continue;
+            String key = TitleNormalizer.normalize(video.name);
+            if (matches(TitleNormalizer.compact(TitleNormalizer.fold(video.name)), key))
+                keys[i] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * 每个搜索词出现在原标题里即可; 也认归一化后的 key, 这样 "s2" 能搜到 "第二季"
+     */
+    private boolean matches(String folded, String key) {
+        if (words.length == 0)
+            return false;
+        for (String word : words) {
+            if (!folded.contains(word) && !key.contains(word))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * 把一个站点的结果加入索引, 新建/更新的分组记到 batch
+     *
+     * @param keys     keys(videos) 的结果
+     * @param priority 站点优先级, 数值小的排在分组前面
+     * @return 通过匹配的结果
+     */
+    public List<Movie.Video> add(List<Movie.Video> videos, String[] keys, int priority, SearchBatch batch) {
+        List<Movie.Video> accepted = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            if (key == null)
+                continue;
+            Movie.Video video = videos.get(i);
+            SearchGroup group = groups.get(key);
+            if (group == null) {
+                group = new SearchGroup(key, ordered.size());
+                group.createdIn = batch.id;
+                groups.put(key, group);
+                ordered.add(group);
+                batch.added.add(group);
+            } else if (group.createdIn != batch.id && group.updatedIn != batch.id) {
+                group.updatedIn = batch.id;
+                batch.updated.add(group);
+            }
+            group.add(video, priority);
+            accepted.add(video);
+        }
+        return accepted;
+    }
+
+    public int size() {
+        return ordered.size();
+    }
+
+    public SearchGroup get(int position) {
+        return ordered.get(position);
+    }
+}
@@ -0,0 +1,343 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.api.SpiderInvoker;
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.bean.Movie;
+import com.github.tvbox.osc.bean.SourceBean;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 一次聚合搜索
+ * 同时请求的站点数由 SearchScheduler 自适应决定, 同一主机的站点另有上限, 其余按 SourceHealth 的预期代价排队;
+ * 暂停只是不再派发新站点, 进行中的照常完成;
+ * 开始时先在工作线程上查 SearchCache, 命中的站点立即并入结果, 只有未命中的才排队请求;
+ * 结果在工作线程上归一化后并入 SearchIndex, 所有状态由 this 锁保护, 监听器只在主线程回调
+ */
+public class SearchQuery {
+    private static final String TAG = "SearchQuery";
+
+    private final String wd;
+    private final String tag;
+    private final boolean quick;
+    private final int total;
+    private final SearchEngine.Listener listener;
+    private final List<SourceBean> sources;
+    private final ArrayDeque<SourceBean> pending = new ArrayDeque<>();
+    private final HashMap<SourceBean, Future<?>> running = new HashMap<>();
+    private final HashMap<String, Integer> hostRunning = new HashMap<>();
+    private final HashMap<SourceBean, Long> startedAt = new HashMap<>();
+    private final IdentityHashMap<SourceBean, Integer> priorities = new IdentityHashMap<>();
+    private final SearchIndex index;
+    private SearchBatch batch = new SearchBatch(1);
+    private final Runnable deadlineTask = this::onDeadline;
+    private final Runnable flushTask = this::flush;
+    private long remainMs;
+    private long deadlineAt;
+    private long startAt;
+    private long firstResultAt;
+    private int finished;
+    private int cached;
+    private boolean paused;
+    private boolean cancelled;
+    private boolean completed;
+    private boolean flushPosted;
+
+    SearchQuery(String wd, String tag, List<SourceBean> sources, long deadlineMs, boolean quick, SearchEngine.Listener listener) {
+        this.wd = wd;
+        this.tag = tag;
+        this.quick = quick;
+        this.total = sources.size();
+        this.sources = new ArrayList<>(sources);
+        for (int i = 0; i < sources.size(); i++) {
+            priorities.put(sources.get(i), i);
+        }
+        this.index = new SearchIndex(wd);
+        this.remainMs = deadlineMs;
+        this.listener = listener;
+    }
+
+    synchronized void start() {
+        startAt = System.currentTimeMillis();
+        if (total == 0) {
+            complete(false);
+            return;
+        }
+        scheduleDeadline();
+        SearchEngine.submit(this::loadCached);
+    }
+
+    /**
+     * 暂停派发, 截止时间也一起暂停, 例如进入详情页时
+     */
+    public synchronized void pause() {
+        if (paused || isFinished())
+            return;
+        paused = true;
+        SearchEngine.poster().remove(deadlineTask);
+        remainMs = Math.max(0, deadlineAt - System.currentTimeMillis());
+    }
+
+    public synchronized void resume() {
+        if (!paused || isFinished())
+            return;
+        paused = false;
+        scheduleDeadline();
+        dispatch();
+    }
+
+    /**
+     * 放弃这次搜索: 丢掉排队的站点, 中断进行中的调用, 之后不再有任何回调(包括已经完成但还没回调的)
+     */
+    public synchronized void cancel() {
+        if (cancelled)
+            return;
+        cancelled = true;
+        SearchEngine.poster().remove(deadlineTask);
+        SearchEngine.poster().remove(flushTask);
+        batch = new SearchBatch(batch.id + 1);
+        if (!completed) {
+            stopAll();
+            SearchEngine.submit(SpiderInvoker::save);
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public String getWord() {
+        return wd;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public synchronized int getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return 到目前为止的分组数量, 包括还没回调到主线程的
+     */
+    public synchronized int getGroupCount() {
+        return index.size();
+    }
+
+    private boolean isFinished() {
+        return cancelled || completed;
+    }
+
+    private void scheduleDeadline() {
+        deadlineAt = System.currentTimeMillis() + remainMs;
+        SearchEngine.poster().postDelayed(deadlineTask, remainMs);
+    }
+
+    /**
+     * 按排队顺序派发, 主机已满的站点跳过, 等同主机的请求完成后再派发
+     */
+    private void dispatch() {
+        if (paused || isFinished())
+            return;
+        int limit = SearchScheduler.getLimit();
+        Iterator<SourceBean> iterator = pending.iterator();
+        while (running.size() < limit && iterator.hasNext()) {
+            SourceBean sourceBean = iterator.next();
+            String host = SearchScheduler.hostOf(sourceBean);
+            if (host != null) {
+                Integer count = hostRunning.get(host);
+                if (count != null && count >= SearchScheduler.PER_HOST)
+                    continue;
+                hostRunning.put(host, count == null ? 1 : count + 1);
+            }
+            iterator.remove();
+            startedAt.put(sourceBean, System.currentTimeMillis());
+            running.put(sourceBean, SearchEngine.submit(() -> run(sourceBean)));
+        }
+    }
+
+    private void releaseHost(SourceBean sourceBean) {
+        String host = SearchScheduler.hostOf(sourceBean);
+        if (host == null)
+            return;
+        Integer count = hostRunning.get(host);
+        if (count == null || count <= 1) {
+            hostRunning.remove(host);
+        } else {
+            hostRunning.put(host, count - 1);
+        }
+    }
+
+    /**
+     * 按预期代价顺序查缓存, 未命中的马上排队派发, 不用等全部查完; 命中的结果查完后立即回调一次
+     */
+    private void loadCached() {
+        for (SourceBean sourceBean : SearchScheduler.order(sources)) {
+            if (isCancelled())
+                return;
+            List<Movie.Video> videos = null;
+            String[] keys = null;
+            try {
+                videos = SearchEngine.fetcher.cached(sourceBean, wd, quick);
+                if (videos != null && !videos.isEmpty())
+                    keys = index.keys(videos);
+            } catch (Throwable th) {
+                th.printStackTrace();
+                videos = null;
+            }
+            synchronized (this) {
+                if (videos == null) {
+                    pending.add(sourceBean);
+                    dispatch();
+                } else {
+                    cached++;
+                    onResult(sourceBean, videos.isEmpty() ? null : videos, keys);
+                }
+            }
+        }
+        synchronized (this) {
+            if (flushPosted && !isFinished()) {
+                SearchEngine.poster().remove(flushTask);
+                SearchEngine.poster().post(flushTask);
+            }
+        }
+    }
+
+    private void run(SourceBean sourceBean) {
+        List<Movie.Video> videos = null;
+        String[] keys = null;
+        long p50 = SearchScheduler.p50Of(sourceBean);
+        long start = System.currentTimeMillis();
+        try {
+            if (!isCancelled()) {
+                AbsXml result = SearchEngine.fetcher.fetch(sourceBean, wd, quick, tag);
+                if (result != null && result.movie != null && result.movie.videoList != null && !result.movie.videoList.isEmpty()) {
+                    videos = result.movie.videoList;
+                    keys = index.keys(videos);
+                }
+                // 耗时和成败已经由 SpiderInvoker 记录, 这里只补上命中
+                SearchScheduler.onSuccess(System.currentTimeMillis() - start, p50);
+                SpiderInvoker.getHealth(sourceBean.getKey(), SpiderInvoker.SEARCH).recordHit(hasMatch(keys));
+            }
+        } catch (InterruptedException e) {
+            SearchEngine.fetcher.cancelSpider(sourceBean);
+        } catch (Throwable th) {
+            if (Thread.currentThread().isInterrupted() || isCancelled()) {
+                SearchEngine.fetcher.cancelSpider(sourceBean);
+            } else if (!(th instanceof SpiderInvoker.CircuitOpenException)) {
+                if (th instanceof TimeoutException || th instanceof SocketTimeoutException)
+                    SearchScheduler.onTimeout();
+                th.printStackTrace();
+            }
+        }
+        onFinished(sourceBean, videos, keys);
+    }
+
+    private static boolean hasMatch(String[] keys) {
+        if (keys == null)
+            return false;
+        for (String key : keys) {
+            if (key != null)
+                return true;
+        }
+        return false;
+    }
+
+    private synchronized void onFinished(SourceBean sourceBean, List<Movie.Video> videos, String[] keys) {
+        if (running.remove(sourceBean) == null)
+            return;
+        startedAt.remove(sourceBean);
+        releaseHost(sourceBean);
+        onResult(sourceBean, videos, keys);
+    }
+
+    private void onResult(SourceBean sourceBean, List<Movie.Video> videos, String[] keys) {
+        if (isFinished())
+            return;
+        finished++;
+        List<Movie.Video> accepted = videos == null ? null : index.add(videos, keys, priorities.get(sourceBean), batch);
+        if (accepted != null && !accepted.isEmpty()) {
+            batch.bySource.put(sourceBean.getKey(), accepted);
+            if (firstResultAt == 0) {
+                // 第一批马上显示, 之后的再攒一段时间
+                firstResultAt = System.currentTimeMillis();
+                SearchEngine.poster().remove(flushTask);
+                SearchEngine.poster().post(flushTask);
+                flushPosted = true;
+            } else if (!flushPosted) {
+                flushPosted = true;
+                SearchEngine.poster().postDelayed(flushTask, SearchEngine.BATCH_INTERVAL_MS);
+            }
+        }
+        if (finished == total) {
+            complete(false);
+        } else {
+            dispatch();
+        }
+    }
+
+    private synchronized void onDeadline() {
+        if (isFinished())
+            return;
+        // 到截止时间还没返回的站点按失败计入统计, 下次排到后面; 随后被中断的调用只释放探测名额, 不会再记一次
+        long now = System.currentTimeMillis();
+        for (SourceBean sourceBean : running.keySet()) {
+            Long start = startedAt.get(sourceBean);
+            if (start != null)
+                SpiderInvoker.getHealth(sourceBean.getKey(), SpiderInvoker.SEARCH).onFailure(now - start);
+        }
+        stopAll();
+        complete(true);
+    }
+
+    /**
+     * 中断进行中的站点: Future 中断后 SpiderInvoker 会取消爬虫调用, 工作线程再取消爬虫自己的请求;
+     * 接口站点的请求按 tag 取消
+     */
+    private void stopAll() {
+        pending.clear();
+        for (Future<?> future : running.values()) {
+            future.cancel(true);
+        }
+        running.clear();
+        startedAt.clear();
+        hostRunning.clear();
+        SearchEngine.fetcher.cancelTag(tag);
+    }
+
+    private void complete(boolean timeout) {
+        completed = true;
+        SearchEngine.submit(SpiderInvoker::save);
+        SearchEngine.poster().remove(deadlineTask);
+        SearchEngine.poster().remove(flushTask);
+        SearchEngine.logger.log(TAG, wd + " 完成 " + finished + "/" + total + (timeout ? " (超时)" : "") + ", 缓存命中 " + cached + ", 分组 " + index.size()
+                + ", 首个结果 " + (firstResultAt == 0 ? -1 : firstResultAt - startAt) + "ms"
+                + ", 总耗时 " + (System.currentTimeMillis() - startAt) + "ms");
+        SearchEngine.poster().post(() -> {
+            flush();
+            if (!isCancelled())
+                listener.onComplete(timeout);
+        });
+    }
+
+    private void flush() {
+        SearchBatch ready;
+        synchronized (this) {
+            flushPosted = false;
+            if (cancelled || batch.isEmpty())
+                return;
+            ready = batch;
+            batch = new SearchBatch(batch.id + 1);
+        }
+        listener.onResults(ready);
+    }
+}
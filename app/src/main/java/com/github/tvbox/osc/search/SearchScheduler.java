@@ -0,0 +1,111 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.api.SourceHealth;
+import com.github.tvbox.osc.api.SpiderInvoker;
+import com.github.tvbox.osc.bean.SourceBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+
+/**
+ * 搜索并发数的自适应控制(AIMD): 请求正常完成时缓慢加一, 出现超时或耗时明显高于站点平时水平时按比例减小;
+ * 从改动前的 10 开始, 上限由 CPU 核数决定(不低于 10), 所有搜索共用同一个并发数, 各次搜索自己计数
+ */
+public class SearchScheduler {
+    static final int MIN_LIMIT = 2;
+    // 改动前固定 10 个线程, 冷启动没有样本时从这里开始, 上限也不低于它
+    static final int INITIAL_LIMIT = 10;
+    static final int MAX_LIMIT = Math.max(INITIAL_LIMIT, Math.min(16, Runtime.getRuntime().availableProcessors() * 2));
+    // 同一个主机最多同时请求的站点数, 多个站点共用一个后端时不会一起压上去
+    static final int PER_HOST = 2;
+    private static final float DECREASE = 0.75f;
+    // 耗时超过平时 p50 的多少倍视为拥塞
+    private static final int SLOW_FACTOR = 3;
+    private static final long SLOW_MIN_MILLIS = 2000;
+
+    // 没有样本的站点按这个耗时估计
+    private static final long UNKNOWN_COST = 3000;
+
+    private static float limit = INITIAL_LIMIT;
+
+    public static synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @param p50 站点之前的 p50 耗时, 没有样本为 -1
+     */
+    static synchronized void onSuccess(long latency, long p50) {
+        if (p50 > 0 && latency > Math.max(p50 * SLOW_FACTOR, SLOW_MIN_MILLIS)) {
+            decrease();
+        } else {
+            limit = Math.min(MAX_LIMIT, limit + 1f / limit);
+        }
+    }
+
+    /**
+     * 超时说明请求已经排不过来了, 其他失败(解析错误、接口报错)不调整
+     */
+    static synchronized void onTimeout() {
+        decrease();
+    }
+
+    private static void decrease() {
+        limit = Math.max(MIN_LIMIT, limit * DECREASE);
+    }
+
+    /**
+     * 按 SourceHealth 的预期代价排序, 第一个站点(首页源)保持在最前; 没有样本的排在中间, 有机会积累样本,
+     * 熔断中的排在最后; 代价相同的保持原顺序
+     */
+    public static List<SourceBean> order(List<SourceBean> sources) {
+        List<SourceBean> ordered = new ArrayList<>(sources);
+        if (ordered.size() <= 2)
+            return ordered;
+        HashMap<SourceBean, Long> costs = new HashMap<>();
+        for (SourceBean sourceBean : ordered) {
+            costs.put(sourceBean, costOf(sourceBean));
+        }
+        Collections.sort(ordered.subList(1, ordered.size()), (a, b) -> Long.compare(costs.get(a), costs.get(b)));
+        return ordered;
+    }
+
+    private static long costOf(SourceBean sourceBean) {
+        SourceHealth health = SpiderInvoker.peekHealth(sourceBean.getKey(), SpiderInvoker.SEARCH);
+        if (health == null)
+            return UNKNOWN_COST;
+        if (health.isOpen())
+            return Long.MAX_VALUE;
+        long cost = health.getExpectedCost();
+        return cost < 0 ? UNKNOWN_COST : cost;
+    }
+
+    /**
+     * @return 站点最近搜索的 p50 耗时, 没有样本返回 -1
+     */
+    static long p50Of(SourceBean sourceBean) {
+        SourceHealth health = SpiderInvoker.peekHealth(sourceBean.getKey(), SpiderInvoker.SEARCH);
+        return health == null ? -1 : health.getP50Latency();
+    }
+
+    /**
+     * 只有接口站点(type 0/1/4)的 api 是实际请求的地址; jar/JS 爬虫的 api、ext 只是代码或配置的地址, 请求发到哪里无法确定
+     *
+     * @return 站点请求的主机, 无法确定时返回 null(不限制)
+     */
+    static String hostOf(SourceBean sourceBean) {
+        int type = sourceBean.getType();
+        if (type != 0 && type != 1 && type != 4)
+            return null;
+        return host(sourceBean.getApi());
+    }
+
+    private static String host(String url) {
+        HttpUrl httpUrl = url == null ? null : HttpUrl.parse(url);
+        return httpUrl == null ? null : httpUrl.host();
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.base.App;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 本地中文分词, 做法同 jieba 的无 HMM 模式: 用词典前缀树为句子建 DAG, 从后往前动态规划求概率最大的切分;
+ * 切分后剩下的连续单字(停用词除外)合并成一个词, 代替 jieba 用 HMM 识别未登录词(片名、人名大多不在词典里,
+ * 会被切成词典里的单字), 连续的字母数字作为一个词
+ * 词典为 assets/dict/dict.txt, 取自 jieba 的 dict.txt(MIT), 只保留词频不低于 50 的纯汉字词(约 5 万条), 去掉了词性列;
+ * 每行 "词 词频", 第一次使用时加载, 不要在主线程调用
+ */
+public class Segmenter {
+    private static final String DICT = "dict/dict.txt";
+    private static final HashSet<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "的", "之", "与", "和", "在", "是", "了", "第", "季", "部", "集", "期", "篇", "版",
+            "国语", "粤语", "国语版", "粤语版", "中字", "字幕", "高清", "蓝光", "完整版", "全集", "合集"));
+
+    private static final Pattern ORDINAL = Pattern.compile("第.{1,3}[季部集期]");
+
+    private static volatile Segmenter instance;
+
+    private final Node root;
+    private final double logTotal;
+
+    /**
+     * 前缀树节点, 子节点按字符排序存放在数组里, 查找用二分
+     */
+    static class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        char[] keys = NO_KEYS;
+        Node[] children = NO_CHILDREN;
+        int freq;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node add(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0)
+                return children[i];
+            i = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, keys.length - i);
+            Node node = new Node();
+            newKeys[i] = c;
+            newChildren[i] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+
+    public static Segmenter get() {
+        if (instance == null) {
+            synchronized (Segmenter.class) {
+                if (instance == null) {
+                    InputStream dict;
+                    try {
+                        dict = App.getInstance().getAssets().open(DICT);
+                    } catch (IOException e) {
+                        // 没有词典时只按字母数字和连续汉字切分
+                        e.printStackTrace();
+                        dict = new ByteArrayInputStream(new byte[0]);
+                    }
+                    instance = new Segmenter(dict);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param dict "词 词频" 格式的词典, 读完后关闭
+     */
+    public Segmenter(InputStream dict) {
+        root = new Node();
+        long total = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(dict, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                if (parts.length < 2 || parts[0].isEmpty())
+                    continue;
+                int freq;
+                try {
+                    freq = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                Node node = root;
+                for (int i = 0; i < parts[0].length(); i++) {
+                    node = node.add(parts[0].charAt(i));
+                }
+                node.freq += freq;
+                total += freq;
+            }
+        } catch (Throwable th) {
+            th.printStackTrace();
+        }
+        logTotal = Math.log(Math.max(total, 1));
+    }
+
+    /**
+     * 分词, 不保留标点和空白
+     */
+    public List<String> cut(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null)
+            return words;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean han = i < text.length() && isHan(text.charAt(i));
+            if (han && start < 0) {
+                start = i;
+            } else if (!han && start >= 0) {
+                cutHan(text.substring(start, i), words);
+                start = -1;
+            }
+            if (i < text.length() && !han && Character.isLetterOrDigit(text.charAt(i))) {
+                int end = i;
+                while (end < text.length() && !isHan(text.charAt(end)) && Character.isLetterOrDigit(text.charAt(end))) {
+                    end++;
+                }
+                words.add(text.substring(i, end));
+                i = end - 1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * 快速搜索用的关键词: 去掉停用词、单字和"第二季"之类的序号后去重, 保持出现顺序
+     */
+    public List<String> keywords(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        if (text == null)
+            return new ArrayList<>(result);
+        // 序号先整体去掉, 词典会把 "第二季" 切成 "第二" "季"
+        for (String word : cut(ORDINAL.matcher(text).replaceAll(" "))) {
+            if (word.length() > 1 && !STOP_WORDS.contains(word))
+                result.add(word);
+        }
+        return new ArrayList<>(result);
+    }
+
+    private void cutHan(String sentence, List<String> words) {
+        int n = sentence.length();
+        // route[i]: 从 i 到句尾的最大对数概率, next[i]: 该切分下从 i 开始的词的结束位置
+        double[] route = new double[n + 1];
+        int[] next = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            // 单字总是候选, 不在词典里的按词频 1 计算
+            Node single = root.child(sentence.charAt(i));
+            double best = Math.log(single != null && single.freq > 0 ? single.freq : 1) - logTotal + route[i + 1];
+            int bestEnd = i + 1;
+            Node node = single;
+            for (int j = i + 1; node != null && j < n; j++) {
+                node = node.child(sentence.charAt(j));
+                if (node != null && node.freq > 0) {
+                    double score = Math.log(node.freq) - logTotal + route[j + 1];
+                    if (score > best) {
+                        best = score;
+                        bestEnd = j + 1;
+                    }
+                }
+            }
+            route[i] = best;
+            next[i] = bestEnd;
+        }
+        StringBuilder singles = new StringBuilder();
+        for (int i = 0; i < n; i = next[i]) {
+            String word = sentence.substring(i, next[i]);
+            if (word.length() == 1 && !STOP_WORDS.contains(word)) {
+                singles.append(word);
+                continue;
+            }
+            flushSingles(singles, words);
+            words.add(word);
+        }
+        flushSingles(singles, words);
+    }
+
+    private static void flushSingles(StringBuilder singles, List<String> words) {
+        if (singles.length() == 0)
+            return;
+        words.add(singles.toString());
+        singles.setLength(0);
+    }
+
+    private static boolean isHan(char c) {
+        return c >= '\u4E00' && c <= '\u9FFF' || c >= '\u3400' && c <= '\u4DBF';
+    }
+}
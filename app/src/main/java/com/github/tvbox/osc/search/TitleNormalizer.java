@@ -0,0 +1,126 @@
+package com.github.tvbox.osc.search;
+
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 搜索结果标题归一化, 用于跨站点合并同一部影片
+ * 全角转半角、繁体转简体(常用字表)、转小写, 去掉括号里的年份和末尾的年份,
+ * "第二季"/"Season 2"/"S02" 统一成 s2(第一季视为没有季), 最后只保留文字和数字
+ */
+public class TitleNormalizer {
+    // 繁简对照, 每两个字符一组: 繁体 简体
+    private static final String TRADITIONAL_SIMPLIFIED = "" +
+            "國国個个們们來来時时會会為为說说對对開开關关東东車车長长門门問问間间電电視视劇剧愛爱戀恋傳传記记書书學学業业華华語语聽听見见現现實实夢梦歲岁鄉乡風风雲云龍龙鳳凤" +
+            "鳥鸟馬马魚鱼貓猫獸兽無无與与雙双萬万億亿號号樂乐歡欢戲戏藝艺術术機机槍枪戰战鬥斗軍军隊队師师將将帥帅勝胜敗败殺杀獵猎險险惡恶靈灵殭僵屍尸陰阴陽阳動动畫画錄录島岛" +
+            "陸陆灣湾臺台廣广漢汉後后裡里裏里這这還还讓让從从頭头臉脸氣气聲声淚泪紅红綠绿藍蓝黃黄銀银鐵铁鋼钢劍剑俠侠義义歸归舊旧亂乱變变彎弯燈灯熱热燒烧歷历曆历難难離离雜杂" +
+            "鐘钟錢钱貴贵買买賣卖貝贝財财寶宝選选邊边達达遠远運运過过進进連连週周園园圓圆團团圖图場场壞坏墳坟聖圣夥伙奪夺奮奋孫孙寧宁專专尋寻導导屬属嶺岭峽峡幫帮幣币帶带廳厅" +
+            "彈弹徑径徵征憶忆懷怀擊击擔担據据擁拥擇择攝摄敵敌數数斷断於于曉晓暫暂樹树構构標标橋桥檢检權权歐欧殘残滅灭滿满漁渔潛潜濟济濤涛災灾煙烟爺爷牆墙犧牺狀状獨独獄狱環环" +
+            "產产畢毕異异當当療疗盡尽監监盤盘禮礼禍祸稱称穩稳窮穷競竞筆笔築筑簡简糧粮紀纪約约級级純纯紙纸細细組组結结絕绝統统經经綜综網网緊紧線线練练總总織织繼继續续罰罚羅罗" +
+            "聯联職职肅肃腦脑臨临興兴舉举艦舰蘇苏蘭兰處处蟲虫衛卫補补裝装製制襲袭規规覺觉親亲觀观討讨訓训設设許许評评試试詩诗話话誠诚誰谁課课請请諜谍謎谜講讲謝谢證证識识譯译" +
+            "護护讀读豐丰負负貨货質质賽赛贏赢趕赶趙赵跡迹蹤踪軌轨軟软較较輕轻輪轮輸输轉转辦办農农遊游違违遙遥適适遲迟遺遗鄧邓醫医釋释針针鈴铃鋒锋錯错鍵键鏡镜閃闪閱阅闆板陣阵" +
+            "陳陈隨随隱隐雖虽雞鸡霧雾靜静響响頂顶項项順顺須须預预領领題题額额顏颜願愿類类顧顾飛飞飯饭飲饮館馆驚惊騎骑體体髮发鬧闹鮮鲜鷹鹰麗丽黨党齊齐齒齿龜龟嗎吗倆俩偵侦傑杰" +
+            "備备傷伤價价儀仪優优兒儿兩两冊册劉刘則则剛刚創创勞劳勢势區区協协卻却厲厉參参喬乔單单嘆叹嚴严圍围堅坚報报塊块塵尘壓压壯壮夠够奧奥嬌娇寵宠屆届層层幾几廠厂張张強强" +
+            "徹彻態态慶庆憑凭應应戶户拋抛掃扫換换揮挥搖摇搶抢擋挡擾扰斬斩暈晕條条楓枫榮荣樣样決决沒没況况淺浅渾浑溫温測测湯汤準准潔洁澤泽濃浓煉炼爛烂牽牵猶犹獅狮瑪玛瓊琼發发" +
+            "盜盗眾众碼码確确禪禅種种窩窝竊窃範范糾纠紛纷終终給给絲丝綁绑緣缘編编緩缓縣县縱纵聞闻脫脱腳脚莊庄萊莱葉叶著着蓋盖蔣蒋薩萨藥药蝦虾螢萤蠻蛮衝冲複复訊讯謀谋貞贞賊贼" +
+            "賭赌贊赞趨趋躍跃輝辉邁迈郵邮鄭郑醜丑鏈链閣阁隻只韓韩頻频餘余駕驾驗验鬆松麥麦點点齡龄幹干麼么樓楼獎奖輩辈劃划夾夹嶼屿紋纹僅仅鎮镇鍋锅燦灿爾尔彌弥蘆芦纖纤";
+    private static final HashMap<Character, Character> t2s = new HashMap<>();
+    private static final Pattern BRACKET_YEAR = Pattern.compile("[(\\[（【]\\s*(19|20)\\d{2}\\s*[)\\]）】]");
+    private static final Pattern TAIL_YEAR = Pattern.compile("(?<=\\D)[\\s._-]*(19|20)\\d{2}\\s*$");
+    private static final Pattern SEASON = Pattern.compile("第\\s*([0-9一二三四五六七八九十两]+)\\s*[季部]|season\\s*(\\d{1,2})|(?<![a-z])s(\\d{1,2})(?![0-9])");
+
+    static {
+        for (int i = 0; i + 1 < TRADITIONAL_SIMPLIFIED.length(); i += 2) {
+            t2s.put(TRADITIONAL_SIMPLIFIED.charAt(i), TRADITIONAL_SIMPLIFIED.charAt(i + 1));
+        }
+    }
+
+    /**
+     * @return 归一化后的标题, 归一化后为空时返回去掉首尾空白的原标题
+     */
+    public static String normalize(String name) {
+        if (name == null)
+            return "";
+        String text = fold(name);
+        text = BRACKET_YEAR.matcher(text).replaceAll("");
+        text = TAIL_YEAR.matcher(text).replaceAll("");
+        text = compact(season(text));
+        return text.length() > 0 ? text : name.trim();
+    }
+
+    /**
+     * 只保留文字和数字
+     */
+    static String compact(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c))
+                sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 全角转半角、繁转简、转小写
+     */
+    static String fold(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\u3000') {
+                c = ' ';
+            } else if (c >= '\uFF01' && c <= '\uFF5E') {
+                c = (char) (c - 0xFEE0);
+            } else {
+                Character s = t2s.get(c);
+                if (s != null)
+                    c = s;
+            }
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    private static String season(String text) {
+        Matcher matcher = SEASON.matcher(text);
+        if (!matcher.find())
+            return text;
+        StringBuffer sb = new StringBuffer();
+        do {
+            String num = matcher.group(1) != null ? matcher.group(1) : matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+            int n = toNumber(num);
+            matcher.appendReplacement(sb, n <= 1 ? "" : "s" + n);
+        } while (matcher.find());
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * 阿拉伯数字或一百以内的中文数字, 无法识别时返回 0
+     */
+    private static int toNumber(String num) {
+        try {
+            return Integer.parseInt(num);
+        } catch (NumberFormatException ignored) {
+        }
+        int result = 0;
+        int digit = 0;
+        for (int i = 0; i < num.length(); i++) {
+            char c = num.charAt(i);
+            if (c == '十') {
+                result += (digit == 0 ? 1 : digit) * 10;
+                digit = 0;
+            } else {
+                int d = "零一二三四五六七八九".indexOf(c);
+                if (c == '两')
+                    d = 2;
+                if (d < 0)
+                    return 0;
+                digit = d;
+            }
+        }
+        return result + digit;
+    }
+}
@@ -117,6 +117,8 @@ public class RemoteServer extends NanoHTTPD {
                         //if (rs[0] instanceof Response) {
                         //    return (Response) rs[0];
                         //}
+                        if (rs == null || rs.length < 3)
+                            return createPlainTextResponse(NanoHTTPD.Response.Status.NOT_FOUND, "no proxy handler");
                         int code = (int) rs[0];
                         String mime = (String) rs[1];
                         InputStream stream = rs[2] != null ? (InputStream) rs[2] : null;
@@ -35,6 +35,7 @@ import com.blankj.utilcode.util.LogUtils;
 import com.blankj.utilcode.util.NotificationUtils;
 import com.blankj.utilcode.util.ScreenUtils;
 import com.blankj.utilcode.util.ServiceUtils;
+import com.blankj.utilcode.util.ThreadUtils;
 import com.blankj.utilcode.util.ToastUtils;
 import com.chad.library.adapter.base.BaseQuickAdapter;
 import com.github.tvbox.osc.R;
@@ -52,6 +53,10 @@ import com.github.tvbox.osc.constant.IntentKey;
 import com.github.tvbox.osc.databinding.ActivityDetailBinding;
 import com.github.tvbox.osc.event.RefreshEvent;
 import com.github.tvbox.osc.receiver.BatteryReceiver;
+import com.github.tvbox.osc.search.SearchBatch;
+import com.github.tvbox.osc.search.SearchEngine;
+import com.github.tvbox.osc.search.SearchQuery;
+import com.github.tvbox.osc.search.Segmenter;
 import com.github.tvbox.osc.service.PlayService;
 import com.github.tvbox.osc.ui.adapter.ParseAdapter;
 import com.github.tvbox.osc.ui.adapter.SeriesAdapter;
@@ -72,17 +77,12 @@ import com.github.tvbox.osc.util.Utils;
 import com.github.tvbox.osc.viewmodel.SourceViewModel;
 import com.github.tvbox.osc.util.DownloadManager;
 import com.github.tvbox.osc.util.StoragePermissionHelper;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.gyf.immersionbar.ImmersionBar;
 import com.lxj.xpopup.XPopup;
 import com.lxj.xpopup.core.BasePopupView;
 import com.lxj.xpopup.enums.PopupPosition;
 import com.lxj.xpopup.interfaces.OnSelectListener;
 import com.lzy.okgo.OkGo;
-import com.lzy.okgo.callback.AbsCallback;
-import com.lzy.okgo.model.Response;
 import com.orhanobut.hawk.Hawk;
 import com.owen.tvrecyclerview.widget.V7LinearLayoutManager;
 
@@ -95,13 +95,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author pj567
@@ -248,25 +245,14 @@ public class DetailActivity extends BaseVbActivity<ActivityDetailBinding> {
             EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH, quickSearchData));
             EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH_WORD, quickSearchWord));
             quickSearchDialog.show();
-            if (pauseRunnable != null && pauseRunnable.size() > 0) {
-                searchExecutorService = Executors.newFixedThreadPool(5);
-                for (Runnable runnable : pauseRunnable) {
-                    searchExecutorService.execute(runnable);
-                }
-                pauseRunnable.clear();
-                pauseRunnable = null;
-            }
+            if (searchQuery != null)
+                searchQuery.resume();
             quickSearchDialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
                 @Override
                 public void onDismiss(DialogInterface dialog) {
-                    try {
-                        if (searchExecutorService != null) {
-                            pauseRunnable = searchExecutorService.shutdownNow();
-                            searchExecutorService = null;
-                        }
-                    } catch (Throwable th) {
-                        th.printStackTrace();
-                    }
+                    // 关闭弹窗时暂停派发, 再次打开时继续
+                    if (searchQuery != null)
+                        searchQuery.pause();
                 }
             });
         });
@@ -408,8 +394,6 @@ public class DetailActivity extends BaseVbActivity<ActivityDetailBinding> {
         mCheckSources = SearchHelper.getSourcesForSearch();
     }
 
-    private List<Runnable> pauseRunnable = null;
-
     private void jumpToPlay() {
         if (vodInfo != null && vodInfo.seriesMap.get(vodInfo.playFlag).size() > 0) {
             preFlag = vodInfo.playFlag;
@@ -609,12 +593,6 @@ public class DetailActivity extends BaseVbActivity<ActivityDetailBinding> {
                 String word = (String) event.obj;
                 switchSearchWord(word);
             }
-        } else if (event.type == RefreshEvent.TYPE_QUICK_SEARCH_RESULT) {
-            try {
-                searchData(event.obj == null ? null : (AbsXml) event.obj);
-            } catch (Exception e) {
-                searchData(null);
-            }
         }
     }
 
@@ -622,10 +600,9 @@ public class DetailActivity extends BaseVbActivity<ActivityDetailBinding> {
     private boolean hadQuickStart = false;
     private final List<Movie.Video> quickSearchData = new ArrayList<>();
     private final List<String> quickSearchWord = new ArrayList<>();
-    private ExecutorService searchExecutorService = null;
+    private SearchQuery searchQuery = null;
 
     private void switchSearchWord(String word) {
-        OkGo.getInstance().cancelTag("quick_search");
         quickSearchData.clear();
         searchTitle = word;
         searchResult();
@@ -636,64 +613,41 @@ public class DetailActivity extends BaseVbActivity<ActivityDetailBinding> {
         if (hadQuickStart)
             return;
         hadQuickStart = true;
-        OkGo.getInstance().cancelTag("quick_search");
         quickSearchWord.clear();
         searchTitle = mVideo.name;
         quickSearchData.clear();
         quickSearchWord.addAll(SearchHelper.splitWords(searchTitle));
-        // 分词
-        OkGo.<String>get("http://api.pullword.com/get.php?source=" + URLEncoder.encode(searchTitle) + "&param1=0&param2=0&json=1")
-                .tag("fenci")
-                .execute(new AbsCallback<String>() {
-                    @Override
-                    public String convertResponse(okhttp3.Response response) throws Throwable {
-                        if (response.body() != null) {
-                            return response.body().string();
-                        } else {
-                            throw new IllegalStateException("网络请求错误");
-                        }
-                    }
-
-                    @Override
-                    public void onSuccess(Response<String> response) {
-                        String json = response.body();
-                        try {
-                            for (JsonElement je : new Gson().fromJson(json, JsonArray.class)) {
-                                quickSearchWord.add(je.getAsJsonObject().get("t").getAsString());
-                            }
-                        } catch (Throwable th) {
-                            th.printStackTrace();
-                        }
-                        List<String> words = new ArrayList<>(new HashSet<>(quickSearchWord));
-                        EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH_WORD, words));
-                    }
+        // 本地分词, 不依赖网络
+        String title = searchTitle;
+        ThreadUtils.executeByCpu(new ThreadUtils.SimpleTask<List<String>>() {
+            @Override
+            public List<String> doInBackground() {
+                return Segmenter.get().keywords(title);
+            }
 
-                    @Override
-                    public void onError(Response<String> response) {
-                        super.onError(response);
-                    }
-                });
+            @Override
+            public void onSuccess(List<String> keywords) {
+                quickSearchWord.addAll(keywords);
+                List<String> words = new ArrayList<>(new LinkedHashSet<>(quickSearchWord));
+                EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH_WORD, words));
+            }
+        });
 
         searchResult();
     }
 
     private void searchResult() {
-        try {
-            if (searchExecutorService != null) {
-                searchExecutorService.shutdownNow();
-                searchExecutorService = null;
-            }
-        } catch (Throwable th) {
-            th.printStackTrace();
+        if (searchQuery != null) {
+            searchQuery.cancel();
+            searchQuery = null;
         }
-        searchExecutorService = Executors.newFixedThreadPool(5);
         List<SourceBean> searchRequestList = new ArrayList<>();
         searchRequestList.addAll(ApiConfig.get().getSourceBeanList());
         SourceBean home = ApiConfig.get().getHomeSourceBean();
         searchRequestList.remove(home);
         searchRequestList.add(0, home);
 
-        ArrayList<String> siteKey = new ArrayList<>();
+        List<SourceBean> sources = new ArrayList<>();
         for (SourceBean bean : searchRequestList) {
             if (!bean.isSearchable() || !bean.isQuickSearch()) {
                 continue;
@@ -701,30 +655,35 @@ public class DetailActivity extends BaseVbActivity<ActivityDetailBinding> {
             if (mCheckSources != null && !mCheckSources.containsKey(bean.getKey())) {
                 continue;
             }
-            siteKey.add(bean.getKey());
+            sources.add(bean);
         }
-        for (String key : siteKey) {
-            searchExecutorService.execute(new Runnable() {
-                @Override
-                public void run() {
-                    sourceViewModel.getQuickSearch(key, searchTitle);
+        // 和聚合搜索共用 SearchEngine 的线程池、并发控制和站点排序
+        searchQuery = SearchEngine.quickSearch(searchTitle, sources, new SearchEngine.Listener() {
+            @Override
+            public void onResults(SearchBatch batch) {
+                for (List<Movie.Video> videos : batch.bySource.values()) {
+                    searchData(videos);
                 }
-            });
-        }
-    }
+            }
 
-    private void searchData(AbsXml absXml) {
-        if (absXml != null && absXml.movie != null && absXml.movie.videoList != null && absXml.movie.videoList.size() > 0) {
-            List<Movie.Video> data = new ArrayList<>();
-            for (Movie.Video video : absXml.movie.videoList) {
-                // 去除当前相同的影片
-                if (video.sourceKey.equals(sourceKey) && video.id.equals(vodId))
-                    continue;
-                data.add(video);
+            @Override
+            public void onComplete(boolean timeout) {
             }
-            quickSearchData.addAll(data);
-            EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH, data));
+        });
+    }
+
+    private void searchData(List<Movie.Video> videos) {
+        List<Movie.Video> data = new ArrayList<>();
+        for (Movie.Video video : videos) {
+            // 去除当前相同的影片
+            if (video.sourceKey.equals(sourceKey) && video.id.equals(vodId))
+                continue;
+            data.add(video);
         }
+        if (data.isEmpty())
+            return;
+        quickSearchData.addAll(data);
+        EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_QUICK_SEARCH, data));
     }
 
     private void insertVod(String sourceKey, VodInfo vodInfo) {
@@ -751,17 +710,11 @@ public class DetailActivity extends BaseVbActivity<ActivityDetailBinding> {
             mHomeKeyReceiver = null;
         }
 
-        try {
-            if (searchExecutorService != null) {
-                searchExecutorService.shutdownNow();
-                searchExecutorService = null;
-            }
-        } catch (Throwable th) {
-            th.printStackTrace();
+        if (searchQuery != null) {
+            searchQuery.cancel();
+            searchQuery = null;
         }
-        OkGo.getInstance().cancelTag("fenci");
         OkGo.getInstance().cancelTag("detail");
-        OkGo.getInstance().cancelTag("quick_search");
         toggleScreenShotListen(false);
     }
 
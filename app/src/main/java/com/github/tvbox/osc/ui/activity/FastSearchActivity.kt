@@ -10,7 +10,6 @@ import android.view.LayoutInflater
 import android.view.View
 import android.view.inputmethod.EditorInfo
 import android.widget.TextView
-import androidx.lifecycle.ViewModelProvider
 import androidx.recyclerview.widget.LinearLayoutManager
 import com.angcyo.tablayout.DslTabLayout
 import com.blankj.utilcode.util.GsonUtils
@@ -18,25 +17,26 @@ import com.blankj.utilcode.util.KeyboardUtils
 import com.blankj.utilcode.util.LogUtils
 import com.blankj.utilcode.util.ScreenUtils
 import com.blankj.utilcode.util.ToastUtils
-import com.github.catvod.crawler.JsLoader
 import com.github.tvbox.osc.R
 import com.github.tvbox.osc.api.ApiConfig
 import com.github.tvbox.osc.base.BaseVbActivity
-import com.github.tvbox.osc.bean.AbsXml
 import com.github.tvbox.osc.bean.DoubanSuggestBean
 import com.github.tvbox.osc.bean.Movie
 import com.github.tvbox.osc.bean.SourceBean
 import com.github.tvbox.osc.databinding.ActivityFastSearchBinding
-import com.github.tvbox.osc.event.RefreshEvent
 import com.github.tvbox.osc.event.ServerEvent
 import com.github.tvbox.osc.ui.adapter.FastSearchAdapter
+import com.github.tvbox.osc.ui.adapter.SearchGroupAdapter
 import com.github.tvbox.osc.ui.dialog.DoubanSuggestDialog
 import com.github.tvbox.osc.ui.dialog.SearchCheckboxDialog
 import com.github.tvbox.osc.ui.dialog.SearchSuggestionsDialog
+import com.github.tvbox.osc.search.SearchBatch
+import com.github.tvbox.osc.search.SearchEngine
+import com.github.tvbox.osc.search.SearchGroup
+import com.github.tvbox.osc.search.SearchQuery
 import com.github.tvbox.osc.util.FastClickCheckUtil
 import com.github.tvbox.osc.util.HawkConfig
 import com.github.tvbox.osc.util.SearchHelper
-import com.github.tvbox.osc.viewmodel.SourceViewModel
 import com.google.gson.JsonElement
 import com.google.gson.JsonObject
 import com.google.gson.JsonParser
@@ -53,9 +53,6 @@ import com.zhy.view.flowlayout.TagAdapter
 import okhttp3.Response
 import org.greenrobot.eventbus.Subscribe
 import org.greenrobot.eventbus.ThreadMode
-import java.util.concurrent.ExecutorService
-import java.util.concurrent.Executors
-import java.util.concurrent.atomic.AtomicInteger
 
 class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatcher {
 
@@ -66,18 +63,16 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
         }
     }
 
-    private lateinit var sourceViewModel : SourceViewModel
-    private var searchAdapter = FastSearchAdapter()
+    private var searchAdapter = SearchGroupAdapter()
     private var searchAdapterFilter = FastSearchAdapter()
     private var searchTitle: String? = ""
     private var spNames = HashMap<String, String>()
     private var isFilterMode = false
     private var searchFilterKey: String? = "" // 过滤的key
     private var resultVods = HashMap<String, MutableList<Movie.Video>>()
-    private var pauseRunnable: MutableList<Runnable>? = null
+    private var searchQuery: SearchQuery? = null
     private var mSearchSuggestionsDialog: SearchSuggestionsDialog? = null
     override fun init() {
-        sourceViewModel = ViewModelProvider(this).get(SourceViewModel::class.java)
         initView()
         initData()
         //历史搜索
@@ -88,15 +83,7 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
 
     override fun onResume() {
         super.onResume()
-        if (pauseRunnable != null && pauseRunnable!!.size > 0) {
-            searchExecutorService = Executors.newFixedThreadPool(10)
-            allRunCount.set(pauseRunnable!!.size)
-            for (runnable: Runnable? in pauseRunnable!!) {
-                searchExecutorService!!.execute(runnable)
-            }
-            pauseRunnable!!.clear()
-            pauseRunnable = null
-        }
+        searchQuery?.resume()
     }
 
     private fun initView() {
@@ -124,20 +111,12 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
         mBinding.mGridView.adapter = searchAdapter
         searchAdapter.setOnItemClickListener { _, view, position ->
             FastClickCheckUtil.check(view)
-            val video = searchAdapter.data[position]
-            try {
-                if (searchExecutorService != null) {
-                    pauseRunnable = searchExecutorService!!.shutdownNow()
-                    searchExecutorService = null
-                    JsLoader.stopAll()
-                }
-            } catch (th: Throwable) {
-                th.printStackTrace()
+            val group = searchAdapter.data[position]
+            if (group.size() > 1) {
+                chooseSource(group)
+            } else {
+                openDetail(group.video)
             }
-            val bundle = Bundle()
-            bundle.putString("id", video.id)
-            bundle.putString("sourceKey", video.sourceKey)
-            jumpActivity(DetailActivity::class.java, bundle)
         }
         mBinding.mGridViewFilter.setLayoutManager(LinearLayoutManager(this))
 
@@ -146,25 +125,13 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
             FastClickCheckUtil.check(view)
             val video = searchAdapterFilter.data[position]
             if (video != null) {
-                try {
-                    if (searchExecutorService != null) {
-                        pauseRunnable = searchExecutorService!!.shutdownNow()
-                        searchExecutorService = null
-                        JsLoader.stopAll()
-                    }
-                } catch (th: Throwable) {
-                    th.printStackTrace()
-                }
-                val bundle = Bundle()
-                bundle.putString("id", video.id)
-                bundle.putString("sourceKey", video.sourceKey)
-                jumpActivity(DetailActivity::class.java, bundle)
+                openDetail(video)
             }
         }
 
         searchAdapter.setOnItemLongClickListener { _, _, position ->
-            val video = searchAdapter.data[position]
-            getDoubanSuggest(video.name)
+            val group = searchAdapter.data[position]
+            getDoubanSuggest(group.video.name)
             true
         }
         searchAdapterFilter.setOnItemLongClickListener { _, _, position ->
@@ -176,6 +143,28 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
         setLoadSir(mBinding.llLayout)
     }
 
+    private fun openDetail(video: Movie.Video) {
+        searchQuery?.pause()
+        val bundle = Bundle()
+        bundle.putString("id", video.id)
+        bundle.putString("sourceKey", video.sourceKey)
+        jumpActivity(DetailActivity::class.java, bundle)
+    }
+
+    /**
+     * 同一部影片有多个源时先选择来源, 按站点顺序排列
+     */
+    private fun chooseSource(group: SearchGroup) {
+        val videos = group.videos
+        val names = videos.map { video ->
+            val site = SearchGroupAdapter.siteName(video.sourceKey)
+            if (video.note.isNullOrEmpty()) site else site + "  " + video.note
+        }.toTypedArray()
+        XPopup.Builder(this)
+            .asCenterList("选择来源", names) { position, _ -> openDetail(videos[position]) }
+            .show()
+    }
+
     /**
      * 指定搜索源(过滤)
      */
@@ -391,17 +380,6 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
         }
     }
 
-    @Subscribe(threadMode = ThreadMode.MAIN)
-    override fun refresh(event: RefreshEvent) {
-        if (event.type == RefreshEvent.TYPE_SEARCH_RESULT) {
-            try {
-                searchData(if (event.obj == null) null else event.obj as AbsXml)
-            } catch (e: Exception) {
-                searchData(null)
-            }
-        }
-    }
-
     private fun search(title: String?) {
         if (title.isNullOrEmpty()) {
             ToastUtils.showShort("请输入搜索内容")
@@ -437,8 +415,6 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
         searchResult()
     }
 
-    private var searchExecutorService: ExecutorService? = null
-    private val allRunCount = AtomicInteger(0)
     private fun getSiteTextView(text: String): TextView {
         val textView = TextView(this)
         textView.text = text
@@ -452,26 +428,15 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
     }
 
     private fun searchResult() {
-        try {
-            if (searchExecutorService != null) {
-                searchExecutorService!!.shutdownNow()
-                searchExecutorService = null
-                JsLoader.stopAll()
-            }
-        } catch (th: Throwable) {
-            th.printStackTrace()
-        } finally {
-            searchAdapter.setNewData(ArrayList())
-            searchAdapterFilter.setNewData(ArrayList())
-            allRunCount.set(0)
-        }
-        searchExecutorService = Executors.newFixedThreadPool(10)
+        searchQuery?.cancel()
+        searchAdapter.setNewData(ArrayList())
+        searchAdapterFilter.setNewData(ArrayList())
         val searchRequestList: MutableList<SourceBean> = ArrayList()
         searchRequestList.addAll(ApiConfig.get().sourceBeanList)
         val home = ApiConfig.get().homeSourceBean
         searchRequestList.remove(home)
         searchRequestList.add(0, home)
-        val siteKey = ArrayList<String>()
+        val sources = ArrayList<SourceBean>()
         mBinding.tabLayout.addView(getSiteTextView("全部显示"))
         mBinding.tabLayout.setCurrentItem(0, true, false)
         for (bean: SourceBean in searchRequestList) {
@@ -481,18 +446,22 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
             if (mCheckSources != null && !mCheckSources!!.containsKey(bean.key)) {
                 continue
             }
-            siteKey.add(bean.key)
+            sources.add(bean)
             spNames[bean.name] = bean.key
-            allRunCount.incrementAndGet()
         }
-        for (key: String in siteKey) {
-            searchExecutorService!!.execute {
-                try {
-                    sourceViewModel.getSearch(key, searchTitle)
-                } catch (_: Exception) {
+        // 结果按批次在主线程回调, 全部完成或超时后再判断是否为空
+        searchQuery = SearchEngine.search(searchTitle, sources, object : SearchEngine.Listener {
+            override fun onResults(batch: SearchBatch) {
+                searchData(batch)
+            }
+
+            override fun onComplete(timeout: Boolean) {
+                if (searchAdapter.data.size <= 0) {
+                    showEmpty()
                 }
+                searchQuery = null
             }
-        }
+        })
     }
 
     /**
@@ -522,66 +491,35 @@ class FastSearchActivity : BaseVbActivity<ActivityFastSearchBinding>(), TextWatc
         }
     }
 
-    private fun matchSearchResult(name: String, searchTitle: String?): Boolean {
-        var searchTitle = searchTitle
-        if (TextUtils.isEmpty(name) || TextUtils.isEmpty(searchTitle)) return false
-        searchTitle = searchTitle!!.trim { it <= ' ' }
-        val arr = searchTitle.split("\\s+".toRegex()).dropLastWhile { it.isEmpty() }.toTypedArray()
-        var matchNum = 0
-        for (one: String in arr) {
-            if (name.contains(one)) matchNum++
+    /**
+     * 标题匹配和合并已经在搜索线程上完成, 这里只更新列表和站点标签
+     */
+    private fun searchData(batch: SearchBatch) {
+        for ((sourceKey, videos) in batch.bySource) {
+            resultVods.getOrPut(sourceKey) { ArrayList() }.addAll(videos)
+            addWordAdapterIfNeed(sourceKey)
         }
-        return if (matchNum == arr.size) true else false
-    }
-
-    private fun searchData(absXml: AbsXml?) {
-        var lastSourceKey = ""
-        if ((absXml != null) && (absXml.movie != null) && (absXml.movie.videoList != null) && (absXml.movie.videoList.size > 0)) {
-            val data: MutableList<Movie.Video> = ArrayList()
-            for (video: Movie.Video in absXml.movie.videoList) {
-                if (!matchSearchResult(video.name, searchTitle)) continue
-                data.add(video)
-                if (!resultVods.containsKey(video.sourceKey)) {
-                    resultVods[video.sourceKey] = ArrayList()
-                }
-                resultVods[video.sourceKey]!!.add(video)
-                if (video.sourceKey !== lastSourceKey) { // 添加到最后面并记录最后一个key用于下次判断
-                    lastSourceKey = addWordAdapterIfNeed(video.sourceKey)
-                }
-            }
-            if (searchAdapter.data.size > 0) {
-                searchAdapter.addData(data)
-            } else {
-                showSuccess()
-                if (!isFilterMode) mBinding.mGridView.visibility = View.VISIBLE
-                searchAdapter.setNewData(data)
-            }
+        for (group in batch.updated) {
+            searchAdapter.notifyItemChanged(group.position)
         }
-        val count = allRunCount.decrementAndGet()
-        if (count <= 0) {
-            if (searchAdapter.data.size <= 0) {
-                showEmpty()
-            }
-            cancel()
+        if (batch.added.isEmpty()) return
+        if (searchAdapter.data.size > 0) {
+            searchAdapter.addData(batch.added)
+        } else {
+            showSuccess()
+            if (!isFilterMode) mBinding.mGridView.visibility = View.VISIBLE
+            searchAdapter.setNewData(ArrayList(batch.added))
         }
     }
 
     private fun cancel() {
-        OkGo.getInstance().cancelTag("search")
+        searchQuery?.cancel()
+        searchQuery = null
     }
 
     override fun onDestroy() {
         super.onDestroy()
         cancel()
-        try {
-            if (searchExecutorService != null) {
-                searchExecutorService!!.shutdownNow()
-                searchExecutorService = null
-                JsLoader.load()
-            }
-        } catch (th: Throwable) {
-            th.printStackTrace()
-        }
     }
 
     override fun beforeTextChanged(charSequence: CharSequence, i: Int, i1: Int, i2: Int) {}
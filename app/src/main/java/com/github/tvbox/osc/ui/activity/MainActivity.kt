@@ -13,6 +13,7 @@ import com.github.tvbox.osc.databinding.ActivityMainBinding
 import com.github.tvbox.osc.ui.fragment.GridFragment
 import com.github.tvbox.osc.ui.fragment.HomeFragment
 import com.github.tvbox.osc.ui.fragment.MyFragment
+import com.github.tvbox.osc.util.js.JsLocalStore
 import kotlin.system.exitProcess
 
 class MainActivity : BaseVbActivity<ActivityMainBinding>() {
@@ -79,6 +80,7 @@ class MainActivity : BaseVbActivity<ActivityMainBinding>() {
             exitTime = System.currentTimeMillis()
         } else {
             ActivityUtils.finishAllActivities(true)
+            JsLocalStore.flushPending()
             Process.killProcess(Process.myPid())
             exitProcess(0)
         }
@@ -15,6 +15,8 @@ import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.tvbox.osc.R;
+import com.github.tvbox.osc.api.SourceHealth;
+import com.github.tvbox.osc.api.SpiderInvoker;
 import com.github.tvbox.osc.bean.SourceBean;
 import com.github.tvbox.osc.util.LOG;
 import com.github.tvbox.osc.util.SearchHelper;
@@ -65,7 +67,10 @@ public class CheckboxSearchAdapter extends ListAdapter<SourceBean, CheckboxSearc
     public void onBindViewHolder(ViewHolder holder, int position) {
         int pos = holder.getAdapterPosition();
         SourceBean sourceBean = data.get(pos);
-        holder.oneSearchSource.setText(sourceBean.getName());
+        // 附带最近的搜索耗时和成功率, 熔断中的站点标出来
+        SourceHealth health = SpiderInvoker.peekHealth(sourceBean.getKey(), SpiderInvoker.SEARCH);
+        String summary = health == null ? "" : health.getSummary();
+        holder.oneSearchSource.setText(summary.isEmpty() ? sourceBean.getName() : sourceBean.getName() + " (" + summary + ")");
         holder.oneSearchSource.setOnCheckedChangeListener(null);
         if (mCheckedSources != null) {
             holder.oneSearchSource.setChecked(mCheckedSources.containsKey(sourceBean.getKey()));
@@ -0,0 +1,69 @@
+package com.github.tvbox.osc.ui.adapter;
+
+import android.text.TextUtils;
+import android.widget.ImageView;
+
+import com.chad.library.adapter.base.BaseQuickAdapter;
+import com.chad.library.adapter.base.BaseViewHolder;
+import com.github.tvbox.osc.R;
+import com.github.tvbox.osc.api.ApiConfig;
+import com.github.tvbox.osc.bean.Movie;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.picasso.RoundTransformation;
+import com.github.tvbox.osc.search.SearchGroup;
+import com.github.tvbox.osc.util.MD5;
+import com.squareup.picasso.Picasso;
+
+import java.util.ArrayList;
+
+import me.jessyan.autosize.utils.AutoSizeUtils;
+
+/**
+ * 聚合搜索结果, 一行是一个合并后的分组, 展示排在最前的候选
+ */
+public class SearchGroupAdapter extends BaseQuickAdapter<SearchGroup, BaseViewHolder> {
+    public SearchGroupAdapter() {
+        super(R.layout.item_search, new ArrayList<>());
+    }
+
+    @Override
+    protected void convert(BaseViewHolder helper, SearchGroup group) {
+        Movie.Video item = group.getVideo();
+        helper.setText(R.id.tvName, item.name);
+        String site = siteName(item.sourceKey);
+        helper.setText(R.id.tvSite, group.size() > 1 ? site + " 等" + group.size() + "个源" : site);
+        helper.setVisible(R.id.tvNote, item.note != null && !item.note.isEmpty());
+        if (item.note != null && !item.note.isEmpty()) {
+            helper.setText(R.id.tvNote, item.note);
+        }
+        ImageView ivThumb = helper.getView(R.id.ivThumb);
+        String pic = firstPic(group);
+        if (!TextUtils.isEmpty(pic)) {
+            Picasso.get()
+                    .load(pic)
+                    .transform(new RoundTransformation(MD5.string2MD5(pic + "position=" + helper.getLayoutPosition()))
+                            .centerCorp(true)
+                            .override(AutoSizeUtils.dp2px(mContext, 110), AutoSizeUtils.dp2px(mContext, 160))
+                            .roundRadius(AutoSizeUtils.dp2px(mContext, 20), RoundTransformation.RoundType.ALL))
+                    .placeholder(R.drawable.img_loading_placeholder)
+                    .error(R.drawable.img_loading_placeholder)
+                    .into(ivThumb);
+        } else {
+            ivThumb.setImageResource(R.drawable.img_loading_placeholder);
+        }
+    }
+
+    public static String siteName(String sourceKey) {
+        SourceBean sourceBean = ApiConfig.get().getSource(sourceKey);
+        return sourceBean == null ? sourceKey : sourceBean.getName();
+    }
+
+    // 排在前面的站点可能没有封面, 取第一个有封面的候选
+    private static String firstPic(SearchGroup group) {
+        for (Movie.Video video : group.getVideos()) {
+            if (!TextUtils.isEmpty(video.pic))
+                return video.pic;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.tvbox.osc.ui.dialog;
+
+import android.content.Context;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+import com.blankj.utilcode.util.ThreadUtils;
+import com.blankj.utilcode.util.ToastUtils;
+import com.github.tvbox.osc.R;
+import com.github.tvbox.osc.util.js.JsMetrics;
+import com.lxj.xpopup.core.BottomPopupView;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * 各 JS 站点的 QuickJS 内存和耗时统计, 调试用
+ */
+public class JsMetricsDialog extends BottomPopupView {
+
+    private TextView tvMetrics;
+
+    public JsMetricsDialog(@NonNull @NotNull Context context) {
+        super(context);
+    }
+
+    @Override
+    protected int getImplLayoutId() {
+        return R.layout.dialog_js_metrics;
+    }
+
+    @Override
+    protected void onCreate() {
+        super.onCreate();
+        tvMetrics = findViewById(R.id.tv_metrics);
+        findViewById(R.id.iv_close).setOnClickListener(view -> dismiss());
+        findViewById(R.id.tv_refresh).setOnClickListener(view -> refresh());
+        findViewById(R.id.tv_dump).setOnClickListener(view -> ThreadUtils.executeByIo(new ThreadUtils.SimpleTask<File>() {
+            @Override
+            public File doInBackground() {
+                return JsMetrics.dump();
+            }
+
+            @Override
+            public void onSuccess(File file) {
+                ToastUtils.showShort(file == null ? "导出失败" : "已导出到 " + file.getAbsolutePath());
+            }
+        }));
+        refresh();
+    }
+
+    private void refresh() {
+        tvMetrics.setText("统计中...");
+        ThreadUtils.executeByIo(new ThreadUtils.SimpleTask<String>() {
+            @Override
+            public String doInBackground() {
+                return JsMetrics.report();
+            }
+
+            @Override
+            public void onSuccess(String report) {
+                tvMetrics.setText(report);
+            }
+        });
+    }
+}
@@ -91,6 +91,8 @@ class HomeFragment : BaseVbFragment<FragmentHomeBinding>() {
             }
         }
         mBinding.nameContainer.setOnLongClickListener {
+            // 手动刷新时丢弃首页站点的响应缓存, 重新请求爬虫
+            ApiConfig.get().homeSourceBean?.key?.let { sourceViewModel?.invalidate(it) }
             refreshHomeSources()
             true
         }
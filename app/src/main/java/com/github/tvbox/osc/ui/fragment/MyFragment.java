@@ -20,6 +20,7 @@ import com.github.tvbox.osc.ui.activity.MovieFoldersActivity;
 import com.github.tvbox.osc.ui.activity.SettingActivity;
 import com.github.tvbox.osc.ui.activity.SubscriptionActivity;
 import com.github.tvbox.osc.ui.dialog.AboutDialog;
+import com.github.tvbox.osc.ui.dialog.JsMetricsDialog;
 import com.github.tvbox.osc.util.FastClickCheckUtil;
 import com.github.tvbox.osc.util.Utils;
 import com.hjq.permissions.OnPermissionCallback;
@@ -79,6 +80,13 @@ public class MyFragment extends BaseVbFragment<FragmentMyBinding> {
                     .asCustom(new AboutDialog(mActivity))
                     .show();
         });
+        // 长按关于查看 JS 站点运行状态
+        mBinding.llAbout.setOnLongClickListener(v -> {
+            new XPopup.Builder(mActivity)
+                    .asCustom(new JsMetricsDialog(mActivity))
+                    .show();
+            return true;
+        });
     }
 
     private void showPermissionTipPopup(){
@@ -2,6 +2,8 @@ package com.github.tvbox.osc.util;
 
 import android.app.Activity;
 
+import com.github.tvbox.osc.util.js.JsLocalStore;
+
 import java.util.Stack;
 
 /**
@@ -126,6 +128,7 @@ public class AppManager {
     public void appExit(int code) {
         try {
             finishAllActivity();
+            JsLocalStore.flushPending();
             android.os.Process.killProcess(android.os.Process.myPid());
             System.exit(code);
         } catch (Exception e) {
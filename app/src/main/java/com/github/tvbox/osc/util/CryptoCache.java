@@ -0,0 +1,121 @@
+package com.github.tvbox.osc.util;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+
+import okio.ByteString;
+
+/**
+ * 加解密对象缓存
+ * Cipher/MessageDigest 按线程复用(它们不是线程安全的, 每次使用前都会重新 init/reset), 省掉每次的 Provider 查找;
+ * 解析好的 RSA 公私钥按密钥内容放在 LRU 里, 同一个站点反复签名、解密时不再重复解析 PEM
+ * 只用 JDK 和 okio, 不依赖 android 类, 可以直接在 JVM 单元测试里跑
+ */
+public class CryptoCache {
+    private static final int MAX_KEYS = 32;
+
+    private static final ThreadLocal<HashMap<String, Cipher>> ciphers = new ThreadLocal<HashMap<String, Cipher>>() {
+        @Override
+        protected HashMap<String, Cipher> initialValue() {
+            return new HashMap<>();
+        }
+    };
+    private static final ThreadLocal<HashMap<String, MessageDigest>> digests = new ThreadLocal<HashMap<String, MessageDigest>>() {
+        @Override
+        protected HashMap<String, MessageDigest> initialValue() {
+            return new HashMap<>();
+        }
+    };
+    private static final LinkedHashMap<String, PublicKey> publicKeys = newKeyCache();
+    private static final LinkedHashMap<String, PrivateKey> privateKeys = newKeyCache();
+
+    private static <K> LinkedHashMap<String, K> newKeyCache() {
+        return new LinkedHashMap<String, K>(MAX_KEYS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, K> eldest) {
+                return size() > MAX_KEYS;
+            }
+        };
+    }
+
+    /**
+     * 当前线程的 Cipher, 调用方必须在使用前 init
+     */
+    public static Cipher cipher(String transformation) throws GeneralSecurityException {
+        HashMap<String, Cipher> map = ciphers.get();
+        Cipher cipher = map.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            map.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * 当前线程的 MessageDigest, 已 reset
+     */
+    public static MessageDigest digest(String algorithm) throws GeneralSecurityException {
+        HashMap<String, MessageDigest> map = digests.get();
+        MessageDigest digest = map.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            map.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    /**
+     * @param key X509 格式公钥的 Base64, 可以带 PEM 头尾和换行
+     */
+    public static PublicKey publicKey(String key) throws GeneralSecurityException {
+        PublicKey publicKey;
+        synchronized (publicKeys) {
+            publicKey = publicKeys.get(key);
+        }
+        if (publicKey == null) {
+            publicKey = KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(decodePem(key)));
+            synchronized (publicKeys) {
+                publicKeys.put(key, publicKey);
+            }
+        }
+        return publicKey;
+    }
+
+    /**
+     * @param key PKCS8 格式私钥的 Base64, 可以带 PEM 头尾和换行
+     */
+    public static PrivateKey privateKey(String key) throws GeneralSecurityException {
+        PrivateKey privateKey;
+        synchronized (privateKeys) {
+            privateKey = privateKeys.get(key);
+        }
+        if (privateKey == null) {
+            privateKey = KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(decodePem(key)));
+            synchronized (privateKeys) {
+                privateKeys.put(key, privateKey);
+            }
+        }
+        return privateKey;
+    }
+
+    private static byte[] decodePem(String key) throws InvalidKeySpecException {
+        String body = key.replaceAll("-----(BEGIN|END) [A-Z ]*KEY-----", "").replaceAll("\\s", "");
+        ByteString bytes = ByteString.decodeBase64(body);
+        if (bytes == null)
+            throw new InvalidKeySpecException("密钥不是合法的 Base64");
+        return bytes.toByteArray();
+    }
+}
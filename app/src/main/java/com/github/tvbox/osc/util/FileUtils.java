@@ -6,16 +6,11 @@ import android.text.TextUtils;
 import android.util.Base64;
 
 import com.github.tvbox.osc.base.App;
-import com.github.tvbox.osc.server.ControlManager;
-import com.github.tvbox.osc.util.StringUtils;
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.github.tvbox.osc.cache.ModuleCache;
 import com.lzy.okgo.OkGo;
 import com.lzy.okgo.model.HttpHeaders;
 import com.orhanobut.hawk.Hawk;
 
-import org.json.JSONObject;
-
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
@@ -26,7 +21,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.net.URLDecoder;
 import java.util.Map;
 import java.util.UUID;
 import java.util.regex.Matcher;
@@ -48,31 +45,6 @@ public class FileUtils {
             .replaceAll("-", "");
     }
     
-    public static String getCache(String name) {
-        try {
-            String code = "";
-            File file = open(name);
-            if (file.exists()) {
-                code = new String(readSimple(file));
-            }
-            if (TextUtils.isEmpty(code)) {
-                return "";
-            }
-            JsonObject asJsonObject = (new Gson()
-                .fromJson(code, JsonObject.class))
-                .getAsJsonObject();
-            if (((long) asJsonObject.get("expires")
-                .getAsInt()) > System.currentTimeMillis() / 1000) {
-                return new String(Base64.decode(asJsonObject.get("data")
-                    .getAsString(), Base64.URL_SAFE));
-            }
-            recursiveDelete(open(name));
-            return "";
-        } catch (Exception e4) {
-            return "";
-        }
-    }
-    
     public static byte[] getCacheByte(String name) {
         try {
             File file = open("B_" + name);
@@ -85,17 +57,6 @@ public class FileUtils {
         }
     }
 
-    public static void setCache(int time, String name, String data) {
-        try {
-            JSONObject jSONObject = new JSONObject();
-            jSONObject.put("expires", (int)(time + (System.currentTimeMillis() / 1000)));
-            jSONObject.put("data", Base64.encodeToString(data.getBytes(), Base64.URL_SAFE));    
-            writeSimple(jSONObject.toString().getBytes(), open(name));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
     public static void setCacheByte(String name, byte[] data) {
         try {
             writeSimple(byteMerger("//DRPY".getBytes(),Base64.encode(data, Base64.URL_SAFE)), open("B_" + name));
@@ -157,15 +118,7 @@ public class FileUtils {
             Matcher m = URLJOIN.matcher(name);
             if (m.find()) {
                 if (!Hawk.get(HawkConfig.DEBUG_OPEN, false)) {
-                    String cache = getCache(MD5.encode(name));
-                    if (StringUtils.isEmpty(cache)) {
-                        String netStr = get(name);
-                        if (!TextUtils.isEmpty(netStr)) {
-                            setCache(604800, MD5.encode(name), netStr);
-                        }
-                        return netStr;
-                    }
-                    return cache;
+                    return ModuleCache.get(name);
                 } else {
                     return get(name);
                 }
@@ -174,12 +127,10 @@ public class FileUtils {
             } else if (isAsFile(name, "js/lib")) {
                 return getAsOpen("js/lib/" + name);
             } else if (name.startsWith("file://")) {
-                return get(ControlManager.get()
-                    .getAddress(true) + "file/" + name.replace("file:///", "")
-                    .replace("file://", ""));
+                return ModuleCache.readLocal(localFile(name.replace("file:///", "")
+                    .replace("file://", "")));
             } else if (name.startsWith("clan://localhost/")) {
-                return get(ControlManager.get()
-                    .getAddress(true) + "file/" + name.replace("clan://localhost/", ""));
+                return ModuleCache.readLocal(localFile(name.replace("clan://localhost/", "")));
             } else if (name.startsWith("clan://")) {
                 String substring = name.substring(7);
                 int indexOf = substring.indexOf(47);
@@ -192,6 +143,21 @@ public class FileUtils {
         return name;
     }
 
+    /**
+     * 本地模块地址转成存储卡上的文件: 去掉 ?query 和 #fragment, 再按 UTF-8 解码 %XX(之前经本地 http 服务读取时由服务端解码)
+     */
+    private static File localFile(String path) throws UnsupportedEncodingException {
+        int end = path.length();
+        int query = path.indexOf('?');
+        if (query >= 0)
+            end = query;
+        int fragment = path.indexOf('#');
+        if (fragment >= 0 && fragment < end)
+            end = fragment;
+        // 文件名里的 + 不是空格
+        return new File(getRootPath(), URLDecoder.decode(path.substring(0, end).replace("+", "%2B"), "UTF-8"));
+    }
+
     public static boolean isAsFile(String name, String path) {
         try {
             for (String fname: App.getInstance()
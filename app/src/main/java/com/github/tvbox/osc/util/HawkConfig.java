@@ -68,4 +68,8 @@ public class HawkConfig {
      * 允许移动网络下载
      */
     public static final String DOWNLOAD_ON_MOBILE = "download_on_mobile";
+    /**
+     * JS 工作线程数, 0 为按 CPU 核数自动决定
+     */
+    public static final String JS_WORKERS = "js_workers";
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 
 
@@ -26,15 +27,14 @@ public class MD5 {
     private static final char hexDigits[] = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
             'a', 'b', 'c', 'd', 'e', 'f'};
     /**
-     * 消息摘要.
+     * 消息摘要, 非线程安全, 每个线程用自己的实例, 不再全局加锁.
      */
-    private static MessageDigest sDigest;
-
-    static {
+    private static MessageDigest digest() {
         try {
-            MD5.sDigest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
+            return CryptoCache.digest("MD5");
+        } catch (GeneralSecurityException e) {
             Log.e("获取MD5信息摘要失败", e.getMessage());
+            return null;
         }
     }
 
@@ -58,8 +58,7 @@ public class MD5 {
 
     private static String encode(byte[] bytes) {
         try {
-            sDigest.update(bytes);
-            byte[] md = sDigest.digest();
+            byte[] md = digest().digest(bytes);
             int j = md.length;
             char str[] = new char[j * 2];
             int k = 0;
@@ -108,6 +107,7 @@ public class MD5 {
      * MD5加码 生成32位md5码
      */
     public static String string2MD5(String inStr) {
+        MessageDigest sDigest = digest();
         if (sDigest == null) {
             Log.e("MD5", "MD5信息摘要初始化失败");
             return null;
@@ -139,6 +139,7 @@ public class MD5 {
      * @return 加密后的字符串，不支持此类字符集合返回null
      */
     public static String encrypt(final String strSource) {
+        MessageDigest sDigest = digest();
         if (sDigest == null) {
             Log.e("MD5", "MD5信息摘要初始化失败");
             return null;
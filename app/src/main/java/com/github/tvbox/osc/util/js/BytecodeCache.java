@@ -0,0 +1,166 @@
+package com.github.tvbox.osc.util.js;
+
+import com.github.tvbox.osc.base.App;
+import com.github.tvbox.osc.util.LOG;
+import com.github.tvbox.osc.util.MD5;
+import com.whl.quickjs.wrapper.QuickJSContext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * QuickJS 模块字节码的磁盘缓存, 以 (模块名 + 源码) 的 md5 为 key
+ * 文件头带格式版本和 App 安装时间, 升级 App(可能换了 quickjs so)后旧字节码自动失效
+ * 源码修改后旧 hash 的文件不会再被读到, 写入时按最近使用时间(文件修改时间)淘汰, 目录总大小不超过 MAX_BYTES
+ */
+public class BytecodeCache {
+    private static final int MAGIC = 0x514A5342; // QJSB
+    /**
+     * 文件格式有变化时递增
+     */
+    private static final int FORMAT = 1;
+    private static final long MAX_BYTES = 32 * 1024 * 1024;
+
+    private static volatile long appStamp = -1;
+    // 模块名 -> 命中缓存省下的编译耗时(毫秒)
+    private static final ConcurrentHashMap<String, Long> savedMillis = new ConcurrentHashMap<>();
+
+    /**
+     * 返回模块字节码, 缓存未命中时编译并写入缓存; 必须在 ctx 所在线程调用
+     */
+    public static byte[] compileModule(QuickJSContext ctx, String source, String moduleName) {
+        String hash = MD5.string2MD5(moduleName + "\n" + source);
+        File file = fileOf(hash);
+        long start = System.currentTimeMillis();
+        Entry entry = read(file);
+        if (entry != null) {
+            file.setLastModified(System.currentTimeMillis());
+            long saved = Math.max(0, entry.compileMs - (System.currentTimeMillis() - start));
+            savedMillis.put(moduleName, saved);
+            return entry.bytecode;
+        }
+        byte[] bytecode = ctx.compileModule(source, moduleName);
+        long compileMs = System.currentTimeMillis() - start;
+        savedMillis.remove(moduleName);
+        write(file, bytecode, compileMs);
+        return bytecode;
+    }
+
+    /**
+     * @return 本次运行中命中缓存的模块以及省下的编译耗时
+     */
+    public static Map<String, Long> getSavedMillis() {
+        return new HashMap<>(savedMillis);
+    }
+
+    public static long getSavedMillis(String moduleName) {
+        Long saved = savedMillis.get(moduleName);
+        return saved == null ? 0 : saved;
+    }
+
+    private static class Entry {
+        final byte[] bytecode;
+        final long compileMs;
+
+        Entry(byte[] bytecode, long compileMs) {
+            this.bytecode = bytecode;
+            this.compileMs = compileMs;
+        }
+    }
+
+    private static File dir() {
+        return new File(App.getInstance().getCacheDir().getAbsolutePath() + "/qjs_bytecode");
+    }
+
+    private static File fileOf(String hash) {
+        return new File(dir(), hash + ".qbc");
+    }
+
+    private static long appStamp() {
+        if (appStamp < 0) {
+            try {
+                appStamp = App.getInstance().getPackageManager().getPackageInfo(App.getInstance().getPackageName(), 0).lastUpdateTime;
+            } catch (Throwable th) {
+                appStamp = 0;
+            }
+        }
+        return appStamp;
+    }
+
+    private static Entry read(File file) {
+        if (!file.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() == MAGIC && in.readInt() == FORMAT && in.readLong() == appStamp()) {
+                long compileMs = in.readLong();
+                byte[] bytecode = new byte[in.readInt()];
+                in.readFully(bytecode);
+                return new Entry(bytecode, compileMs);
+            }
+        } catch (Throwable th) {
+            LOG.e(th);
+        }
+        file.delete();
+        return null;
+    }
+
+    private static void write(File file, byte[] bytecode, long compileMs) {
+        if (bytecode == null || bytecode.length == 0)
+            return;
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists())
+            dir.mkdirs();
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(appStamp());
+            out.writeLong(compileMs);
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+        } catch (Throwable th) {
+            LOG.e(th);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file))
+            tmp.delete();
+        trim();
+    }
+
+    /**
+     * 超出大小上限时从最久未使用的开始删除, 删到上限的 3/4
+     */
+    private static synchronized void trim() {
+        File[] files = dir().listFiles();
+        if (files == null)
+            return;
+        long total = 0;
+        for (File one : files) {
+            total += one.length();
+        }
+        if (total <= MAX_BYTES)
+            return;
+        HashMap<File, Long> lastModified = new HashMap<>();
+        for (File one : files) {
+            lastModified.put(one, one.lastModified());
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(lastModified.get(a), lastModified.get(b)));
+        for (File one : files) {
+            if (total <= MAX_BYTES * 3 / 4)
+                break;
+            long length = one.length();
+            if (one.delete())
+                total -= length;
+        }
+    }
+}
@@ -6,17 +6,21 @@ import com.github.catvod.net.OkHttp;
 import com.github.tvbox.osc.util.LOG;
 import com.google.common.net.HttpHeaders;
 import com.lzy.okgo.OkGo;
-import com.whl.quickjs.wrapper.JSArray;
 import com.whl.quickjs.wrapper.JSObject;
 import com.whl.quickjs.wrapper.JSUtils;
 import com.whl.quickjs.wrapper.QuickJSContext;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
+import okhttp3.Dispatcher;
 import okhttp3.FormBody;
 import okhttp3.Headers;
 import okhttp3.MediaType;
@@ -27,26 +31,41 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 
 public class Connect {
-    static OkHttpClient client;
+    private static final String TAG = "js_okhttp_tag";
 
-    public static Call to(String url, Req req) {
+    /**
+     * @param tag 请求的 tag, 见 {@link #tagOf}, 取消时只影响同一个站点的请求
+     */
+    public static Call to(String url, Req req, Object tag) {
         OkHttpClient client = OkHttp.client(req.isRedirect(), req.getTimeout());
-        return client.newCall(getRequest(url, req, Headers.of(req.getHeader())));
+        return client.newCall(getRequest(url, req, Headers.of(req.getHeader()), tag));
+    }
+
+    /**
+     * 每个站点的 JS 请求用自己的 tag, 取消一个站点时不会把其它站点进行中的请求一起取消
+     */
+    public static String tagOf(String siteKey) {
+        return siteKey == null ? TAG : TAG + "_" + siteKey;
     }
 
     public static JSObject success(QuickJSContext ctx, Req req, Response res) {
+        try {
+            return success(ctx, req, res, res.body().bytes());
+        } catch (Exception e) {
+            return error(ctx);
+        }
+    }
+
+    /**
+     * body 已在网络线程读完, 这里只做到 JS 对象的转换, 必须在 ctx 所在线程调用
+     */
+    public static JSObject success(QuickJSContext ctx, Req req, Response res, byte[] body) {
         try {
             JSObject jsObject = ctx.createJSObject();
-            JSObject jsHeader = ctx.createJSObject();
-            setHeader(ctx, res, jsHeader);
-            jsObject.set("headers", jsHeader);
-            if (req.getBuffer() == 0) jsObject.set("content", new String(res.body().bytes(), req.getCharset()));
-            if (req.getBuffer() == 1) {
-                JSArray array = ctx.createJSArray();
-                for (byte aByte : res.body().bytes()) array.push((int) aByte);
-                jsObject.set("content", array);
-            }
-            if (req.getBuffer() == 2) jsObject.set("content", Base64.encodeToString(res.body().bytes(), Base64.DEFAULT));
+            jsObject.set("headers", getHeader(ctx, res));
+            if (req.getBuffer() == 0) jsObject.set("content", new String(body, req.getCharset()));
+            if (req.getBuffer() == 1) jsObject.set("content", new JSUtils<Integer>().toArray(ctx, body));
+            if (req.getBuffer() == 2) jsObject.set("content", Base64.encodeToString(body, Base64.DEFAULT));
             return jsObject;
         } catch (Exception e) {
             return error(ctx);
@@ -61,13 +80,13 @@ public class Connect {
         return jsObject;
     }
 
-    private static Request getRequest(String url, Req req, Headers headers) {
+    private static Request getRequest(String url, Req req, Headers headers, Object tag) {
         if (req.getMethod().equalsIgnoreCase("post")) {
-            return new Request.Builder().url(url).tag("js_okhttp_tag").headers(headers).post(getPostBody(req, headers.get(HttpHeaders.CONTENT_TYPE))).build();
+            return new Request.Builder().url(url).tag(tag).headers(headers).post(getPostBody(req, headers.get(HttpHeaders.CONTENT_TYPE))).build();
         } else if (req.getMethod().equalsIgnoreCase("header")) {
-            return new Request.Builder().url(url).tag("js_okhttp_tag").headers(headers).head().build();
+            return new Request.Builder().url(url).tag(tag).headers(headers).head().build();
         } else {
-            return new Request.Builder().url(url).tag("js_okhttp_tag").headers(headers).get().build();
+            return new Request.Builder().url(url).tag(tag).headers(headers).get().build();
         }
     }
 
@@ -98,24 +117,36 @@ public class Connect {
         return builder.build();
     }
 
-    private static void setHeader(QuickJSContext ctx, Response res, JSObject object) {
-        for (Map.Entry<String, List<String>> entry : res.headers().toMultimap().entrySet()) {
-            if (entry.getValue().size() == 1) object.set(entry.getKey(), entry.getValue().get(0));
-            if (entry.getValue().size() >= 2) object.set(entry.getKey(), new JSUtils<String>().toArray(ctx, entry.getValue()));
+    /**
+     * 响应头先拼成 JSON, 一次 parse 成 JS 对象
+     */
+    private static JSObject getHeader(QuickJSContext ctx, Response res) {
+        JSONObject object = new JSONObject();
+        try {
+            for (Map.Entry<String, List<String>> entry : res.headers().toMultimap().entrySet()) {
+                if (entry.getValue().size() == 1) object.put(entry.getKey(), entry.getValue().get(0));
+                if (entry.getValue().size() >= 2) object.put(entry.getKey(), new JSONArray(entry.getValue()));
+            }
+        } catch (JSONException e) {
+            LOG.e(e);
         }
+        return (JSObject) ctx.parse(object.toString());
     }
+
+    /**
+     * OkHttp.client 派生出的各个 client 共用同一个 dispatcher, 在这里按 tag 找到排队和进行中的请求
+     */
     public static void cancelByTag(Object tag) {
         try {
-            if (client != null) {
-                for (Call call : client.dispatcher().queuedCalls()) {
-                    if (tag.equals(call.request().tag())) {
-                        call.cancel();
-                    }
+            Dispatcher dispatcher = OkHttp.client().dispatcher();
+            for (Call call : dispatcher.queuedCalls()) {
+                if (tag.equals(call.request().tag())) {
+                    call.cancel();
                 }
-                for (Call call : client.dispatcher().runningCalls()) {
-                    if (tag.equals(call.request().tag())) {
-                        call.cancel();
-                    }
+            }
+            for (Call call : dispatcher.runningCalls()) {
+                if (tag.equals(call.request().tag())) {
+                    call.cancel();
                 }
             }
             OkGo.getInstance().cancelTag(tag);
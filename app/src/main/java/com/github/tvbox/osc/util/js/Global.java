@@ -17,9 +17,8 @@ import org.json.JSONObject;
 
 import java.io.IOException;
 import java.net.URLEncoder;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -28,23 +27,47 @@ import okhttp3.Response;
 public class Global {
     private QuickJSContext runtime;
     public ExecutorService executor;
-    private final Timer timer;
+    private final JsTimers timers;
+    // 所属站点 key, 写进代理地址里让 /proxy 直接路由到这个爬虫
+    private final String siteKey;
 
-    public Global(ExecutorService executor) {
+    public Global(ScheduledExecutorService executor) {
+        this(executor, null);
+    }
+
+    public Global(ScheduledExecutorService executor, String siteKey) {
         this.executor = executor;
-        this.timer = new Timer();
+        this.siteKey = siteKey;
+        this.timers = new JsTimers(executor);
+    }
+
+    /**
+     * 上下文销毁前在 JS 线程调用: 取消所有定时器, 之后到达的异步请求回调也不再执行
+     */
+    public void close() {
+        timers.close();
+    }
+
+    private boolean closed() {
+        return timers.isClosed() || executor.isShutdown();
+    }
+
+    private String proxyBase(boolean local) {
+        return ControlManager.get().getAddress(local) + "proxy?do=js";
     }
 
     @Keep
     @Function
     public String getProxy(boolean local) {
-        return ControlManager.get().getAddress(local) + "proxy?do=js";
+        if (siteKey == null)
+            return proxyBase(local);
+        return proxyBase(local) + "&siteKey=" + URLEncoder.encode(siteKey);
     }
 
     @Keep
     @Function
     public String js2Proxy(Boolean dynamic, Integer siteType, String siteKey, String url, JSObject headers) {
-        return getProxy(true) + "&from=catvod" + "&siteType=" + siteType + "&siteKey=" + siteKey + "&header=" + URLEncoder.encode(headers.toJsonString()) + "&url=" + URLEncoder.encode(url);
+        return proxyBase(true) + "&from=catvod" + "&siteType=" + siteType + "&siteKey=" + siteKey + "&header=" + URLEncoder.encode(headers.toJsonString()) + "&url=" + URLEncoder.encode(url);
     }
 
     @Keep
@@ -273,7 +296,7 @@ public class Global {
     private JSObject req(String url, JSObject options) {
         try {
             Req req = Req.objectFrom(options.toJsonObject().toString());
-            Response res = Connect.to(url, req).execute();
+            Response res = Connect.to(url, req, Connect.tagOf(siteKey)).execute();
             return Connect.success(runtime, req, res);
         } catch (Exception e) {
             return Connect.error(runtime);
@@ -286,34 +309,62 @@ public class Global {
         JSFunction complete = options.getJSFunction("complete");
         if (complete == null) return req(url, options);
         Req req = Req.objectFrom(options.toJsonObject().toString());
-        Connect.to(url, req).enqueue(getCallback(complete, req));
+        Connect.to(url, req, Connect.tagOf(siteKey)).enqueue(getCallback(complete, req));
         return null;
     }
 
     @Keep
     @Function
-    public void setTimeout(JSFunction func, Integer delay) {
+    public Integer setTimeout(JSFunction func, Integer delay) {
         func.hold();
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                if (!executor.isShutdown()) executor.submit(() -> {func.call();});
-            }
-        }, delay);
+        return timers.schedule(() -> func.call(), delay == null ? 0 : delay, false);
+    }
+
+    @Keep
+    @Function
+    public Integer setInterval(JSFunction func, Integer delay) {
+        func.hold();
+        return timers.schedule(() -> func.call(), delay == null ? 0 : delay, true);
+    }
+
+    @Keep
+    @Function
+    public void clearTimeout(Integer id) {
+        if (id != null) timers.cancel(id);
+    }
+
+    @Keep
+    @Function
+    public void clearInterval(Integer id) {
+        if (id != null) timers.cancel(id);
     }
 
     private Callback getCallback(JSFunction complete, Req req) {
         return new Callback() {
             @Override
             public void onResponse(@NonNull Call call, @NonNull Response res) {
+                // 在网络线程读完 body, JS 线程只负责转换和回调, 不被慢响应卡住
+                byte[] body;
+                try {
+                    body = res.body().bytes();
+                } catch (Exception e) {
+                    onFailure(call, e instanceof IOException ? (IOException) e : new IOException(e));
+                    return;
+                } finally {
+                    res.close();
+                }
+                if (closed()) return;
                 executor.submit(() -> {
-                    complete.call(Connect.success(runtime, req, res));
+                    if (closed()) return;
+                    complete.call(Connect.success(runtime, req, res, body));
                 });
             }
 
             @Override
             public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                if (closed()) return;
                 executor.submit(() -> {
+                    if (closed()) return;
                     complete.call(Connect.error(runtime));
                 });
             }
@@ -8,24 +8,138 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class HtmlParser {
-    private static String pdfh_html = "";
-    private static String pdfa_html = "";
+    private static final int MAX_DOCS = 16;
+    private static final int MAX_SELECTORS = 256;
     private static final Pattern p = Pattern.compile("url\\((.*?)\\)", Pattern.MULTILINE | Pattern.DOTALL);
     private static final Pattern NOADD_INDEX = Pattern.compile(":eq|:lt|:gt|:first|:last|^body$|^#");  // 不自动加eq下标索引
     private static final Pattern URLJOIN_ATTR = Pattern.compile("(url|src|href|-original|-src|-play|-url|style)$", Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);  // 需要自动urljoin的属性
     private static final Pattern SPECIAL_URL = Pattern.compile("^(ftp|magnet|thunder|ws):", Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);  // 过滤特殊链接,不走urlJoin
-    private static Document pdfh_doc = null;
-    private static Document pdfa_doc = null;
+    // 最近解析过的页面, 按 长度 + hashCode 索引, 多个 JS 爬虫并发使用也不会互相覆盖
+    // pdfa 的列表页和 pdfh 的单项片段分开缓存, 避免逐项解析的小片段把整页挤出去
+    private static final LinkedHashMap<String, CachedDoc> pdfhDocs = newDocCache();
+    private static final LinkedHashMap<String, CachedDoc> pdfaDocs = newDocCache();
+    // 规则字符串 -> 编译好的选择器
+    private static final LinkedHashMap<String, Evaluator> selectors = new LinkedHashMap<String, Evaluator>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Evaluator> eldest) {
+            return size() > MAX_SELECTORS;
+        }
+    };
+    private static final AtomicLong docHits = new AtomicLong();
+    private static final AtomicLong docMisses = new AtomicLong();
+    private static final AtomicLong parseNanos = new AtomicLong();
+    private static final AtomicLong selectorHits = new AtomicLong();
+    private static final AtomicLong selectorMisses = new AtomicLong();
+
+    private static class CachedDoc {
+        final String html;
+        final Document doc;
+
+        CachedDoc(String html, Document doc) {
+            this.html = html;
+            this.doc = doc;
+        }
+
+        /**
+         * 长度和 hash 只用来定位, 命中后还要逐字比较, 不同页面 hash 碰撞时不能拿错文档
+         */
+        boolean sameAs(String other) {
+            return html.equals(other);
+        }
+    }
+
+    private static LinkedHashMap<String, CachedDoc> newDocCache() {
+        return new LinkedHashMap<String, CachedDoc>(MAX_DOCS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedDoc> eldest) {
+                return size() > MAX_DOCS;
+            }
+        };
+    }
+
+    private static Document getDoc(LinkedHashMap<String, CachedDoc> docs, String html) {
+        String key = html.length() + ":" + html.hashCode();
+        synchronized (docs) {
+            CachedDoc cached = docs.get(key);
+            if (cached != null && cached.sameAs(html)) {
+                docHits.incrementAndGet();
+                return cached.doc;
+            }
+        }
+        long start = System.nanoTime();
+        Document doc = Jsoup.parse(html);
+        parseNanos.addAndGet(System.nanoTime() - start);
+        docMisses.incrementAndGet();
+        synchronized (docs) {
+            docs.put(key, new CachedDoc(html, doc));
+        }
+        return doc;
+    }
+
+    private static Evaluator getSelector(String query) {
+        synchronized (selectors) {
+            Evaluator evaluator = selectors.get(query);
+            if (evaluator != null) {
+                selectorHits.incrementAndGet();
+                return evaluator;
+            }
+        }
+        Evaluator evaluator = QueryParser.parse(query);
+        selectorMisses.incrementAndGet();
+        synchronized (selectors) {
+            selectors.put(query, evaluator);
+        }
+        return evaluator;
+    }
+
+    private static Elements select(Element root, String query) {
+        return Selector.select(getSelector(query), root);
+    }
+
+    /**
+     * 与 Elements.select 相同: 每个根节点分别查找, 按出现顺序去重
+     */
+    private static Elements select(Elements roots, String query) {
+        Evaluator evaluator = getSelector(query);
+        IdentityHashMap<Element, Boolean> seen = new IdentityHashMap<>();
+        Elements result = new Elements();
+        for (Element root : roots) {
+            for (Element el : Selector.select(evaluator, root)) {
+                if (seen.put(el, Boolean.TRUE) == null)
+                    result.add(el);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 页面缓存命中率和省下的解析耗时(按未命中的平均解析耗时估算)
+     */
+    public static String getStats() {
+        long hits = docHits.get();
+        long misses = docMisses.get();
+        long avgParseMs = misses == 0 ? 0 : parseNanos.get() / misses / 1000000;
+        long total = hits + misses;
+        return "页面缓存命中 " + hits + "/" + total + (total == 0 ? "" : " (" + hits * 100 / total + "%)")
+                + ", 节省解析约 " + hits * avgParseMs + "ms, 选择器缓存命中 " + selectorHits.get() + "/" + (selectorHits.get() + selectorMisses.get());
+    }
 
     public static String joinUrl(String parent, String child) {
         if (StringUtils.isEmpty(parent)) {
@@ -160,11 +274,7 @@ public class HtmlParser {
     }
 
     public static String parseDomForUrl(String html, String rule, String add_url) {
-        if (!pdfh_html.equals(html)) {
-            pdfh_html = html;
-            pdfh_doc = Jsoup.parse(html);
-        }
-        Document doc = pdfh_doc;
+        Document doc = getDoc(pdfhDocs, html);
         if (rule.equals("body&&Text") || rule.equals("Text")) {
             return doc.text();
         } else if (rule.equals("body&&Html") || rule.equals("Html")) {
@@ -227,11 +337,7 @@ public class HtmlParser {
     }
 
     public static List<String> parseDomForArray(String html, String rule) {
-        if (!pdfa_html.equals(html)) {
-            pdfa_html = html;
-            pdfa_doc = Jsoup.parse(html);
-        }
-        Document doc = pdfa_doc;
+        Document doc = getDoc(pdfaDocs, html);
         rule = parseHikerToJq(rule, false);
         String[] parses = rule.split(" ");
         Elements ret = new Elements();
@@ -252,9 +358,9 @@ public class HtmlParser {
     private static Elements parseOneRule(Document doc, String nparse, Elements ret) {
         Painfo painfo = getParseInfo(nparse);
         if (ret.isEmpty()) {
-            ret = doc.select(painfo.nparse_rule);
+            ret = select(doc, painfo.nparse_rule);
         } else {
-            ret = ret.select(painfo.nparse_rule);
+            ret = select(ret, painfo.nparse_rule);
         }
 
         if (nparse.contains(":eq")) {
@@ -275,11 +381,7 @@ public class HtmlParser {
     }
     
     public static List<String> parseDomForList(String html, String p1, String list_text, String list_url, String add_url) {
-        if (!pdfa_html.equals(html)) {
-            pdfa_html = html;
-            pdfa_doc = Jsoup.parse(html);
-        }
-        Document doc = pdfa_doc;
+        Document doc = getDoc(pdfaDocs, html);
         p1 = parseHikerToJq(p1, false);
         String[] parses = p1.split(" ");
         Elements ret = new Elements();
@@ -0,0 +1,275 @@
+package com.github.tvbox.osc.util.js;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.github.tvbox.osc.base.App;
+import com.github.tvbox.osc.util.LOG;
+import com.orhanobut.hawk.Hawk;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JS 爬虫 local.get/set/delete 的存储, 按命名空间(站点)分组
+ * 读写都在内存里完成, 修改攒起来在后台线程批量写入独立的 SQLite 库, 不再每次整文件重写 Hawk 的 SharedPreferences;
+ * 旧版本存在 Hawk 里的 jsRuntime_ 键在第一次读到时迁移过来, 全部迁移或删除后不再查 Hawk
+ */
+public class JsLocalStore {
+    private static final String LEGACY_PREFIX = "jsRuntime_";
+    private static final long FLUSH_DELAY_MS = 2000;
+    // 单个值和单个命名空间的大小上限(字符数)
+    private static final int MAX_VALUE_CHARS = 256 * 1024;
+    private static final int MAX_NAMESPACE_CHARS = 2 * 1024 * 1024;
+    private static final String DELETED = new String("");
+
+    private static volatile JsLocalStore instance;
+
+    private final DbHelper helper;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "js-local-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentHashMap<String, Namespace> namespaces = new ConcurrentHashMap<>();
+    // 命名空间 -> (键 -> 新值 / DELETED)
+    private final HashMap<String, HashMap<String, String>> pending = new HashMap<>();
+    private boolean flushScheduled = false;
+    // 还没迁移的旧键名, 清空后 hasLegacy 置为 false
+    private final Set<String> legacyKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean hasLegacy;
+
+    public static JsLocalStore get() {
+        if (instance == null) {
+            synchronized (JsLocalStore.class) {
+                if (instance == null)
+                    instance = new JsLocalStore(App.getInstance());
+            }
+        }
+        return instance;
+    }
+
+    private JsLocalStore(Context context) {
+        helper = new DbHelper(context);
+        loadLegacyKeys(context);
+        hasLegacy = !legacyKeys.isEmpty();
+    }
+
+    public String get(String ns, String key) {
+        String value = namespace(ns).values.get(key);
+        if (value != null)
+            return value;
+        return migrate(ns, key);
+    }
+
+    public void set(String ns, String key, String value) {
+        if (value == null) {
+            delete(ns, key);
+            return;
+        }
+        if (value.length() > MAX_VALUE_CHARS) {
+            LOG.e("JsLocalStore", ns + "." + key + " 超过大小限制, 已忽略");
+            return;
+        }
+        Namespace namespace = namespace(ns);
+        synchronized (namespace) {
+            String old = namespace.values.get(key);
+            if (value.equals(old))
+                return;
+            if (!namespace.put(key, value)) {
+                LOG.e("JsLocalStore", ns + " 存储已满, 忽略 " + key);
+                return;
+            }
+        }
+        enqueue(ns, key, value);
+    }
+
+    public void delete(String ns, String key) {
+        Namespace namespace = namespace(ns);
+        synchronized (namespace) {
+            namespace.remove(key);
+        }
+        enqueue(ns, key, DELETED);
+        if (hasLegacy)
+            deleteLegacy(LEGACY_PREFIX + ns + "_" + key);
+    }
+
+    /**
+     * 退出前调用, 立即写入还没保存的修改; 没用过 local 时什么都不做
+     */
+    public static void flushPending() {
+        if (instance != null)
+            instance.flush();
+    }
+
+    private void flush() {
+        HashMap<String, HashMap<String, String>> batch;
+        synchronized (pending) {
+            flushScheduled = false;
+            if (pending.isEmpty())
+                return;
+            batch = new HashMap<>(pending);
+            pending.clear();
+        }
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Map.Entry<String, HashMap<String, String>> ns : batch.entrySet()) {
+                for (Map.Entry<String, String> entry : ns.getValue().entrySet()) {
+                    if (entry.getValue() == DELETED) {
+                        db.delete("kv", "ns = ? AND k = ?", new String[]{ns.getKey(), entry.getKey()});
+                    } else {
+                        ContentValues values = new ContentValues();
+                        values.put("ns", ns.getKey());
+                        values.put("k", entry.getKey());
+                        values.put("v", entry.getValue());
+                        db.insertWithOnConflict("kv", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } catch (Throwable th) {
+            LOG.e(th);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void enqueue(String ns, String key, String value) {
+        synchronized (pending) {
+            HashMap<String, String> map = pending.get(ns);
+            if (map == null) {
+                map = new HashMap<>();
+                pending.put(ns, map);
+            }
+            map.put(key, value);
+            if (flushScheduled)
+                return;
+            flushScheduled = true;
+        }
+        flusher.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private Namespace namespace(String ns) {
+        Namespace namespace = namespaces.get(ns);
+        if (namespace != null)
+            return namespace;
+        synchronized (namespaces) {
+            namespace = namespaces.get(ns);
+            if (namespace == null) {
+                namespace = load(ns);
+                namespaces.put(ns, namespace);
+            }
+        }
+        return namespace;
+    }
+
+    private Namespace load(String ns) {
+        Namespace namespace = new Namespace();
+        try (Cursor cursor = helper.getReadableDatabase().query("kv", new String[]{"k", "v"}, "ns = ?", new String[]{ns}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                namespace.load(cursor.getString(0), cursor.getString(1));
+            }
+        } catch (Throwable th) {
+            LOG.e(th);
+        }
+        return namespace;
+    }
+
+    /**
+     * 命名空间里可能含 "_", 无法从旧键名反推, 所以按需迁移: 读不到时再查一次 Hawk
+     */
+    private String migrate(String ns, String key) {
+        if (!hasLegacy)
+            return "";
+        String legacyKey = LEGACY_PREFIX + ns + "_" + key;
+        if (!legacyKeys.contains(legacyKey))
+            return "";
+        String value;
+        try {
+            value = Hawk.get(legacyKey, null);
+        } catch (Throwable th) {
+            value = null;
+        }
+        deleteLegacy(legacyKey);
+        if (value == null)
+            return "";
+        Namespace namespace = namespace(ns);
+        synchronized (namespace) {
+            // 迁移过来的旧值不受大小限制, 和升级前保持一致
+            namespace.load(key, value);
+        }
+        enqueue(ns, key, value);
+        return value;
+    }
+
+    private void deleteLegacy(String legacyKey) {
+        if (!legacyKeys.remove(legacyKey))
+            return;
+        Hawk.delete(legacyKey);
+        if (legacyKeys.isEmpty())
+            hasLegacy = false;
+    }
+
+    private void loadLegacyKeys(Context context) {
+        try {
+            for (String key : context.getSharedPreferences("Hawk2", Context.MODE_PRIVATE).getAll().keySet()) {
+                if (key.startsWith(LEGACY_PREFIX))
+                    legacyKeys.add(key);
+            }
+        } catch (Throwable th) {
+            LOG.e(th);
+        }
+    }
+
+    /**
+     * 一个命名空间的值和当前总字符数(键 + 值), 修改时同步在对象上, 读不加锁
+     */
+    private static class Namespace {
+        final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+        int chars;
+
+        void load(String key, String value) {
+            String old = values.put(key, value);
+            chars += key.length() + value.length() - (old == null ? 0 : key.length() + old.length());
+        }
+
+        boolean put(String key, String value) {
+            String old = values.get(key);
+            if (chars - (old == null ? 0 : key.length() + old.length()) + key.length() + value.length() > MAX_NAMESPACE_CHARS)
+                return false;
+            load(key, value);
+            return true;
+        }
+
+        void remove(String key) {
+            String old = values.remove(key);
+            if (old != null)
+                chars -= key.length() + old.length();
+        }
+    }
+
+    private static class DbHelper extends SQLiteOpenHelper {
+        DbHelper(Context context) {
+            super(context, "js_local.db", null, 1);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS kv (ns TEXT NOT NULL, k TEXT NOT NULL, v TEXT, PRIMARY KEY (ns, k))");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+}
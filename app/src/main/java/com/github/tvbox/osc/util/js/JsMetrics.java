@@ -0,0 +1,169 @@
+package com.github.tvbox.osc.util.js;
+
+import com.github.tvbox.osc.util.FileUtils;
+import com.github.tvbox.osc.util.LOG;
+import com.whl.quickjs.wrapper.QuickJSMetrics;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 汇总各 JS 站点的 QuickJS 占用: 堆大小和对象数来自 JS_DumpMemoryUsage, 其余来自 QuickJSMetrics
+ * 按堆占用从大到小排序, 用于调试页面和导出文件; 会在各工作线程上执行, 不要在主线程调用
+ */
+public class JsMetrics {
+    private static final long DUMP_TIMEOUT_MS = 5000;
+
+    public static class Row {
+        public String siteKey;
+        public String api;
+        public long heapBytes;
+        public long jsObjects;
+        public QuickJSMetrics metrics;
+
+        JSONObject toJson() throws Exception {
+            JSONObject json = new JSONObject();
+            json.put("siteKey", siteKey);
+            json.put("api", api);
+            json.put("heapBytes", heapBytes);
+            json.put("jsObjects", jsObjects);
+            if (metrics != null)
+                json.put("metrics", metrics.toJson());
+            return json;
+        }
+    }
+
+    public static List<Row> collect() {
+        File dir = new File(FileUtils.getCacheDir(), "qjs_dump");
+        if (!dir.exists())
+            dir.mkdirs();
+        List<Row> rows = new ArrayList<>();
+        List<Future<Boolean>> dumps = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        // 先在各工作线程上同时导出, 再统一等待, 总等待时间不超过 DUMP_TIMEOUT_MS
+        for (JsSpider spider : JsRuntimePool.spiders()) {
+            Row row = new Row();
+            row.siteKey = spider.getSiteKey();
+            row.api = spider.getApi();
+            row.metrics = spider.getMetrics();
+            File file = new File(dir, Integer.toHexString(System.identityHashCode(spider)) + ".txt");
+            rows.add(row);
+            files.add(file);
+            dumps.add(spider.dumpMemoryUsage(file));
+        }
+        long deadline = System.currentTimeMillis() + DUMP_TIMEOUT_MS;
+        for (int i = 0; i < rows.size(); i++) {
+            readMemoryUsage(dumps.get(i), files.get(i), rows.get(i), deadline);
+        }
+        Collections.sort(rows, (a, b) -> Long.compare(b.heapBytes, a.heapBytes));
+        return rows;
+    }
+
+    public static String report() {
+        List<Row> rows = collect();
+        long heap = 0;
+        for (Row row : rows) {
+            heap += row.heapBytes;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(JsRuntimePool.getStats()).append(", 堆 ").append(FileUtils.getFormatSize(heap)).append("\n");
+        sb.append(HtmlParser.getStats()).append("\n");
+        long saved = 0;
+        for (Long one : BytecodeCache.getSavedMillis().values()) {
+            saved += one;
+        }
+        sb.append("字节码缓存节省编译 ").append(saved).append("ms\n");
+        for (Row row : rows) {
+            sb.append("\n[").append(row.siteKey).append("] 堆 ").append(FileUtils.getFormatSize(row.heapBytes))
+                    .append(", JS 对象 ").append(row.jsObjects).append("\n");
+            if (row.metrics != null)
+                sb.append(row.metrics).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 导出到外部缓存目录, 返回文件, 失败返回 null
+     */
+    public static File dump() {
+        try {
+            JSONArray sites = new JSONArray();
+            for (Row row : collect()) {
+                sites.put(row.toJson());
+            }
+            JSONObject json = new JSONObject();
+            json.put("time", System.currentTimeMillis());
+            json.put("threads", JsRuntimePool.getThreadCount());
+            json.put("contexts", JsRuntimePool.getContextCount());
+            json.put("htmlParser", HtmlParser.getStats());
+            JSONObject saved = new JSONObject();
+            for (Map.Entry<String, Long> entry : BytecodeCache.getSavedMillis().entrySet()) {
+                saved.put(entry.getKey(), entry.getValue());
+            }
+            json.put("bytecodeSavedMs", saved);
+            json.put("sites", sites);
+            File file = new File(FileUtils.getExternalCachePath(), "qjs_metrics_" + System.currentTimeMillis() + ".json");
+            return FileUtils.writeSimple(json.toString(2).getBytes(StandardCharsets.UTF_8), file) ? file : null;
+        } catch (Throwable th) {
+            LOG.e(th);
+            return null;
+        }
+    }
+
+    static long heapUsage() {
+        long total = 0;
+        for (Row row : collect()) {
+            total += row.heapBytes;
+        }
+        return total;
+    }
+
+    private static void readMemoryUsage(Future<Boolean> future, File file, Row row, long deadline) {
+        try {
+            long wait = Math.max(0, deadline - System.currentTimeMillis());
+            if (future != null && future.get(wait, TimeUnit.MILLISECONDS))
+                parseMemoryUsage(file, row);
+        } catch (TimeoutException e) {
+            // 工作线程正忙, 这次不统计它的堆, 也不再排队
+            future.cancel(false);
+        } catch (Throwable th) {
+            LOG.e(th);
+        }
+        file.delete();
+    }
+
+    /**
+     * 解析 JS_DumpMemoryUsage 输出中的 "memory used" 和 "objects" 两行, 格式为 名称 数量 大小
+     */
+    private static void parseMemoryUsage(File file, Row row) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("memory used")) {
+                    String[] parts = line.substring("memory used".length()).trim().split("\\s+");
+                    if (parts.length >= 2)
+                        row.heapBytes = Long.parseLong(parts[1]);
+                } else if (line.startsWith("objects")) {
+                    String[] parts = line.substring("objects".length()).trim().split("\\s+");
+                    if (parts.length >= 1)
+                        row.jsObjects = Long.parseLong(parts[0]);
+                }
+            }
+        } catch (Throwable th) {
+            LOG.e(th);
+        }
+    }
+}
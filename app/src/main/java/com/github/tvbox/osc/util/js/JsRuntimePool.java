@@ -0,0 +1,133 @@
+package com.github.tvbox.osc.util.js;
+
+import com.github.tvbox.osc.util.HawkConfig;
+import com.orhanobut.hawk.Hawk;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 所有 JS 站点共用的一组 QuickJS 工作线程
+ * 每个站点的上下文在创建时固定到一个工作线程上(QuickJSContext 要求同线程调用), 之后的调用都排在这个线程上;
+ * 存活的上下文超过上限时, 按 LRU 释放空闲最久的站点上下文, 下次调用时再重新初始化
+ * JS 里的 req 是同步网络请求, 会占住工作线程, 所以线程数按阻塞 IO 估计, 和聚合搜索的并发上限相当, 可用 HawkConfig.JS_WORKERS 调整
+ */
+public class JsRuntimePool {
+    private static final int MIN_WORKERS = 2;
+    private static final int MAX_WORKERS = 32;
+    private static final int WORKERS = workers();
+    private static final int MAX_CONTEXTS = 24;
+    // 最近这么久内用过的上下文不会被释放, 避免释放掉正在准备参数的调用
+    private static final long MIN_IDLE_MILLIS = 60 * 1000;
+
+    private static final Worker[] workers = new Worker[WORKERS];
+    // 按最近使用排序
+    private static final LinkedHashMap<JsSpider, Long> contexts = new LinkedHashMap<>(32, 0.75f, true);
+
+    private static class Worker {
+        final ScheduledThreadPoolExecutor executor;
+        final AtomicInteger pinned = new AtomicInteger();
+
+        Worker(int index) {
+            // 单线程的延迟队列, 普通调用和 setTimeout/setInterval 都在这个线程上按顺序执行
+            executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "qjs-worker-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    static {
+        for (int i = 0; i < WORKERS; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    private static int workers() {
+        int configured = Hawk.get(HawkConfig.JS_WORKERS, 0);
+        if (configured > 0)
+            return Math.max(MIN_WORKERS, Math.min(MAX_WORKERS, configured));
+        return Math.max(8, Math.min(16, Runtime.getRuntime().availableProcessors() * 2));
+    }
+
+    /**
+     * 为新的站点分配当前站点最少的工作线程
+     */
+    static synchronized ScheduledExecutorService assign() {
+        Worker min = workers[0];
+        for (Worker worker : workers) {
+            if (worker.pinned.get() < min.pinned.get())
+                min = worker;
+        }
+        min.pinned.incrementAndGet();
+        return min.executor;
+    }
+
+    static synchronized void release(JsSpider spider, ExecutorService executor) {
+        contexts.remove(spider);
+        for (Worker worker : workers) {
+            if (worker.executor == executor)
+                worker.pinned.decrementAndGet();
+        }
+    }
+
+    /**
+     * 站点上下文被使用时调用, 必要时释放最久未用的其它上下文
+     */
+    static void touch(JsSpider spider) {
+        List<JsSpider> evict = new ArrayList<>();
+        synchronized (JsRuntimePool.class) {
+            long now = System.currentTimeMillis();
+            contexts.put(spider, now);
+            int over = contexts.size() - MAX_CONTEXTS;
+            Iterator<Map.Entry<JsSpider, Long>> it = contexts.entrySet().iterator();
+            while (over > 0 && it.hasNext()) {
+                Map.Entry<JsSpider, Long> entry = it.next();
+                if (now - entry.getValue() < MIN_IDLE_MILLIS)
+                    break;
+                evict.add(entry.getKey());
+                it.remove();
+                over--;
+            }
+        }
+        for (JsSpider one : evict) {
+            one.evict();
+        }
+    }
+
+    static synchronized void onEvicted(JsSpider spider) {
+        contexts.remove(spider);
+    }
+
+    public static int getThreadCount() {
+        return WORKERS;
+    }
+
+    public static synchronized int getContextCount() {
+        return contexts.size();
+    }
+
+    static synchronized List<JsSpider> spiders() {
+        return new ArrayList<>(contexts.keySet());
+    }
+
+    /**
+     * 统计所有存活上下文的 QuickJS 堆占用(字节), 会在各工作线程上执行, 不要在主线程调用
+     */
+    public static long getHeapUsage() {
+        return JsMetrics.heapUsage();
+    }
+
+    public static String getStats() {
+        return "线程 " + getThreadCount() + ", 上下文 " + getContextCount();
+    }
+}
@@ -14,42 +14,53 @@ import com.whl.quickjs.wrapper.JSCallFunction;
 import com.whl.quickjs.wrapper.JSObject;
 import com.whl.quickjs.wrapper.JSUtils;
 import com.whl.quickjs.wrapper.QuickJSContext;
+import com.whl.quickjs.wrapper.QuickJSMetrics;
 import com.whl.quickjs.wrapper.UriUtil;
 
-import org.json.JSONArray;
-
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
 import java9.util.concurrent.CompletableFuture;
 
 public class JsSpider extends Spider {
 
-    private final ExecutorService executor;
+    private final ScheduledExecutorService executor;
     private final Class<?> dex;
-    private QuickJSContext ctx;
+    private volatile QuickJSContext ctx;
+    private volatile Global global;
     private JSObject jsObject;
     private final String key;
+    private final String siteKey;
     private final String api;
     private boolean cat;
+    // 上下文被释放后重新初始化时需要再次调用 init
+    private volatile String extend;
+    private volatile boolean released;
 
     public JsSpider(String key, String api, Class<?> cls) throws Exception {
         this.key = "J" + MD5.encode(key);
-        this.executor = Executors.newSingleThreadExecutor();
+        this.siteKey = key;
+        this.executor = JsRuntimePool.assign();
         this.api = api;
         this.dex = cls;
         initializeJS();
     }
+
+    /**
+     * 只取消这个站点发出的请求
+     */
+    @Override
     public void cancelByTag() {
-        Connect.cancelByTag("js_okhttp_tag");
+        Connect.cancelByTag(Connect.tagOf(siteKey));
     }
 
     private void submit(Runnable runnable) {
@@ -57,12 +68,99 @@ public class JsSpider extends Spider {
     }
 
     private <T> Future<T> submit(Callable<T> callable) {
-        return executor.submit(callable);
+        return executor.submit(() -> {
+            ensureContext();
+            return callable.call();
+        });
+    }
+
+    /**
+     * 等待工作线程上的任务, 调用方被中断(超时或取消)时把还在排队的任务移出队列, 已经开始执行的 JS 无法中途停止
+     */
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
     }
 
     private Object call(String func, Object... args) throws Exception {
-        //return executor.submit((FunCall.call(jsObject, func, args))).get();
-        return CompletableFuture.supplyAsync(() -> Async.run(jsObject, func, args), executor).join().get();
+        CompletableFuture<Object> result = await(submit(() -> Async.run(jsObject, func, args)));
+        // 返回 Promise 时再等它在工作线程上完成
+        return await(result);
+    }
+
+    /**
+     * 在工作线程上调用, 上下文已被 LRU 释放时重新创建并重放 init
+     */
+    private void ensureContext() {
+        if (released)
+            return;
+        JsRuntimePool.touch(this);
+        if (ctx != null)
+            return;
+        initContext();
+        if (extend != null && jsObject != null)
+            Async.run(jsObject, "init", new Object[]{initArg(extend)});
+    }
+
+    /**
+     * 由 JsRuntimePool 在上下文空闲过久时调用, 站点对象保留, 只销毁 QuickJS 上下文
+     */
+    void evict() {
+        executor.submit(() -> {
+            if (ctx == null)
+                return;
+            closeContext();
+            JsRuntimePool.onEvicted(this);
+            LOG.i("QuJs", api + " 上下文已释放");
+        });
+    }
+
+    /**
+     * 先取消定时器和未完成的异步回调, 再销毁上下文; 在工作线程上调用
+     */
+    private void closeContext() {
+        if (global != null)
+            global.close();
+        global = null;
+        ctx.destroy();
+        ctx = null;
+        jsObject = null;
+    }
+
+    Future<Boolean> dumpMemoryUsage(File file) {
+        return executor.submit(() -> {
+            if (ctx == null)
+                return false;
+            if (!file.exists() && !file.createNewFile())
+                return false;
+            ctx.dumpMemoryUsage(file);
+            return true;
+        });
+    }
+
+    String getSiteKey() {
+        return siteKey;
+    }
+
+    String getApi() {
+        return api;
+    }
+
+    /**
+     * @return 当前上下文的统计, 上下文未创建或已释放时返回 null
+     */
+    QuickJSMetrics getMetrics() {
+        QuickJSContext context = ctx;
+        return context == null ? null : context.getMetrics();
     }
 
     private JSObject cfg(String ext) {
@@ -74,10 +172,15 @@ public class JsSpider extends Spider {
         return cfg;
     }
 
+    private Object initArg(String extend) {
+        if (cat) return cfg(extend);
+        return Json.valid(extend) ? ctx.parse(extend) : extend;
+    }
+
     @Override
     public void init(Context context, String extend) throws Exception {
-        if (cat) call("init", submit(() -> cfg(extend)).get());
-        else call("init", Json.valid(extend) ? ctx.parse(extend) : extend);
+        await(await(submit(() -> Async.run(jsObject, "init", new Object[]{initArg(extend)}))));
+        this.extend = extend;
     }
 
     @Override
@@ -92,7 +195,7 @@ public class JsSpider extends Spider {
 
     @Override
     public String categoryContent(String tid, String pg, boolean filter, HashMap<String, String> extend) throws Exception {
-        JSObject obj = submit(() -> new JSUtils<String>().toObj(ctx, extend)).get();
+        JSObject obj = await(submit(() -> new JSUtils<String>().toObj(ctx, extend)));
         return (String) call("category", tid, pg, filter, obj);
     }
 
@@ -113,7 +216,7 @@ public class JsSpider extends Spider {
 
     @Override
     public String playerContent(String flag, String id, List<String> vipFlags) throws Exception {
-        JSArray array = submit(() -> new JSUtils<String>().toArray(ctx, vipFlags)).get();
+        JSArray array = await(submit(() -> new JSUtils<String>().toArray(ctx, vipFlags)));
         return (String) call("play", flag, id, array);
     }
 
@@ -130,14 +233,21 @@ public class JsSpider extends Spider {
     @Override
     public Object[] proxyLocal(Map<String, String> params) throws Exception {
         if ("catvod".equals(params.get("from"))) return proxy2(params);
-        else return submit(() -> proxy1(params)).get();
+        else return await(submit(() -> proxy1(params)));
     }
 
     @Override
     public void destroy() {
+        released = true;
+        // 立即取消定时器, 已经排队的定时回调也不会再执行
+        Global current = global;
+        if (current != null)
+            current.close();
+        JsRuntimePool.release(this, executor);
         submit(() -> {
-            executor.shutdownNow();
-            ctx.destroy();
+            if (ctx == null)
+                return;
+            closeContext();
         });
     }
 
@@ -152,37 +262,44 @@ public class JsSpider extends Spider {
             "    }\n" +
             "}";
     private void initializeJS() throws Exception {
-        submit(() -> {
-            if (ctx == null) createCtx();
-            if (dex != null) createDex();
+        await(executor.submit(() -> {
+            JsRuntimePool.touch(this);
+            initContext();
+            return null;
+        }));
+    }
 
-            String content = FileUtils.loadModule(api);
-            if (TextUtils.isEmpty(content)) {return null;}
+    private void initContext() {
+        long start = System.currentTimeMillis();
+        if (ctx == null) createCtx();
+        if (dex != null) createDex();
 
-            if(content.startsWith("//bb")){
-                cat = true;
-                byte[] b = Base64.decode(content.replace("//bb",""), 0);
-                ctx.execute(byteFF(b), key + ".js");
-                ctx.evaluateModule(String.format(SPIDER_STRING_CODE, key + ".js") + "globalThis." + key + " = __JS_SPIDER__;", "tv_box_root.js");
+        String content = FileUtils.loadModule(api);
+        if (TextUtils.isEmpty(content)) {return;}
+
+        if(content.startsWith("//bb")){
+            cat = true;
+            byte[] b = Base64.decode(content.replace("//bb",""), 0);
+            ctx.execute(byteFF(b), key + ".js");
+            ctx.evaluateModule(String.format(SPIDER_STRING_CODE, key + ".js") + "globalThis." + key + " = __JS_SPIDER__;", "tv_box_root.js");
 //                ctx.execute(byteFF(b), key + ".js","__jsEvalReturn");
 //                ctx.evaluate("globalThis." + key + " = __JS_SPIDER__;");
-            } else {
-                if (content.contains("__JS_SPIDER__")) {
-                    content = content.replaceAll("__JS_SPIDER__\\s*=", "export default ");
-                }
-                String moduleExtName = "default";
-                if (content.contains("__jsEvalReturn") && !content.contains("export default")) {
-                    moduleExtName = "__jsEvalReturn";
-                    cat = true;
-                }
-                ctx.evaluateModule(content, api);
-                ctx.evaluateModule(String.format(SPIDER_STRING_CODE, api) + "globalThis." + key + " = __JS_SPIDER__;", "tv_box_root.js");
+        } else {
+            if (content.contains("__JS_SPIDER__")) {
+                content = content.replaceAll("__JS_SPIDER__\\s*=", "export default ");
+            }
+            String moduleExtName = "default";
+            if (content.contains("__jsEvalReturn") && !content.contains("export default")) {
+                moduleExtName = "__jsEvalReturn";
+                cat = true;
+            }
+            ctx.execute(BytecodeCache.compileModule(ctx, content, api), api);
+            ctx.evaluateModule(String.format(SPIDER_STRING_CODE, api) + "globalThis." + key + " = __JS_SPIDER__;", "tv_box_root.js");
 //                ctx.evaluateModule(content, api, moduleExtName);
 //                ctx.evaluate("globalThis." + key + " = __JS_SPIDER__;");
-            }
-            jsObject = (JSObject) ctx.get(ctx.getGlobalObject(), key);
-            return null;
-        }).get();
+        }
+        jsObject = (JSObject) ctx.get(ctx.getGlobalObject(), key);
+        LOG.i("QuJs", api + " 初始化 " + (System.currentTimeMillis() - start) + "ms, 字节码缓存节省 " + BytecodeCache.getSavedMillis(api) + "ms");
     }
 
     public static byte[] byteFF(byte[] bytes) {
@@ -206,12 +323,7 @@ public class JsSpider extends Spider {
                     byte[] b = Base64.decode(ss.replace("//bb",""), 0);
                     return byteFF(b);
                 } else {
-                    if (moduleName.contains("cheerio.min.js")) {
-                        FileUtils.setCacheByte("cheerio.min", ctx.compileModule(ss, "cheerio.min.js"));
-                    } else if (moduleName.contains("crypto-js.js")) {
-                        FileUtils.setCacheByte("crypto-js", ctx.compileModule(ss, "crypto-js.js"));
-                    }
-                    return ctx.compileModule(ss, moduleName);
+                    return BytecodeCache.compileModule(ctx, ss, moduleName);
                 }
             }
 
@@ -227,7 +339,8 @@ public class JsSpider extends Spider {
             }
         });
 
-        ctx.getGlobalObject().bind(new Global(executor));
+        global = new Global(executor, siteKey);
+        ctx.getGlobalObject().bind(global);
 
         JSObject local = ctx.createJSObject();
         ctx.getGlobalObject().set("local", local);
@@ -299,11 +412,11 @@ public class JsSpider extends Spider {
 
     private Object[] proxy1(Map<String, String> params) {
         JSObject object = new JSUtils<String>().toObj(ctx, params);
-        JSONArray array = ((JSArray) jsObject.getJSFunction("proxy").call(object)).toJsonArray();
+        JSArray array = (JSArray) jsObject.getJSFunction("proxy").call(object);
         Object[] result = new Object[3];
-        result[0] = array.opt(0);
-        result[1] = array.opt(1);
-        result[2] = getStream(array.opt(2));
+        result[0] = array.get(0);
+        result[1] = array.get(1);
+        result[2] = getStream(array.get(2));
         return result;
     }
 
@@ -311,8 +424,8 @@ public class JsSpider extends Spider {
     private Object[] proxy2(Map<String, String> params) throws Exception {
         String url = params.get("url");
         String header = params.get("header");
-        JSArray array = submit(() -> new JSUtils<String>().toArray(ctx, Arrays.asList(url.split("/")))).get();
-        Object object = submit(() -> ctx.parse(header)).get();
+        JSArray array = await(submit(() -> new JSUtils<String>().toArray(ctx, Arrays.asList(url.split("/")))));
+        Object object = await(submit(() -> ctx.parse(header)));
         String json = (String) call("proxy", array, object);
         Res res = Res.objectFrom(json);
         String contentType = res.getContentType();
@@ -343,11 +456,8 @@ public class JsSpider extends Spider {
     }*/
 
     private ByteArrayInputStream getStream(Object o) {
-        if (o instanceof JSONArray) {
-            JSONArray a = (JSONArray) o;
-            byte[] bytes = new byte[a.length()];
-            for (int i = 0; i < a.length(); i++) bytes[i] = (byte) a.optInt(i);
-            return new ByteArrayInputStream(bytes);
+        if (o instanceof JSArray) {
+            return new ByteArrayInputStream(JSUtils.toBytes((JSArray) o));
         } else {
             return new ByteArrayInputStream(o.toString().getBytes());
         }
@@ -0,0 +1,69 @@
+package com.github.tvbox.osc.util.js;
+
+import java.util.HashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个 JS 上下文的 setTimeout/setInterval
+ * 定时任务直接排进上下文所在工作线程的延迟队列(ScheduledThreadPoolExecutor 的堆)里执行,
+ * 不再每个站点开一个 Timer 线程, 回调也不会和正在执行的爬虫调用并发; 上下文销毁前 close 取消所有定时器
+ */
+class JsTimers {
+    private final ScheduledExecutorService scheduler;
+    private final HashMap<Integer, ScheduledFuture<?>> timers = new HashMap<>();
+    private int nextId = 1;
+    private volatile boolean closed;
+
+    JsTimers(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return 定时器 id, 已关闭时返回 0
+     */
+    synchronized int schedule(Runnable task, long delay, boolean repeat) {
+        if (closed || scheduler.isShutdown())
+            return 0;
+        int id = nextId++;
+        delay = Math.max(0, delay);
+        Runnable run = () -> {
+            if (closed)
+                return;
+            if (!repeat)
+                remove(id);
+            task.run();
+        };
+        ScheduledFuture<?> future = repeat
+                ? scheduler.scheduleWithFixedDelay(run, delay, Math.max(1, delay), TimeUnit.MILLISECONDS)
+                : scheduler.schedule(run, delay, TimeUnit.MILLISECONDS);
+        timers.put(id, future);
+        return id;
+    }
+
+    synchronized void cancel(int id) {
+        ScheduledFuture<?> future = timers.remove(id);
+        if (future != null)
+            future.cancel(false);
+    }
+
+    /**
+     * 取消所有定时器, 之后的 schedule 直接忽略; 应在上下文所在线程、销毁上下文之前调用
+     */
+    synchronized void close() {
+        closed = true;
+        for (ScheduledFuture<?> future : timers.values()) {
+            future.cancel(false);
+        }
+        timers.clear();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private synchronized void remove(int id) {
+        timers.remove(id);
+    }
+}
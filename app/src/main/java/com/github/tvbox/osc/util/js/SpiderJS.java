@@ -23,8 +23,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Future;
 
 public class SpiderJS extends Spider {
@@ -34,11 +34,11 @@ public class SpiderJS extends Spider {
     private JSObject jsObject;
 
     public QuickJSContext runtime;
-    public ExecutorService executor;
+    public ScheduledExecutorService executor;
 
     public SpiderJS(String key, String js, Class<?> cls) throws Exception {
         this.js = js;
-        this.executor = Executors.newSingleThreadExecutor();
+        this.executor = Executors.newSingleThreadScheduledExecutor();
         this.key = "J" + MD5.encode(key);
         initjs(cls);
     }
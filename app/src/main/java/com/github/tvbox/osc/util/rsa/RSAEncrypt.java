@@ -2,8 +2,10 @@ package com.github.tvbox.osc.util.rsa;
 
 import android.util.Log;
 
+import com.github.tvbox.osc.util.CryptoCache;
+
 import java.io.ByteArrayOutputStream;
-import java.security.KeyFactory;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
@@ -12,8 +14,6 @@ import java.security.PublicKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
 
 import javax.crypto.Cipher;
 
@@ -85,14 +85,16 @@ public class RSAEncrypt {
      */
     public static PublicKey getPublicKey(String pubKey) {
         try {
-            // 将公钥进行 Base64 解码  创建 PublicKey 对象并返回
-            return KeyFactory.getInstance(KEY_ALGORITHM).generatePublic(new X509EncodedKeySpec(DataUtils.base64Decode(pubKey)));
+            // 将公钥进行 Base64 解码  创建 PublicKey 对象并返回, 解析结果按公钥缓存
+            return CryptoCache.publicKey(pubKey);
         } catch (NoSuchAlgorithmException unused) {
             handleException(new Exception("无此算法"));
         } catch (InvalidKeySpecException unused2) {
             handleException(new Exception("公钥非法"));
         } catch (NullPointerException unused3) {
             handleException(new Exception("公钥数据为空"));
+        } catch (GeneralSecurityException e) {
+            handleException(e);
         }
         return null;
     }
@@ -104,14 +106,16 @@ public class RSAEncrypt {
      */
     public static PrivateKey getPrivateKey(String prvKey) {
         try {
-            // 将私钥进行 Base64 解码  创建 PrivateKey 对象并返回
-            return KeyFactory.getInstance(KEY_ALGORITHM).generatePrivate(new PKCS8EncodedKeySpec(DataUtils.base64Decode(prvKey)));
+            // 将私钥进行 Base64 解码  创建 PrivateKey 对象并返回, 解析结果按私钥缓存
+            return CryptoCache.privateKey(prvKey);
         } catch (NoSuchAlgorithmException unused) {
             handleException(new Exception("无此算法"));
         } catch (InvalidKeySpecException unused2) {
             handleException(new Exception("私钥非法"));
         } catch (NullPointerException unused3) {
             handleException(new Exception("私钥数据为空"));
+        } catch (GeneralSecurityException e) {
+            handleException(e);
         }
         return null;
     }
@@ -133,7 +137,7 @@ public class RSAEncrypt {
         try {
             byte[] bytes = data.getBytes("UTF-8");
             // 创建 Cipher 对象
-            Cipher cipher = Cipher.getInstance(config);
+            Cipher cipher = CryptoCache.cipher(config);
             // 初始化 Cipher 对象，加密模式
             RSAPublicKey rSAPublicKey = (RSAPublicKey) getPublicKey(pubKey);
             cipher.init(Cipher.ENCRYPT_MODE, rSAPublicKey);
@@ -188,7 +192,7 @@ public class RSAEncrypt {
             // 将要解密的数据，进行 Base64 解码
             byte[] encryptedData = DataUtils.base64Decode(encryptBase64Data);
             // 创建 Cipher 对象，用来解密
-            Cipher cipher = Cipher.getInstance(config);
+            Cipher cipher = CryptoCache.cipher(config);
             // 初始化 Cipher 对象，解密模式
             RSAPrivateKey rSAPrivateKey = (RSAPrivateKey) getPrivateKey(prvKey);
             cipher.init(Cipher.DECRYPT_MODE, rSAPrivateKey);
@@ -241,7 +245,7 @@ public class RSAEncrypt {
         try {
             byte[] bytes = data.getBytes("UTF-8");
             // 创建 Cipher 对象
-            Cipher cipher = Cipher.getInstance(config);
+            Cipher cipher = CryptoCache.cipher(config);
             // 初始化 Cipher 对象，加密模式
             RSAPrivateKey rSAPrivateKey = (RSAPrivateKey) getPrivateKey(prvKey);
             cipher.init(Cipher.ENCRYPT_MODE, rSAPrivateKey);
@@ -295,7 +299,7 @@ public class RSAEncrypt {
             // 将要解密的数据，进行 Base64 解码
             byte[] encryptedData = DataUtils.base64Decode(encryptBase64Data);
             // 创建 Cipher 对象，用来解密
-            Cipher cipher = Cipher.getInstance(config);
+            Cipher cipher = CryptoCache.cipher(config);
             // 初始化 Cipher 对象，解密模式
             RSAPublicKey rSAPublicKey = (RSAPublicKey) getPublicKey(pubKey);
             cipher.init(Cipher.DECRYPT_MODE, rSAPublicKey);
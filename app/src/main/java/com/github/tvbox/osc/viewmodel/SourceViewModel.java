@@ -9,6 +9,7 @@ import androidx.lifecycle.ViewModel;
 import com.blankj.utilcode.util.ToastUtils;
 import com.github.catvod.crawler.Spider;
 import com.github.tvbox.osc.api.ApiConfig;
+import com.github.tvbox.osc.api.SpiderInvoker;
 import com.github.tvbox.osc.base.App;
 import com.github.tvbox.osc.bean.AbsJson;
 import com.github.tvbox.osc.bean.AbsSortJson;
@@ -17,6 +18,8 @@ import com.github.tvbox.osc.bean.AbsXml;
 import com.github.tvbox.osc.bean.Movie;
 import com.github.tvbox.osc.bean.MovieSort;
 import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.cache.ResponseCache;
+import com.github.tvbox.osc.cache.SearchCache;
 import com.github.tvbox.osc.event.RefreshEvent;
 import com.github.tvbox.osc.util.DefaultConfig;
 import com.github.tvbox.osc.util.HawkConfig;
@@ -43,13 +46,8 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * @author pj567
@@ -87,22 +85,11 @@ public class SourceViewModel extends ViewModel {
             Runnable waitResponse = new Runnable() {
                 @Override
                 public void run() {
-                    ExecutorService executor = Executors.newSingleThreadExecutor();
-                    Future<String> future = executor.submit(new Callable<String>() {
-                        @Override
-                        public String call() throws Exception {
-                            Spider sp = ApiConfig.get().getCSP(sourceBean);
-                            return sp.homeContent(true);
-                        }
-                    });
                     String sortJson = null;
                     try {
-                        sortJson = future.get(15, TimeUnit.SECONDS);
-                    } catch (TimeoutException e) {
-                        e.printStackTrace();
-                        future.cancel(true);
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
+                        sortJson = invokeCached(sourceBean, SpiderInvoker.HOME, "", sp -> sp.homeContent(true));
+                    } catch (Throwable th) {
+                        th.printStackTrace();
                     } finally {
                         if (sortJson != null) {
                             AbsSortXml sortXml = sortJson(sortResult, sortJson);
@@ -126,11 +113,6 @@ public class SourceViewModel extends ViewModel {
                         } else {
                             sortResult.postValue(null);
                         }
-                        try {
-                            executor.shutdown();
-                        } catch (Throwable th) {
-                            th.printStackTrace();
-                        }
                     }
                 }
             };
@@ -242,10 +224,11 @@ public class SourceViewModel extends ViewModel {
                 @Override
                 public void run() {
                     try {
-                        Spider sp = ApiConfig.get().getCSP(homeSourceBean);
-                        json(listResult, sp.categoryContent(sortData.id, page + "", true, sortData.filterSelect), homeSourceBean.getKey());
+                        String json = invokeCached(homeSourceBean, SpiderInvoker.CATEGORY, categoryArgs(sortData, page), sp -> sp.categoryContent(sortData.id, page + "", true, sortData.filterSelect));
+                        json(listResult, json, homeSourceBean.getKey());
                     } catch (Throwable th) {
                         th.printStackTrace();
+                        listResult.postValue(null);
                     }
                 }
             });
@@ -333,6 +316,30 @@ public class SourceViewModel extends ViewModel {
         }
     }
 
+    /**
+     * 先查响应缓存, 未命中再调用爬虫并写入缓存
+     */
+    private static String invokeCached(SourceBean sourceBean, String method, String args, SpiderInvoker.SpiderCall<String> call) throws Exception {
+        String json = ResponseCache.get(sourceBean.getKey(), method, args);
+        if (json != null)
+            return json;
+        json = SpiderInvoker.invoke(sourceBean, method, call);
+        ResponseCache.put(sourceBean.getKey(), method, args, json);
+        return json;
+    }
+
+    private static String categoryArgs(MovieSort.SortData sortData, int page) {
+        String filter = (sortData.filterSelect == null || sortData.filterSelect.size() <= 0) ? "" : new JSONObject(sortData.filterSelect).toString();
+        return sortData.id + "|" + page + "|" + filter;
+    }
+
+    /**
+     * 手动刷新时清除站点的响应缓存
+     */
+    public void invalidate(String sourceKey) {
+        spThreadPool.execute(() -> ResponseCache.invalidate(sourceKey));
+    }
+
     interface HomeRecCallback {
         void done(List<Movie.Video> videos);
     }
@@ -343,22 +350,11 @@ public class SourceViewModel extends ViewModel {
             Runnable waitResponse = new Runnable() {
                 @Override
                 public void run() {
-                    ExecutorService executor = Executors.newSingleThreadExecutor();
-                    Future<String> future = executor.submit(new Callable<String>() {
-                        @Override
-                        public String call() throws Exception {
-                            Spider sp = ApiConfig.get().getCSP(sourceBean);
-                            return sp.homeVideoContent();
-                        }
-                    });
                     String sortJson = null;
                     try {
-                        sortJson = future.get(15, TimeUnit.SECONDS);
-                    } catch (TimeoutException e) {
-                        e.printStackTrace();
-                        future.cancel(true);
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
+                        sortJson = invokeCached(sourceBean, SpiderInvoker.HOME_VIDEO, "", Spider::homeVideoContent);
+                    } catch (Throwable th) {
+                        th.printStackTrace();
                     } finally {
                         if (sortJson != null) {
                             AbsXml absXml = json(null, sortJson, sourceBean.getKey());
@@ -370,11 +366,6 @@ public class SourceViewModel extends ViewModel {
                         } else {
                             callback.done(null);
                         }
-                        try {
-                            executor.shutdown();
-                        } catch (Throwable th) {
-                            th.printStackTrace();
-                        }
                     }
                 }
             };
@@ -431,12 +422,13 @@ public class SourceViewModel extends ViewModel {
                 @Override
                 public void run() {
                     try {
-                        Spider sp = ApiConfig.get().getCSP(sourceBean);
                         List<String> ids = new ArrayList<>();
                         ids.add(id);
-                        json(detailResult, sp.detailContent(ids), sourceBean.getKey());
+                        String json = invokeCached(sourceBean, SpiderInvoker.DETAIL, id, sp -> sp.detailContent(ids));
+                        json(detailResult, json, sourceBean.getKey());
                     } catch (Throwable th) {
                         th.printStackTrace();
+                        detailResult.postValue(null);
                     }
                 }
             });
@@ -484,8 +476,7 @@ public class SourceViewModel extends ViewModel {
         int type = sourceBean.getType();
         if (type == 3) {
             try {
-                Spider sp = ApiConfig.get().getCSP(sourceBean);
-                String search = sp.searchContent(wd, false);
+                String search = SpiderInvoker.invoke(sourceBean, SpiderInvoker.SEARCH, sp -> sp.searchContent(wd, false));
                 if(!TextUtils.isEmpty(search)){
                     json(searchResult, search, sourceBean.getKey());
                 } else {
@@ -566,12 +557,24 @@ public class SourceViewModel extends ViewModel {
     public void getQuickSearch(String sourceKey, String wd) {
         SourceBean sourceBean = ApiConfig.get().getSource(sourceKey);
         int type = sourceBean.getType();
+        // 与聚合搜索共用搜索缓存, 在详情页和搜索页之间来回时不重复请求
+        SearchCache.Entry cached = SearchCache.get(wd, true, sourceKey);
+        if (cached != null) {
+            if (cached.format == SearchCache.FORMAT_XML) {
+                xml(quickSearchResult, cached.body, sourceKey);
+            } else {
+                json(quickSearchResult, cached.body, sourceKey);
+            }
+            return;
+        }
         if (type == 3) {
             try {
-                Spider sp = ApiConfig.get().getCSP(sourceBean);
-                json(quickSearchResult, sp.searchContent(wd, true), sourceBean.getKey());
+                String search = SpiderInvoker.invoke(sourceBean, SpiderInvoker.SEARCH, sp -> sp.searchContent(wd, true));
+                AbsXml data = json(quickSearchResult, search, sourceBean.getKey());
+                SearchCache.put(wd, true, sourceKey, SearchCache.FORMAT_JSON, search, data);
             } catch (Throwable th) {
                 th.printStackTrace();
+                json(quickSearchResult, "", sourceBean.getKey());
             }
         } else if (type == 0 || type == 1) {
             OkGo.<String>get(sourceBean.getApi())
@@ -592,10 +595,10 @@ public class SourceViewModel extends ViewModel {
                         public void onSuccess(Response<String> response) {
                             if (type == 0) {
                                 String xml = response.body();
-                                xml(quickSearchResult, xml, sourceBean.getKey());
+                                cacheQuickSearch(wd, sourceKey, SearchCache.FORMAT_XML, xml, xml(quickSearchResult, xml, sourceBean.getKey()));
                             } else {
                                 String json = response.body();
-                                json(quickSearchResult, json, sourceBean.getKey());
+                                cacheQuickSearch(wd, sourceKey, SearchCache.FORMAT_JSON, json, json(quickSearchResult, json, sourceBean.getKey()));
                             }
                         }
 
@@ -626,7 +629,7 @@ public class SourceViewModel extends ViewModel {
                     public void onSuccess(Response<String> response) {
                         String json = response.body();
                         LOG.i(json);
-                        json(quickSearchResult, json, sourceBean.getKey());
+                        cacheQuickSearch(wd, sourceKey, SearchCache.FORMAT_JSON, json, json(quickSearchResult, json, sourceBean.getKey()));
                     }
 
                     @Override
@@ -640,6 +643,13 @@ public class SourceViewModel extends ViewModel {
             quickSearchResult.postValue(null);
         }
     }
+    // OkGo 回调在主线程, 写磁盘放到线程池; 解析失败的不缓存
+    private void cacheQuickSearch(String wd, String sourceKey, int format, String body, AbsXml data) {
+        if (data == null)
+            return;
+        spThreadPool.execute(() -> SearchCache.put(wd, true, sourceKey, format, body, data));
+    }
+
     // playerContent
     public void getPlay(String sourceKey, String playFlag, String progressKey, String url, String subtitleKey) {
         SourceBean sourceBean = ApiConfig.get().getSource(sourceKey);
@@ -648,9 +658,8 @@ public class SourceViewModel extends ViewModel {
             spThreadPool.execute(new Runnable() {
                 @Override
                 public void run() {
-                    Spider sp = ApiConfig.get().getCSP(sourceBean);
                     try {
-                        String json = sp.playerContent(playFlag, url, ApiConfig.get().getVipParseFlags());
+                        String json = SpiderInvoker.invoke(sourceBean, SpiderInvoker.PLAY, sp -> sp.playerContent(playFlag, url, ApiConfig.get().getVipParseFlags()));
                         JSONObject result = new JSONObject(json);
                         result.put("key", url);
                         result.put("proKey", progressKey);
@@ -802,7 +811,7 @@ public class SourceViewModel extends ViewModel {
         }
     }
 
-    private void absXml(AbsXml data, String sourceKey) {
+    private static void absXml(AbsXml data, String sourceKey) {
         if (data.movie != null && data.movie.videoList != null) {
             for (Movie.Video video : data.movie.videoList) {
                 if (video.urlBean != null && video.urlBean.infoList != null) {
@@ -909,20 +918,39 @@ public class SourceViewModel extends ViewModel {
     }
 
 
+    /**
+     * 解析 xml 接口的返回, 不发事件, 供聚合搜索等在工作线程直接使用
+     */
+    public static AbsXml parseXml(String xml, String sourceKey) {
+        XStream xstream = new XStream(new DomDriver());//创建Xstram对象
+        xstream.autodetectAnnotations(true);
+        xstream.processAnnotations(AbsXml.class);
+        xstream.ignoreUnknownElements();
+        if (xml.contains("<year></year>")) {
+            xml = xml.replace("<year></year>", "<year>0</year>");
+        }
+        if (xml.contains("<state></state>")) {
+            xml = xml.replace("<state></state>", "<state>0</state>");
+        }
+        AbsXml data = (AbsXml) xstream.fromXML(xml);
+        absXml(data, sourceKey);
+        return data;
+    }
+
+    /**
+     * 解析 json 接口/爬虫的返回, 不发事件
+     */
+    public static AbsXml parseJson(String json, String sourceKey) {
+        AbsJson absJson = new Gson().fromJson(json, new TypeToken<AbsJson>() {
+        }.getType());
+        AbsXml data = absJson.toAbsXml();
+        absXml(data, sourceKey);
+        return data;
+    }
+
     private AbsXml xml(MutableLiveData<AbsXml> result, String xml, String sourceKey) {
         try {
-            XStream xstream = new XStream(new DomDriver());//创建Xstram对象
-            xstream.autodetectAnnotations(true);
-            xstream.processAnnotations(AbsXml.class);
-            xstream.ignoreUnknownElements();
-            if (xml.contains("<year></year>")) {
-                xml = xml.replace("<year></year>", "<year>0</year>");
-            }
-            if (xml.contains("<state></state>")) {
-                xml = xml.replace("<state></state>", "<state>0</state>");
-            }
-            AbsXml data = (AbsXml) xstream.fromXML(xml);
-            absXml(data, sourceKey);
+            AbsXml data = parseXml(xml, sourceKey);
             if (searchResult == result) {
                 EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_SEARCH_RESULT, data));
             } else if (quickSearchResult == result) {
@@ -966,10 +994,7 @@ public class SourceViewModel extends ViewModel {
                     "\t\t\"vod_play_url\": \"0$magnet:?xt=urn:btih:9e9358b946c427962533472efdd2efd9e9e38c67&dn=%e9%98%b3%e5%85%89%e7%94%b5%e5%bd%b1www.ygdy8.com.%e7%83%ad%e8%a1%80.2022.BD.1080P.%e9%9f%a9%e8%af%ad%e4%b8%ad%e8%8b%b1%e5%8f%8c%e5%ad%97.mkv&tr=udp%3a%2f%2ftracker.opentrackr.org%3a1337%2fannounce&tr=udp%3a%2f%2fexodus.desync.com%3a6969%2fannounce\"\n" +
                     "\t}]\n" +
                     "}";*/
-            AbsJson absJson = new Gson().fromJson(json, new TypeToken<AbsJson>() {
-            }.getType());
-            AbsXml data = absJson.toAbsXml();
-            absXml(data, sourceKey);
+            AbsXml data = parseJson(json, sourceKey);
             if (searchResult == result) {
                 EventBus.getDefault().post(new RefreshEvent(RefreshEvent.TYPE_SEARCH_RESULT, data));
             } else if (quickSearchResult == result) {
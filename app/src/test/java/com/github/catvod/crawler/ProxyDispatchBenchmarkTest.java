@@ -0,0 +1,151 @@
+package com.github.catvod.crawler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * /proxy 分发: 两个 jar 同时在用(比如直播代理和点播代理)时, 按地址里的 jarKey 路由和改动前按 recentJarKey 路由对比
+ * 打印错投比例和并发吞吐, 不对耗时断言; 按 jarKey 路由必须零错投
+ */
+public class ProxyDispatchBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS = 200;
+    // 模拟 Proxy 里打开上游流的耗时
+    private static final long WORK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public static class LiveProxy {
+        public static Object[] proxy(Map<String, String> params) {
+            if (!"live".equals(params.get("do")))
+                return null;
+            LockSupport.parkNanos(WORK_NANOS);
+            return new Object[]{200, "text/plain", "live"};
+        }
+    }
+
+    public static class VodProxy {
+        public static Object[] proxy(Map<String, String> params) {
+            if (!"vod".equals(params.get("do")))
+                return null;
+            LockSupport.parkNanos(WORK_NANOS);
+            return new Object[]{200, "text/plain", "vod"};
+        }
+    }
+
+    private JarLoader loader;
+    private Field recentJarKey;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        loader = new JarLoader();
+        Field field = JarLoader.class.getDeclaredField("proxyMethods");
+        field.setAccessible(true);
+        Map<String, Method> proxyMethods = (ConcurrentHashMap<String, Method>) field.get(loader);
+        proxyMethods.put("live", LiveProxy.class.getMethod("proxy", Map.class));
+        proxyMethods.put("vod", VodProxy.class.getMethod("proxy", Map.class));
+        recentJarKey = JarLoader.class.getDeclaredField("recentJarKey");
+        recentJarKey.setAccessible(true);
+    }
+
+    private static Map<String, String> params(String target) {
+        Map<String, String> params = new HashMap<>();
+        params.put("do", target);
+        params.put("jarKey", target);
+        return params;
+    }
+
+    private interface Dispatch {
+        Object[] invoke(Map<String, String> params) throws Exception;
+    }
+
+    // 改动前: 只看最近一次 getSpider 用到的 jar
+    private Object[] before(Map<String, String> params) throws Exception {
+        return loader.proxyInvoke((String) recentJarKey.get(loader), params);
+    }
+
+    /**
+     * @return {错投数, 总耗时 ns}
+     */
+    private long[] run(final Dispatch dispatch, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicInteger wrong = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads * REQUESTS);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            executor.execute(() -> {
+                for (int i = 0; i < REQUESTS; i++) {
+                    String target = ((i + seed) & 1) == 0 ? "live" : "vod";
+                    try {
+                        Object[] result = dispatch.invoke(params(target));
+                        if (result == null || !target.equals(result[2]))
+                            wrong.incrementAndGet();
+                    } catch (Exception e) {
+                        wrong.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long cost = System.nanoTime() - start;
+        executor.shutdown();
+        return new long[]{wrong.get(), cost};
+    }
+
+    @Test
+    public void routesByKey() throws Exception {
+        assertEquals("live", loader.proxyInvoke("live", params("live"))[2]);
+        assertEquals("vod", loader.proxyInvoke("vod", params("vod"))[2]);
+        assertNull(loader.proxyInvoke("missing", params("vod")));
+        // 地址里没有 jarKey 时, 最近的 jar 不处理就依次问其它 jar
+        recentJarKey.set(loader, "live");
+        Map<String, String> noKey = new HashMap<>();
+        noKey.put("do", "vod");
+        assertArrayEquals(new Object[]{200, "text/plain", "vod"}, loader.proxyInvoke(noKey));
+    }
+
+    @Test
+    public void dispatchCost() throws Exception {
+        // 两个站点都在用时, 各自的 getSpider 会把 recentJarKey 来回切换
+        Thread switcher = new Thread(() -> {
+            boolean live = true;
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    recentJarKey.set(loader, live ? "live" : "vod");
+                } catch (IllegalAccessException e) {
+                    return;
+                }
+                live = !live;
+                LockSupport.parkNanos(WORK_NANOS * 5);
+            }
+        });
+        switcher.start();
+        long[] old = run(this::before, THREADS);
+        switcher.interrupt();
+        switcher.join();
+        long[] serial = run(params -> loader.proxyInvoke(params.get("jarKey"), params), 1);
+        long[] keyed = run(params -> loader.proxyInvoke(params.get("jarKey"), params), THREADS);
+        System.out.printf("改动前 recentJarKey, %d 线程: 错投 %d/%d%n", THREADS, old[0], THREADS * REQUESTS);
+        System.out.printf("按 jarKey, 1 线程: %6.0f req/s%n", REQUESTS / (serial[1] / 1e9));
+        System.out.printf("按 jarKey, %d 线程: %6.0f req/s, 错投 %d%n", THREADS, THREADS * REQUESTS / (keyed[1] / 1e9), keyed[0]);
+        assertEquals(0, keyed[0]);
+    }
+}
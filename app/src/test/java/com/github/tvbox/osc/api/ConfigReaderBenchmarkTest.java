@@ -0,0 +1,182 @@
+package com.github.tvbox.osc.api;
+
+import com.github.tvbox.osc.bean.ParseBean;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.github.tvbox.osc.util.DefaultConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 订阅配置解析: 改动前(按行拼 StringBuilder + Gson 整棵树再拷贝)和 ConfigReader 流式读取
+ * 生成 300+ 站点、带大 ext 的配置, 打印耗时和分配量, 不对耗时断言; 两种方式读出的站点必须一致
+ */
+public class ConfigReaderBenchmarkTest {
+
+    private static final int SITES = 400;
+    private static final int TRIALS = 10;
+
+    private static File file;
+
+    @BeforeClass
+    public static void generate() throws IOException {
+        file = File.createTempFile("config", ".json");
+        writeConfig(file, SITES);
+    }
+
+    /**
+     * 生成 sites 个站点的配置, 三分之一的站点带内嵌规则的大 ext
+     */
+    static void writeConfig(File file, int sites) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            out.write("{\n\"spider\": \"https://a.com/spider.jar;md5;0123456789abcdef\",\n\"wallpaper\": \"https://a.com/bg\",\n\"sites\": [\n");
+            for (int i = 0; i < sites; i++) {
+                if (i > 0)
+                    out.write(",\n");
+                out.write("{\"key\": \"site" + i + "\", \"name\": \"站点" + i + "\", \"type\": " + (i % 4) + ", \"api\": \"csp_Site" + i + "\", \"searchable\": 1, \"quickSearch\": " + (i & 1) + ", \"filterable\": 1, \"categories\": [\"电影\", \"剧集\", \"综艺\"], ");
+                if (i % 3 == 0) {
+                    // 一部分站点的 ext 是对象, 模拟内嵌规则的大 ext
+                    out.write("\"ext\": {\"host\": \"https://site" + i + ".com\", \"rules\": [");
+                    for (int j = 0; j < 40; j++) {
+                        out.write((j > 0 ? ", " : "") + "{\"name\": \"规则" + j + "\", \"list\": \"div.list li:eq(" + j + ")\", \"url\": \"/vod/" + j + ".html\"}");
+                    }
+                    out.write("]}}");
+                } else {
+                    out.write("\"ext\": \"https://site" + i + ".com/ext.json\"}");
+                }
+            }
+            out.write("\n],\n\"parses\": [\n");
+            for (int i = 0; i < 30; i++) {
+                out.write((i > 0 ? ",\n" : "") + "{\"name\": \"解析" + i + "\", \"type\": 1, \"url\": \"https://jx" + i + ".com/?url=\", \"ext\": {\"flag\": [\"qq\", \"iqiyi\", \"youku\"]}}");
+            }
+            out.write("\n],\n\"flags\": [\"qq\", \"iqiyi\", \"youku\", \"mgtv\"],\n");
+            out.write("\"lives\": [{\"group\": \"redirect\", \"channels\": [{\"name\": \"live\", \"urls\": [\"proxy://do=live&type=txt&ext=aHR0cHM6Ly9hLmNvbS9saXZlLnR4dA==\"]}]}],\n");
+            out.write("\"rules\": [{\"host\": \"a.com\", \"rule\": [\".m3u8\"]}, {\"host\": \"b.com\", \"filter\": [\"ad\"]}],\n");
+            out.write("\"ads\": [\"ad.a.com\", \"ad.b.com\"]\n}\n");
+        }
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        file.delete();
+    }
+
+    // 改动前 ApiConfig.parseJson(apiUrl, File) 的做法, 只保留站点和解析的拷贝
+    private static List<SourceBean> before(File f, List<ParseBean> parses) throws IOException {
+        BufferedReader bReader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+        StringBuilder sb = new StringBuilder();
+        String s;
+        while ((s = bReader.readLine()) != null) {
+            sb.append(s + "\n");
+        }
+        bReader.close();
+        JsonObject infoJson = new Gson().fromJson(sb.toString(), JsonObject.class);
+        List<SourceBean> sites = new ArrayList<>();
+        for (JsonElement opt : infoJson.get("sites").getAsJsonArray()) {
+            JsonObject obj = (JsonObject) opt;
+            SourceBean bean = new SourceBean();
+            bean.setKey(obj.get("key").getAsString().trim());
+            bean.setName(obj.get("name").getAsString().trim());
+            bean.setType(obj.get("type").getAsInt());
+            bean.setApi(obj.get("api").getAsString().trim());
+            bean.setSearchable(DefaultConfig.safeJsonInt(obj, "searchable", 1));
+            bean.setQuickSearch(DefaultConfig.safeJsonInt(obj, "quickSearch", 1));
+            bean.setFilterable(DefaultConfig.safeJsonInt(obj, "filterable", 1));
+            bean.setPlayerUrl(DefaultConfig.safeJsonString(obj, "playUrl", ""));
+            if (obj.has("ext") && (obj.get("ext").isJsonObject() || obj.get("ext").isJsonArray())) {
+                bean.setExt(obj.get("ext").toString());
+            } else {
+                bean.setExt(DefaultConfig.safeJsonString(obj, "ext", ""));
+            }
+            bean.setJar(DefaultConfig.safeJsonString(obj, "jar", ""));
+            bean.setPlayerType(DefaultConfig.safeJsonInt(obj, "playerType", -1));
+            bean.setCategories(DefaultConfig.safeJsonStringList(obj, "categories"));
+            bean.setClickSelector(DefaultConfig.safeJsonString(obj, "click", ""));
+            sites.add(bean);
+        }
+        for (JsonElement opt : infoJson.get("parses").getAsJsonArray()) {
+            JsonObject obj = (JsonObject) opt;
+            ParseBean pb = new ParseBean();
+            pb.setName(obj.get("name").getAsString().trim());
+            pb.setUrl(obj.get("url").getAsString().trim());
+            pb.setExt(obj.has("ext") ? obj.get("ext").getAsJsonObject().toString() : "");
+            pb.setType(DefaultConfig.safeJsonInt(obj, "type", 0));
+            parses.add(pb);
+        }
+        return sites;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    @Test
+    public void sameResult() throws IOException {
+        List<ParseBean> parses = new ArrayList<>();
+        List<SourceBean> expected = before(file, parses);
+        ConfigReader config = ConfigReader.read(file);
+        assertEquals(expected.size(), config.sites.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SourceBean a = expected.get(i);
+            SourceBean b = config.sites.get(i);
+            assertEquals(a.getKey(), b.getKey());
+            assertEquals(a.getName(), b.getName());
+            assertEquals(a.getType(), b.getType());
+            assertEquals(a.getApi(), b.getApi());
+            assertEquals(a.isQuickSearch(), b.isQuickSearch());
+            assertEquals(a.getExt(), b.getExt());
+            assertEquals(a.getCategories(), b.getCategories());
+        }
+        assertEquals(parses.size(), config.parses.size());
+        for (int i = 0; i < parses.size(); i++) {
+            assertEquals(parses.get(i).getName(), config.parses.get(i).getName());
+            assertEquals(parses.get(i).getExt(), config.parses.get(i).getExt());
+        }
+    }
+
+    @Test
+    public void parseCost() throws IOException {
+        for (int i = 0; i < TRIALS; i++) {
+            before(file, new ArrayList<ParseBean>());
+            ConfigReader.read(file);
+        }
+        long[] cost = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] allocated = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int i = 0; i < TRIALS; i++) {
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            before(file, new ArrayList<ParseBean>());
+            cost[0] = Math.min(cost[0], System.nanoTime() - start);
+            allocated[0] = Math.min(allocated[0], allocatedBytes() - bytes);
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            ConfigReader.read(file);
+            cost[1] = Math.min(cost[1], System.nanoTime() - start);
+            allocated[1] = Math.min(allocated[1], allocatedBytes() - bytes);
+        }
+        System.out.printf("配置 %d KB, %d 个站点%n", file.length() / 1024, SITES);
+        System.out.printf("改动前 Gson 整棵树  %6.2f ms  分配 %6.1f MB%n", cost[0] / 1e6, allocated[0] / 1048576.0);
+        System.out.printf("ConfigReader 流式   %6.2f ms  分配 %6.1f MB%n", cost[1] / 1e6, allocated[1] / 1048576.0);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.tvbox.osc.api;
+
+import com.github.tvbox.osc.bean.SourceBean;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 冷启动读取缓存配置: 改动前每次启动都 ConfigReader 解析 JSON, 现在读二进制快照
+ * 打印两种方式的耗时, 不对耗时断言; 快照读回的内容必须和解析结果一致, 源文件 MD5 变化时快照失效
+ */
+public class ConfigSnapshotBenchmarkTest {
+
+    private static final int SITES = 400;
+    private static final int TRIALS = 10;
+    private static final String MD5 = "0123456789abcdef0123456789abcdef";
+
+    private static File file;
+    private static File snapshot;
+
+    @BeforeClass
+    public static void generate() throws IOException {
+        file = File.createTempFile("config", ".json");
+        ConfigReaderBenchmarkTest.writeConfig(file, SITES);
+        snapshot = ConfigSnapshot.fileOf(file);
+        ConfigSnapshot.write(snapshot, MD5, ConfigReader.read(file));
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        file.delete();
+        snapshot.delete();
+    }
+
+    @Test
+    public void sameResult() throws IOException {
+        ConfigReader expected = ConfigReader.read(file);
+        ConfigReader config = ConfigSnapshot.read(snapshot, MD5);
+        assertEquals(expected.spider, config.spider);
+        assertEquals(expected.sites.size(), config.sites.size());
+        for (int i = 0; i < expected.sites.size(); i++) {
+            SourceBean a = expected.sites.get(i);
+            SourceBean b = config.sites.get(i);
+            assertEquals(a.getKey(), b.getKey());
+            assertEquals(a.getApi(), b.getApi());
+            assertEquals(a.getExt(), b.getExt());
+            assertEquals(a.getCategories(), b.getCategories());
+        }
+        assertEquals(expected.parses.size(), config.parses.size());
+        assertEquals(expected.flags, config.flags);
+        assertEquals(expected.rules.size(), config.rules.size());
+        assertEquals(String.valueOf(expected.lives), String.valueOf(config.lives));
+        assertNull(ConfigSnapshot.read(snapshot, "ffffffffffffffffffffffffffffffff"));
+    }
+
+    @Test
+    public void coldStartCost() throws IOException {
+        for (int i = 0; i < TRIALS; i++) {
+            ConfigReader.read(file);
+            ConfigSnapshot.read(snapshot, MD5);
+        }
+        long parse = Long.MAX_VALUE;
+        long snap = Long.MAX_VALUE;
+        for (int i = 0; i < TRIALS; i++) {
+            long start = System.nanoTime();
+            ConfigReader.read(file);
+            parse = Math.min(parse, System.nanoTime() - start);
+            start = System.nanoTime();
+            ConfigSnapshot.read(snapshot, MD5);
+            snap = Math.min(snap, System.nanoTime() - start);
+        }
+        System.out.printf("配置 %d KB, %d 个站点, 快照 %d KB%n", file.length() / 1024, SITES, snapshot.length() / 1024);
+        System.out.printf("改动前 解析 JSON  %6.2f ms%n", parse / 1e6);
+        System.out.printf("读取快照          %6.2f ms%n", snap / 1e6);
+    }
+}
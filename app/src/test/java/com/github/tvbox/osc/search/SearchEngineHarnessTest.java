@@ -0,0 +1,322 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.api.SourceHealth;
+import com.github.tvbox.osc.api.SpiderInvoker;
+import com.github.tvbox.osc.bean.AbsXml;
+import com.github.tvbox.osc.bean.Movie;
+import com.github.tvbox.osc.bean.SourceBean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 聚合搜索的 JVM 测试: 用桩爬虫(按设定的耗时 sleep, 可中断)代替网络和 jar/JS 爬虫, 单线程调度器代替主线程
+ * 打印首个结果和整次搜索的耗时, 和改动前的做法(固定 10 线程、按配置顺序、没有截止时间)对比, 不对耗时断言;
+ * 截止时间和取消部分检查卡住的站点确实被中断、按站点取消了爬虫请求, 取消后不再回调
+ */
+public class SearchEngineHarnessTest {
+
+    private static final String WORD = "测试";
+    private static final int SOURCES = 60;
+    private static final long DEADLINE_MS = 2000;
+    // 卡住的站点一直等到被中断
+    private static final long HANG = -1;
+    private static final long OLD_TIMEOUT_MS = 5000;
+
+    private ScheduledExecutorService main;
+    private StubFetcher stub;
+    private SearchEngine.Fetcher realFetcher;
+    private SearchEngine.Logger realLogger;
+
+    private static class StubFetcher implements SearchEngine.Fetcher {
+        final Map<String, Long> latencies = new ConcurrentHashMap<>();
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        final AtomicInteger spiderCancels = new AtomicInteger();
+        final Map<String, Boolean> cancelledTags = new ConcurrentHashMap<>();
+
+        @Override
+        public List<Movie.Video> cached(SourceBean sourceBean, String wd, boolean quick) {
+            return null;
+        }
+
+        // 和接口站点一样经过 SpiderInvoker.track, 耗时和成败计入 SourceHealth
+        @Override
+        public AbsXml fetch(SourceBean sourceBean, String wd, boolean quick, String tag) throws Exception {
+            return SpiderInvoker.track(sourceBean, SpiderInvoker.SEARCH, () -> sleep(sourceBean, wd));
+        }
+
+        AbsXml sleep(SourceBean sourceBean, String wd) throws InterruptedException {
+            active.incrementAndGet();
+            try {
+                long latency = latencies.get(sourceBean.getKey());
+                Thread.sleep(latency == HANG ? Long.MAX_VALUE : latency);
+                return result(sourceBean.getKey(), wd);
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                throw e;
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void cancelTag(String tag) {
+            cancelledTags.put(tag, true);
+        }
+
+        @Override
+        public void cancelSpider(SourceBean sourceBean) {
+            spiderCancels.incrementAndGet();
+        }
+    }
+
+    private static AbsXml result(String sourceKey, String wd) {
+        Movie.Video video = new Movie.Video();
+        video.name = wd + " 第" + (sourceKey.hashCode() & 3) + "季";
+        video.sourceKey = sourceKey;
+        AbsXml xml = new AbsXml();
+        xml.movie = new Movie();
+        xml.movie.videoList = new ArrayList<>();
+        xml.movie.videoList.add(video);
+        return xml;
+    }
+
+    private static class Recorder implements SearchEngine.Listener {
+        final long startAt = System.nanoTime();
+        final AtomicLong firstResultAt = new AtomicLong();
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger callbacks = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicBoolean timeout = new AtomicBoolean();
+        volatile long completeAt;
+
+        @Override
+        public void onResults(SearchBatch batch) {
+            callbacks.incrementAndGet();
+            batches.incrementAndGet();
+            firstResultAt.compareAndSet(0, System.nanoTime());
+        }
+
+        @Override
+        public void onComplete(boolean timeout) {
+            callbacks.incrementAndGet();
+            this.timeout.set(timeout);
+            completeAt = System.nanoTime();
+            done.countDown();
+        }
+
+        long firstMs() {
+            return firstResultAt.get() == 0 ? -1 : (firstResultAt.get() - startAt) / 1000000;
+        }
+
+        long totalMs() {
+            return (completeAt - startAt) / 1000000;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        main = Executors.newSingleThreadScheduledExecutor();
+        final Map<Runnable, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+        SearchEngine.poster = new SearchEngine.Poster() {
+            @Override
+            public void post(Runnable task) {
+                main.execute(task);
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                scheduled.put(task, main.schedule(task, delayMs, TimeUnit.MILLISECONDS));
+            }
+
+            @Override
+            public void remove(Runnable task) {
+                ScheduledFuture<?> future = scheduled.remove(task);
+                if (future != null)
+                    future.cancel(false);
+            }
+        };
+        realFetcher = SearchEngine.fetcher;
+        stub = new StubFetcher();
+        SearchEngine.fetcher = stub;
+        // 每次搜索的统计日志不打印, 耗时由测试自己汇总
+        realLogger = SearchEngine.logger;
+        SearchEngine.logger = (tag, msg) -> {
+        };
+    }
+
+    @After
+    public void tearDown() {
+        SearchEngine.fetcher = realFetcher;
+        SearchEngine.logger = realLogger;
+        SearchEngine.poster = null;
+        main.shutdownNow();
+    }
+
+    // SourceHealth 是全局的, 每个测试用自己的站点 key, 互不影响
+    private static List<SourceBean> sources(String prefix, int count) {
+        List<SourceBean> sources = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SourceBean sourceBean = new SourceBean();
+            sourceBean.setKey(prefix + i);
+            sourceBean.setName("桩站点" + i);
+            sourceBean.setType(3);
+            sourceBean.setApi("csp_Stub" + i);
+            sources.add(sourceBean);
+        }
+        return sources;
+    }
+
+    /**
+     * 大部分站点几十到几百毫秒, 一部分要 1 秒以上, 少数卡住不返回; 配置靠前的几个站点偏慢
+     */
+    private void mixedLatencies(List<SourceBean> sources) {
+        Random random = new Random(7);
+        for (int i = 0; i < sources.size(); i++) {
+            int roll = random.nextInt(10);
+            long latency;
+            if (i % 12 == 0 || roll == 0) {
+                latency = HANG;
+            } else if (i < 8 || roll < 3) {
+                latency = 800 + random.nextInt(700);
+            } else {
+                latency = 30 + random.nextInt(270);
+            }
+            stub.latencies.put(sources.get(i).getKey(), latency);
+        }
+    }
+
+    // 改动前 FastSearchActivity 的做法: 每次搜索新建 10 线程的池, 按配置顺序提交, 没有截止时间;
+    // 卡住的站点只能等网络超时, 按 OLD_TIMEOUT_MS 计
+    private long[] before(List<SourceBean> sources) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+        final long start = System.nanoTime();
+        final AtomicLong first = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(sources.size());
+        for (final SourceBean sourceBean : sources) {
+            pool.execute(() -> {
+                try {
+                    if (stub.latencies.get(sourceBean.getKey()) == HANG) {
+                        Thread.sleep(OLD_TIMEOUT_MS);
+                    } else {
+                        stub.sleep(sourceBean, WORD);
+                        first.compareAndSet(0, System.nanoTime());
+                    }
+                } catch (Exception ignored) {
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+        long total = System.nanoTime() - start;
+        pool.shutdownNow();
+        return new long[]{(first.get() - start) / 1000000, total / 1000000};
+    }
+
+    @Test
+    public void firstResultAndTotalCost() throws Exception {
+        List<SourceBean> sources = sources("mixed", SOURCES);
+        mixedLatencies(sources);
+        long[] before = before(sources);
+        waitIdle();
+        Recorder cold = search(sources, DEADLINE_MS);
+        waitIdle();
+        // 第二次搜索时已经有了各站点的耗时统计, 快的站点排在前面
+        Recorder warm = search(sources, DEADLINE_MS);
+        waitIdle();
+        System.out.printf("改动前 固定 10 线程:        首个结果 %4d ms, 全部返回 %5d ms (卡住的站点占着线程直到超时)%n", before[0], before[1]);
+        System.out.printf("SearchEngine 首次:         首个结果 %4d ms, 结束 %5d ms, %d 批%n", cold.firstMs(), cold.totalMs(), cold.batches.get());
+        System.out.printf("SearchEngine 有统计之后:   首个结果 %4d ms, 结束 %5d ms, %d 批%n", warm.firstMs(), warm.totalMs(), warm.batches.get());
+        assertTrue(cold.timeout.get());
+        assertTrue(cold.firstMs() >= 0);
+    }
+
+    private Recorder search(List<SourceBean> sources, long deadlineMs) throws InterruptedException {
+        Recorder recorder = new Recorder();
+        SearchEngine.search(WORD, sources, deadlineMs, recorder);
+        assertTrue(recorder.done.await(deadlineMs + 5000, TimeUnit.MILLISECONDS));
+        return recorder;
+    }
+
+    // 截止/取消后被中断的站点要在短时间内全部退出, 不再占着线程
+    private void waitIdle() throws InterruptedException {
+        long until = System.currentTimeMillis() + 2000;
+        while (stub.active.get() > 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, stub.active.get());
+    }
+
+    @Test
+    public void deadlineInterruptsStuckSources() throws Exception {
+        List<SourceBean> sources = sources("deadline", 4);
+        for (SourceBean sourceBean : sources) {
+            stub.latencies.put(sourceBean.getKey(), HANG);
+        }
+        long start = System.currentTimeMillis();
+        Recorder recorder = search(sources, 300);
+        assertTrue(recorder.timeout.get());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        waitIdle();
+        assertEquals(4, stub.interrupted.get());
+        assertEquals(4, stub.spiderCancels.get());
+        // 截止时记一次失败, 之后被中断的调用不再重复记录
+        for (SourceBean sourceBean : sources) {
+            SourceHealth health = SpiderInvoker.peekHealth(sourceBean.getKey(), SpiderInvoker.SEARCH);
+            assertEquals(1, health.getSampleCount());
+            assertEquals(0f, health.getSuccessRate(), 0f);
+        }
+    }
+
+    @Test
+    public void cancelStopsEverything() throws Exception {
+        List<SourceBean> sources = sources("cancel", 20);
+        for (SourceBean sourceBean : sources) {
+            stub.latencies.put(sourceBean.getKey(), HANG);
+        }
+        Recorder recorder = new Recorder();
+        SearchQuery query = SearchEngine.search(WORD, sources, DEADLINE_MS, recorder);
+        long until = System.currentTimeMillis() + 2000;
+        while (stub.active.get() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        int running = stub.active.get();
+        assertTrue(running > 0);
+        query.cancel();
+        waitIdle();
+        // 已经派发的站点被中断并取消爬虫请求, 排队的直接丢弃
+        assertTrue(stub.interrupted.get() >= running);
+        assertTrue(stub.interrupted.get() < sources.size());
+        assertEquals(stub.interrupted.get(), stub.spiderCancels.get());
+        assertEquals(1, stub.cancelledTags.size());
+        // 主动取消不计入站点统计
+        for (SourceBean sourceBean : sources) {
+            SourceHealth health = SpiderInvoker.peekHealth(sourceBean.getKey(), SpiderInvoker.SEARCH);
+            assertTrue(health == null || health.getSampleCount() == 0);
+        }
+        Thread.sleep(DEADLINE_MS + 300);
+        assertEquals(0, recorder.callbacks.get());
+        assertFalse(recorder.done.getCount() == 0);
+    }
+}
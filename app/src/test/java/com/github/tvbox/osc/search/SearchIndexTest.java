@@ -0,0 +1,86 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.bean.Movie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 搜索词匹配和分组内排序; 最后打印大分组下 add 的耗时, 不对耗时断言
+ */
+public class SearchIndexTest {
+
+    private static Movie.Video video(String name) {
+        Movie.Video video = new Movie.Video();
+        video.name = name;
+        return video;
+    }
+
+    private static String[] keys(String wd, String... names) {
+        List<Movie.Video> videos = new ArrayList<>();
+        for (String name : names) {
+            videos.add(video(name));
+        }
+        return new SearchIndex(wd).keys(videos);
+    }
+
+    @Test
+    public void yearAndFirstSeasonStillMatch() {
+        String[] keys = keys("庆余年 2019", "庆余年(2019)", "慶餘年 2019", "庆余年 2024", "庆余年");
+        assertEquals("庆余年", keys[0]);
+        assertEquals("庆余年", keys[1]);
+        assertNull(keys[2]);
+        assertNull(keys[3]);
+        keys = keys("三体 第一季", "三体 第一季", "三體", "三体 第二季");
+        assertEquals("三体", keys[0]);
+        assertNull(keys[1]);
+        assertNull(keys[2]);
+    }
+
+    @Test
+    public void normalizedKeyAlsoMatches() {
+        String[] keys = keys("lost s2", "Lost 第二季", "LOST Season 2", "Lost 第三季");
+        assertEquals("losts2", keys[0]);
+        assertEquals("losts2", keys[1]);
+        assertNull(keys[2]);
+    }
+
+    @Test
+    public void groupKeepsPriorityOrder() {
+        SearchGroup group = new SearchGroup("key", 0);
+        Movie.Video[] videos = new Movie.Video[6];
+        int[] priorities = {5, 3, 9, 3, 1, 5};
+        for (int i = 0; i < videos.length; i++) {
+            videos[i] = video("v" + i);
+            group.add(videos[i], priorities[i]);
+            // 每次追加后排在最前的都是当前优先级最小、最早到达的
+            assertSame(group.getVideos().get(0), group.getVideo());
+        }
+        assertEquals(6, group.size());
+        assertEquals(Arrays.asList(videos[4], videos[1], videos[3], videos[0], videos[5], videos[2]), group.getVideos());
+    }
+
+    @Test
+    public void addCost() {
+        int count = 20000;
+        for (int trial = 0; trial < 3; trial++) {
+            SearchGroup group = new SearchGroup("key", 0);
+            Movie.Video video = video("v");
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                group.add(video, count - i);
+            }
+            long cost = System.nanoTime() - start;
+            if (trial == 2)
+                System.out.printf("分组 %d 个候选: add 平均 %.1f ns%n", count, cost / (double) count);
+            assertEquals(count, group.size());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.github.tvbox.osc.search;
+
+import com.github.tvbox.osc.api.SourceHealth;
+import com.github.tvbox.osc.api.SpiderInvoker;
+import com.github.tvbox.osc.bean.SourceBean;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 搜索顺序(SourceHealth 的预期代价)、主机限制的范围和统计的保存格式
+ */
+public class SearchSchedulerTest {
+
+    private static SourceBean source(String key, int type, String api) {
+        SourceBean sourceBean = new SourceBean();
+        sourceBean.setKey(key);
+        sourceBean.setType(type);
+        sourceBean.setApi(api);
+        return sourceBean;
+    }
+
+    private static void record(String key, long latency, int success, int hit, int total) {
+        SourceHealth health = SpiderInvoker.getHealth(key, SpiderInvoker.SEARCH);
+        for (int i = 0; i < total; i++) {
+            if (i < success) {
+                health.onSuccess(latency);
+                health.recordHit(i < hit);
+            } else {
+                health.onFailure(latency);
+            }
+        }
+    }
+
+    private static List<String> keys(List<SourceBean> sources) {
+        List<String> keys = new ArrayList<>();
+        for (SourceBean sourceBean : sources) {
+            keys.add(sourceBean.getKey());
+        }
+        return keys;
+    }
+
+    @Test
+    public void orderByExpectedCost() {
+        // 首页源不动; 快但很少命中的排在慢一点但总能命中的后面, 没有样本的在中间, 熔断的最后
+        record("order_fast", 200, 10, 10, 10);
+        record("order_miss", 100, 10, 0, 10);
+        record("order_slow", 1500, 10, 10, 10);
+        record("order_open", 50, 0, 0, 3);
+        List<SourceBean> sources = Arrays.asList(source("order_home", 3, "csp_Home"), source("order_open", 3, "csp_A"),
+                source("order_miss", 3, "csp_B"), source("order_new", 3, "csp_C"), source("order_slow", 3, "csp_D"), source("order_fast", 3, "csp_E"));
+        assertTrue(SpiderInvoker.peekHealth("order_open", SpiderInvoker.SEARCH).isOpen());
+        assertEquals(Arrays.asList("order_home", "order_fast", "order_slow", "order_miss", "order_new", "order_open"), keys(SearchScheduler.order(sources)));
+    }
+
+    @Test
+    public void hostOnlyForApiSources() {
+        assertEquals("a.com", SearchScheduler.hostOf(source("host_api", 1, "https://a.com/api.php/provide/vod")));
+        assertEquals("b.com", SearchScheduler.hostOf(source("host_xml", 0, "http://b.com:8080/xml")));
+        // jar/JS 爬虫的地址只是代码所在的主机, 不限制
+        assertNull(SearchScheduler.hostOf(source("host_jar", 3, "https://a.com/spider.js")));
+        assertNull(SearchScheduler.hostOf(source("host_bad", 1, "csp_Api")));
+    }
+
+    @Test
+    public void healthSurvivesSaveFormat() {
+        record("saved", 300, 3, 1, 4);
+        SourceHealth health = SpiderInvoker.getHealth("saved", SpiderInvoker.SEARCH);
+        Gson gson = new Gson();
+        SourceHealth loaded = gson.fromJson(gson.toJson(health), SourceHealth.class);
+        assertEquals("saved", loaded.key);
+        assertEquals(health.getSampleCount(), loaded.getSampleCount());
+        assertEquals(health.getP50Latency(), loaded.getP50Latency());
+        assertEquals(health.getHitRate(), loaded.getHitRate(), 0f);
+        assertEquals(health.getExpectedCost(), loaded.getExpectedCost());
+        // 熔断状态不保存
+        assertFalse(gson.toJson(health).contains("openUntil"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.tvbox.osc.search;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 用 assets 里的词典在 JVM 上分词: 检查几个常见片名的切分, 打印词典加载耗时和分词吞吐, 不对耗时断言
+ */
+public class SegmenterTest {
+
+    // 单元测试的工作目录是 app 模块
+    private static final File DICT = new File("src/main/assets/dict/dict.txt");
+    private static final String[] TITLES = {
+            "流浪地球2", "庆余年 第二季", "人民的名义", "甄嬛传 国语版", "琅琊榜之风起长林", "三体 第一季",
+            "请回答1988", "大明王朝1566", "我的解放日志", "狂飙", "繁花 沪语版", "漫长的季节", "觉醒年代",
+            "武林外传 完整版", "鬼吹灯之精绝古城", "走向共和", "长安十二时辰", "山海情 蓝光", "隐秘的角落", "白夜追凶 第一季"
+    };
+    private static final int ROUNDS = 2000;
+
+    private static Segmenter segmenter;
+    private static long loadNanos;
+
+    @BeforeClass
+    public static void load() throws IOException {
+        long start = System.nanoTime();
+        segmenter = new Segmenter(new FileInputStream(DICT));
+        loadNanos = System.nanoTime() - start;
+    }
+
+    @Test
+    public void cutsTitles() {
+        assertEquals(Arrays.asList("人民", "的", "名义"), segmenter.cut("人民的名义"));
+        assertEquals(Arrays.asList("流浪", "地球", "2"), segmenter.cut("流浪地球2"));
+        assertEquals(Arrays.asList("人民", "名义"), segmenter.keywords("人民的名义"));
+        // 停用词和季数去掉, 词典切剩的连续单字合成一个词
+        assertEquals(Arrays.asList("甄嬛传"), segmenter.keywords("甄嬛传 国语版 第二季"));
+        assertEquals(Arrays.asList("三体"), segmenter.keywords("三体 第一季"));
+    }
+
+    @Test
+    public void throughput() {
+        int chars = 0;
+        for (String title : TITLES) {
+            chars += title.length();
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            for (String title : TITLES) {
+                segmenter.keywords(title);
+            }
+        }
+        long best = Long.MAX_VALUE;
+        for (int trial = 0; trial < 5; trial++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                for (String title : TITLES) {
+                    segmenter.keywords(title);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double seconds = best / 1e9;
+        System.out.printf("词典 %d KB 加载 %.0f ms%n", DICT.length() / 1024, loadNanos / 1e6);
+        System.out.printf("分词 %.0f 个标题/s, %.2f MB 字符/s, 每个标题 %.2f us%n",
+                ROUNDS * TITLES.length / seconds, (double) ROUNDS * chars / seconds / 1e6, seconds * 1e6 / ROUNDS / TITLES.length);
+        for (String title : Arrays.asList(TITLES).subList(0, 6)) {
+            System.out.println(title + " -> " + segmenter.keywords(title));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.tvbox.osc.util;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 1 KB 典型负载下, 每次新建 Cipher/MessageDigest/解析 PEM(改动前)和 CryptoCache 复用的对比
+ * 只打印耗时不做断言; 正确性部分检查缓存的对象加解密结果一致
+ */
+public class CryptoCacheBenchmarkTest {
+
+    private static final int ROUNDS = 2000;
+    private static final int TRIALS = 5;
+
+    private static byte[] payload;
+    private static String publicPem;
+    private static String privatePem;
+    private static byte[] aesKey;
+    private static byte[] aesIv;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        payload = new byte[1024];
+        new Random(1).nextBytes(payload);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair pair = generator.generateKeyPair();
+        publicPem = pem("PUBLIC", pair.getPublic().getEncoded());
+        privatePem = pem("PRIVATE", pair.getPrivate().getEncoded());
+        aesKey = "0123456789abcdef".getBytes();
+        aesIv = "fedcba9876543210".getBytes();
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + " KEY-----\n" + Base64.getMimeEncoder().encodeToString(der) + "\n-----END " + type + " KEY-----";
+    }
+
+    private static byte[] der(String pem) {
+        return Base64.getMimeDecoder().decode(pem.replaceAll("-----(BEGIN|END) [A-Z ]*KEY-----", ""));
+    }
+
+    private interface Op {
+        byte[] run() throws Exception;
+    }
+
+    // 改动前: 每次调用都 getInstance 并重新解析密钥
+    private static final Op AES_BEFORE = () -> {
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(aesIv));
+        return cipher.doFinal(payload);
+    };
+    private static final Op AES_CACHED = () -> {
+        Cipher cipher = CryptoCache.cipher("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(aesKey, "AES"), new IvParameterSpec(aesIv));
+        return cipher.doFinal(payload);
+    };
+    private static final Op RSA_BEFORE = () -> rsa(Cipher.getInstance("RSA/ECB/PKCS1Padding"),
+            KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(der(publicPem))));
+    private static final Op RSA_CACHED = () -> rsa(CryptoCache.cipher("RSA/ECB/PKCS1Padding"), CryptoCache.publicKey(publicPem));
+    private static final Op MD5_BEFORE = () -> MessageDigest.getInstance("MD5").digest(payload);
+    private static final Op MD5_CACHED = () -> CryptoCache.digest("MD5").digest(payload);
+
+    // 和 Crypto.rsa 一样按块加密
+    private static byte[] rsa(Cipher cipher, Key key) throws Exception {
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int block = 2048 / 8 - 11;
+        for (int i = 0; i < payload.length; i += block) {
+            out.write(cipher.doFinal(payload, i, Math.min(block, payload.length - i)));
+        }
+        return out.toByteArray();
+    }
+
+    private static double best(Op op) throws Exception {
+        for (int i = 0; i < ROUNDS / 4; i++) {
+            op.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int trial = 0; trial < TRIALS; trial++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                op.run();
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1000.0 / ROUNDS;
+    }
+
+    @Test
+    public void sameResult() throws Exception {
+        assertArrayEquals(AES_BEFORE.run(), AES_CACHED.run());
+        assertArrayEquals(MD5_BEFORE.run(), MD5_CACHED.run());
+        // 连续两次取同一个 digest 要先 reset, 不能带上次的状态
+        assertArrayEquals(MD5_BEFORE.run(), MD5_CACHED.run());
+        assertSame(CryptoCache.publicKey(publicPem), CryptoCache.publicKey(publicPem));
+        // PKCS1 加密带随机填充, 用私钥解回来比较
+        byte[] encrypted = RSA_CACHED.run();
+        Cipher cipher = CryptoCache.cipher("RSA/ECB/PKCS1Padding");
+        cipher.init(Cipher.DECRYPT_MODE, CryptoCache.privateKey(privatePem));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < encrypted.length; i += 256) {
+            out.write(cipher.doFinal(encrypted, i, 256));
+        }
+        assertArrayEquals(payload, out.toByteArray());
+    }
+
+    @Test
+    public void cryptoCost() throws Exception {
+        System.out.printf("AES-CBC 1KB  改动前 %7.2f us  缓存 %7.2f us%n", best(AES_BEFORE), best(AES_CACHED));
+        System.out.printf("RSA 公钥 1KB 改动前 %7.2f us  缓存 %7.2f us%n", best(RSA_BEFORE), best(RSA_CACHED));
+        System.out.printf("MD5 1KB      改动前 %7.2f us  缓存 %7.2f us%n", best(MD5_BEFORE), best(MD5_CACHED));
+    }
+}
@@ -1,24 +1,79 @@
 package com.whl.quickjs.wrapper;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class BindingContext {
 
+    // 每个类只扫描一次注解
+    private static final ConcurrentHashMap<Class<?>, BindingContext> cache = new ConcurrentHashMap<>();
+
     protected Map<String, Method> functionMap;
 
     protected Method contextSetter;
 
+    // 同名的重载方法, 调用时按参数个数选择
+    private final Map<String, Method[]> overloadMap = new HashMap<>();
+
     public BindingContext() {
         functionMap = new HashMap<>();
         contextSetter = null;
     }
 
+    public static BindingContext of(Class<?> callbackReceiverClass) {
+        BindingContext bindingContext = cache.get(callbackReceiverClass);
+        if (bindingContext == null) {
+            bindingContext = scan(callbackReceiverClass);
+            BindingContext old = cache.putIfAbsent(callbackReceiverClass, bindingContext);
+            if (old != null) {
+                bindingContext = old;
+            }
+        }
+        return bindingContext;
+    }
+
+    private static BindingContext scan(Class<?> callbackReceiverClass) {
+        BindingContext bindingContext = new BindingContext();
+        Map<String, List<Method>> overloads = new HashMap<>();
+        for (Method method : callbackReceiverClass.getMethods()) {
+            Function fan = method.getAnnotation(Function.class);
+            if (fan != null) {
+                String functionName = fan.name();
+                if (functionName.length() == 0) {
+                    functionName = method.getName();
+                }
+                if (!bindingContext.functionMap.containsKey(functionName)) {
+                    bindingContext.functionMap.put(functionName, method);
+                }
+                List<Method> list = overloads.get(functionName);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    overloads.put(functionName, list);
+                }
+                // 跳过访问检查, 每次调用少一次权限校验
+                method.setAccessible(true);
+                list.add(method);
+            } else if (method.getAnnotation(ContextSetter.class) != null) {
+                bindingContext.setContextSetter(method);
+            }
+        }
+        for (Map.Entry<String, List<Method>> entry : overloads.entrySet()) {
+            bindingContext.overloadMap.put(entry.getKey(), entry.getValue().toArray(new Method[0]));
+        }
+        return bindingContext;
+    }
+
     public Map<String, Method> getFunctionMap() {
         return functionMap;
     }
 
+    public Map<String, Method[]> getOverloadMap() {
+        return overloadMap;
+    }
 
     public Method getContextSetter() {
         return contextSetter;
@@ -8,10 +8,8 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class JSObject {
-    private final ConcurrentHashMap<Class<?>, BindingContext> bindingContextMap = new ConcurrentHashMap<>();
     private final QuickJSContext context;
     private final long pointer;
     private boolean isReleased;
@@ -19,6 +17,7 @@ public class JSObject {
     public JSObject(QuickJSContext context, long pointer) {
         this.context = context;
         this.pointer = pointer;
+        context.onObjectCreated();
     }
 
     public void setProperty(String name, String value) {
@@ -138,6 +137,7 @@ public class JSObject {
 
         context.freeValue(this);
         isReleased = true;
+        context.onObjectReleased();
     }
 
     public void hold() {
@@ -266,7 +266,6 @@ public class JSObject {
         checkReleased();
 
         BindingContext bindingContext = getBindingContext(callbackReceiver.getClass());
-        Map<String, Method> functionMap = bindingContext.getFunctionMap();
 
         Method contextSetter = bindingContext.getContextSetter();
         if (contextSetter != null) {
@@ -278,62 +277,20 @@ public class JSObject {
             }
         }
 
-        if (!functionMap.isEmpty()) {
-            for (Map.Entry<String, Method> entry : functionMap.entrySet()) {
-                String functionName = entry.getKey();
-                final Method functionMethod = entry.getValue();
-                try {
-                    set(functionName, new JSCallFunction() {
-                        @Override
-                        public Object call(Object... args) {
-                            try {
-                                return functionMethod.invoke(callbackReceiver, args);
-                            } catch (Exception e) {
-                                //试试暴力不处理不抛异常
-                                new QuickJSException(
-                                        e.getMessage()).printStackTrace();
-                                return new Object();
-                            }
-                        }
-                    });
-                } catch (Exception e) {
-                    throw new QuickJSException(
-                            e.getMessage());
-                }
+        for (Map.Entry<String, Method[]> entry : bindingContext.getOverloadMap().entrySet()) {
+            String functionName = entry.getKey();
+            try {
+                set(functionName, new MethodCallFunction(callbackReceiver, entry.getValue()));
+            } catch (Exception e) {
+                throw new QuickJSException(
+                        e.getMessage());
             }
         }
     }
 
     BindingContext getBindingContext(Class<?> callbackReceiverClass) throws QuickJSException {
         Objects.requireNonNull(callbackReceiverClass);
-        BindingContext bindingContext = bindingContextMap.get(callbackReceiverClass);
-        if (bindingContext == null) {
-            bindingContext = new BindingContext();
-            Map<String, Method> functionMap = bindingContext.getFunctionMap();
-            for (Method method : callbackReceiverClass.getMethods()) {
-                boolean methodHandled = false;
-                Function fan = method.getAnnotation(Function.class);
-                if (fan != null) {
-                    Function v8Function = method.getAnnotation(Function.class);
-                    String functionName = v8Function.name();
-                    if (functionName.length() == 0) {
-                        functionName = method.getName();
-                    }
-                    if (!functionMap.containsKey(functionName)) {
-                        functionMap.put(functionName, method);
-                        methodHandled = true;
-                    }
-                }
-                if (!methodHandled) {
-                    ContextSetter can = method.getAnnotation(ContextSetter.class);
-                    if (can != null) {
-                        bindingContext.setContextSetter(method);
-                    }
-                }
-            }
-            bindingContextMap.put(callbackReceiverClass, bindingContext);
-        }
-        return bindingContext;
+        return BindingContext.of(callbackReceiverClass);
     }
 
     public String stringify() {
@@ -1,6 +1,10 @@
 package com.whl.quickjs.wrapper;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
 import java.lang.reflect.Array;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -26,34 +30,114 @@ public class JSUtils<T> {
     }
 
     public JSArray toArray(QuickJSContext ctx, List<T> items) {
+        if (items == null || items.isEmpty()) return ctx.createJSArray();
+        if (isPlain(items)) return (JSArray) ctx.parse(new JSONArray(items).toString());
         JSArray array = ctx.createJSArray();
-        if (items == null || items.isEmpty()) return array;
         for (int i = 0; i < items.size(); i++) array.push(items.get(i));
         return array;
     }
 
+    /**
+     * 整个字节数组拼成一个 JSON 串, 一次 JNI 调用完成转换, 元素和原来一样是有符号的 int
+     */
     public JSArray toArray(QuickJSContext ctx, byte[] bytes) {
-        JSArray array = ctx.createJSArray();
-        if (bytes == null || bytes.length == 0) return array;
-        for (byte aByte : bytes) array.push((int) aByte);
-        return array;
+        if (bytes == null || bytes.length == 0) return ctx.createJSArray();
+        return (JSArray) ctx.parse(toJson(bytes));
     }
 
     public JSArray toArray(QuickJSContext ctx, T[] arrays) {
-        JSArray array = ctx.createJSArray();
-        if (arrays == null || arrays.length == 0) return array;
-        for (T t : arrays) {
-            array.push(t);
-        }
-        return array;
+        if (arrays == null || arrays.length == 0) return ctx.createJSArray();
+        return toArray(ctx, Arrays.asList(arrays));
     }
 
     public JSObject toObj(QuickJSContext ctx, Map<String, T> map) {
+        if (map == null || map.isEmpty()) return ctx.createJSObject();
+        if (isPlain(map.values())) return (JSObject) ctx.parse(new JSONObject(map).toString());
         JSObject obj = ctx.createJSObject();
-        if (map == null || map.isEmpty()) return obj;
         for (String s : map.keySet()) {
             obj.set(s, map.get(s));
         }
         return obj;
     }
+
+    /**
+     * JS 端的字节数组(元素为 -128~255 的整数)一次 stringify 取回, 在 Java 端解析, 不再逐个元素 get
+     */
+    public static byte[] toBytes(JSArray array) {
+        return parseBytes(array.toJsonString());
+    }
+
+    /**
+     * 只有字符串/数字/布尔/null 的集合可以直接走 JSON
+     */
+    private static boolean isPlain(Collection<?> values) {
+        for (Object value : values) {
+            if (value != null && !(value instanceof String) && !(value instanceof Number) && !(value instanceof Boolean))
+                return false;
+        }
+        return true;
+    }
+
+    static String toJson(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 4 + 2);
+        sb.append('[');
+        for (int i = 0; i < bytes.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(bytes[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * 只接受整数数组, 元素范围 -128~255; 小数、指数、其它字符都视为错误, 不会静默得到错误的字节
+     *
+     * @throws IllegalArgumentException 格式不对或元素超出范围
+     */
+    static byte[] parseBytes(String json) {
+        if (json == null) return new byte[0];
+        int length = json.length();
+        int i = skipSpace(json, 0);
+        if (i >= length || json.charAt(i) != '[') throw badBytes(json, i);
+        i = skipSpace(json, i + 1);
+        byte[] out = new byte[Math.max(16, length / 3)];
+        int size = 0;
+        if (i < length && json.charAt(i) == ']') {
+            i = skipSpace(json, i + 1);
+            if (i != length) throw badBytes(json, i);
+            return new byte[0];
+        }
+        while (true) {
+            boolean negative = i < length && json.charAt(i) == '-';
+            if (negative) i++;
+            int digits = 0;
+            int value = 0;
+            while (i < length && json.charAt(i) >= '0' && json.charAt(i) <= '9') {
+                value = value * 10 + (json.charAt(i) - '0');
+                if (value > 255) throw badBytes(json, i);
+                digits++;
+                i++;
+            }
+            if (digits == 0 || (negative && value > 128)) throw badBytes(json, i);
+            if (size == out.length) out = Arrays.copyOf(out, out.length * 2);
+            out[size++] = (byte) (negative ? -value : value);
+            i = skipSpace(json, i);
+            if (i >= length) throw badBytes(json, i);
+            char c = json.charAt(i);
+            if (c != ',' && c != ']') throw badBytes(json, i);
+            i = skipSpace(json, i + 1);
+            if (c == ']') break;
+        }
+        if (i != length) throw badBytes(json, i);
+        return Arrays.copyOf(out, size);
+    }
+
+    private static int skipSpace(String json, int i) {
+        while (i < json.length() && json.charAt(i) <= ' ') i++;
+        return i;
+    }
+
+    private static IllegalArgumentException badBytes(String json, int index) {
+        return new IllegalArgumentException("不是字节数组, 位置 " + index + ": " + (json.length() > 64 ? json.substring(0, 64) + "..." : json));
+    }
 }
@@ -0,0 +1,44 @@
+package com.whl.quickjs.wrapper;
+
+import java.lang.reflect.Method;
+
+/**
+ * 通过反射调用 @Function 方法, 有重载时按参数个数选择
+ */
+class MethodCallFunction implements JSCallFunction {
+
+    private final Object receiver;
+    private final Method[] methods;
+    private final int[] arities;
+
+    MethodCallFunction(Object receiver, Method[] methods) {
+        this.receiver = receiver;
+        this.methods = methods;
+        this.arities = new int[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            arities[i] = methods[i].getParameterTypes().length;
+        }
+    }
+
+    @Override
+    public Object call(Object... args) {
+        Method method = methods[0];
+        if (methods.length > 1) {
+            int count = args == null ? 0 : args.length;
+            for (int i = 0; i < methods.length; i++) {
+                if (arities[i] == count) {
+                    method = methods[i];
+                    break;
+                }
+            }
+        }
+        try {
+            return method.invoke(receiver, args);
+        } catch (Exception e) {
+            //试试暴力不处理不抛异常
+            new QuickJSException(
+                    e.getMessage()).printStackTrace();
+            return new Object();
+        }
+    }
+}
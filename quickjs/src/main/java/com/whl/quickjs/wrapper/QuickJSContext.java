@@ -15,8 +15,10 @@ public class QuickJSContext {
         @Override
         public void onRemove(long pointer) {
             freeDupValue(context, pointer);
+            metrics.objectsCleaned.incrementAndGet();
         }
     };
+    private final QuickJSMetrics metrics = new QuickJSMetrics(this);
     private final long currentThreadId;
     private final HashMap<Integer, JSCallFunction> callFunctionMap = new HashMap<>();
     private boolean destroyed = false;
@@ -222,7 +224,9 @@ public class QuickJSContext {
 
     private void putCallFunction(JSCallFunction callFunction) {
         int callFunctionId = callFunction.hashCode();
-        callFunctionMap.put(callFunctionId, callFunction);
+        if (callFunctionMap.put(callFunctionId, callFunction) == null) {
+            metrics.callbacksRegistered.incrementAndGet();
+        }
     }
 
     /**
@@ -245,7 +249,9 @@ public class QuickJSContext {
         checkDestroyed();
 
         JSCallFunction callFunction = callFunctionMap.get(callFunctionId);
+        long start = System.nanoTime();
         Object ret = callFunction.call(args);
+        metrics.callback.add(System.nanoTime() - start);
         if (ret instanceof JSCallFunction) {
             putCallFunction((JSCallFunction) ret);
         }
@@ -267,6 +273,25 @@ public class QuickJSContext {
         return callFunctionMap.size();
     }
 
+    int getPendingCleanerSize() {
+        return nativeCleaner.size();
+    }
+
+    public QuickJSMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 由 JSObject 构造和 release 时调用
+     */
+    void onObjectCreated() {
+        metrics.objectsCreated.incrementAndGet();
+    }
+
+    void onObjectReleased() {
+        metrics.objectsReleased.incrementAndGet();
+    }
+
     /**
      * Native 层注册的 JS 方法里的对象需要在其他地方使用，
      * 调用该方法进行计数加一增加引用，不然 JS 方法执行完会被回收掉。
@@ -320,7 +345,12 @@ public class QuickJSContext {
             }
         }
 
-        return call(context, func.getPointer(), objPointer, args);
+        long start = System.nanoTime();
+        try {
+            return call(context, func.getPointer(), objPointer, args);
+        } finally {
+            metrics.call.add(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -334,6 +364,7 @@ public class QuickJSContext {
 
         dupValue(jsObj);
         nativeCleaner.register(jsObj, jsObj.getPointer());
+        metrics.objectsHeld.incrementAndGet();
     }
 
     public JSObject createJSObject() {
@@ -378,11 +409,11 @@ public class QuickJSContext {
     }
 
     public Object execute(byte[] code, String fileName) {
-        return execute(context, code, fileName, "default");
+        return timedExecute(code, fileName, "default");
     }
 
     public Object gexecute(byte[] code, String moduleExtName) {
-        return execute(context, code, UNKNOWN_FILE, moduleExtName);
+        return timedExecute(code, UNKNOWN_FILE, moduleExtName);
     }
 
     public Object execute(byte[] code, String fileName, String moduleExtName) {
@@ -392,7 +423,16 @@ public class QuickJSContext {
         if (TextUtils.isEmpty(moduleExtName)) {
             moduleExtName = "default";
         }
-        return execute(context, code, fileName, moduleExtName);
+        return timedExecute(code, fileName, moduleExtName);
+    }
+
+    private Object timedExecute(byte[] code, String fileName, String moduleExtName) {
+        long start = System.nanoTime();
+        try {
+            return execute(context, code, fileName, moduleExtName);
+        } finally {
+            metrics.execute.add(System.nanoTime() - start);
+        }
     }
 
     public Object evaluate(String script) {
@@ -402,7 +442,7 @@ public class QuickJSContext {
     public Object evaluate(String script, String fileName) {
         checkSameThread();
         checkDestroyed();
-        return evaluate(context, script, fileName, "default", false);
+        return timedEvaluate(script, fileName, "default", false);
     }
 
     public Object evaluateModule(String script, String fileName, String moduleExtName) {
@@ -412,11 +452,20 @@ public class QuickJSContext {
         if (TextUtils.isEmpty(moduleExtName)) {
             moduleExtName = "default";
         }
-        return evaluate(context, script, fileName, moduleExtName, true);
+        return timedEvaluate(script, fileName, moduleExtName, true);
     }
 
     public Object evaluateModule(String script, String fileName) {
-        return evaluate(context, script, fileName, "default", true);
+        return timedEvaluate(script, fileName, "default", true);
+    }
+
+    private Object timedEvaluate(String script, String fileName, String moduleExtName, boolean isModule) {
+        long start = System.nanoTime();
+        try {
+            return evaluate(context, script, fileName, moduleExtName, isModule);
+        } finally {
+            metrics.evaluate.add(System.nanoTime() - start);
+        }
     }
 
     public Object evaluateModule(String script) {
@@ -0,0 +1,167 @@
+package com.whl.quickjs.wrapper;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个 QuickJSContext 的统计数据, 在 JS 线程上累加, 可以在任意线程读取
+ * 对象数都是累计的原始计数: 没有 hold 也没有 release 的包装对象被 GC 回收时无法得知, 所以不计算"存活对象数",
+ * 只有 hold 过的对象由 NativeCleaner 跟踪, getPendingCleanerRefs 是准确的
+ */
+public class QuickJSMetrics {
+
+    public static class Timing {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void add(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalMillis() {
+            return totalNanos.get() / 1000000;
+        }
+
+        public long getMaxMillis() {
+            return maxNanos.get() / 1000000;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", getCount());
+            json.put("totalMs", getTotalMillis());
+            json.put("maxMs", getMaxMillis());
+            return json;
+        }
+
+        @Override
+        public String toString() {
+            return getCount() + " 次 / " + getTotalMillis() + "ms (最长 " + getMaxMillis() + "ms)";
+        }
+    }
+
+    final AtomicLong objectsCreated = new AtomicLong();
+    final AtomicLong objectsReleased = new AtomicLong();
+    final AtomicLong objectsHeld = new AtomicLong();
+    final AtomicLong objectsCleaned = new AtomicLong();
+    final AtomicLong callbacksRegistered = new AtomicLong();
+    final Timing evaluate = new Timing();
+    final Timing execute = new Timing();
+    final Timing call = new Timing();
+    final Timing callback = new Timing();
+    private final QuickJSContext context;
+
+    QuickJSMetrics(QuickJSContext context) {
+        this.context = context;
+    }
+
+    /**
+     * @return 创建过的 JSObject 包装对象(含 JSArray/JSFunction)数量
+     */
+    public long getObjectsCreated() {
+        return objectsCreated.get();
+    }
+
+    /**
+     * @return 调用过 release 的 JSObject 数量
+     */
+    public long getObjectsReleased() {
+        return objectsReleased.get();
+    }
+
+    /**
+     * @return 调用过 hold 的 JSObject 数量
+     */
+    public long getObjectsHeld() {
+        return objectsHeld.get();
+    }
+
+    /**
+     * @return hold 后由 NativeCleaner 释放掉的对象数量
+     */
+    public long getObjectsCleaned() {
+        return objectsCleaned.get();
+    }
+
+    /**
+     * @return hold 过、还在等待 NativeCleaner 释放的对象数量
+     */
+    public int getPendingCleanerRefs() {
+        return context.getPendingCleanerSize();
+    }
+
+    /**
+     * @return 当前登记在上下文里的 Java 回调(JSCallFunction)数量
+     */
+    public int getLiveCallbacks() {
+        return context.getCallFunctionMapSize();
+    }
+
+    /**
+     * @return 累计登记过的 Java 回调数量
+     */
+    public long getCallbacksRegistered() {
+        return callbacksRegistered.get();
+    }
+
+    public Timing getEvaluate() {
+        return evaluate;
+    }
+
+    public Timing getExecute() {
+        return execute;
+    }
+
+    public Timing getCall() {
+        return call;
+    }
+
+    /**
+     * @return JS 调用 Java 回调的次数和耗时
+     */
+    public Timing getCallback() {
+        return callback;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("objectsCreated", getObjectsCreated());
+            json.put("objectsReleased", getObjectsReleased());
+            json.put("objectsHeld", getObjectsHeld());
+            json.put("objectsCleaned", getObjectsCleaned());
+            json.put("pendingCleanerRefs", getPendingCleanerRefs());
+            json.put("liveCallbacks", getLiveCallbacks());
+            json.put("callbacksRegistered", getCallbacksRegistered());
+            json.put("evaluate", evaluate.toJson());
+            json.put("execute", execute.toJson());
+            json.put("call", call.toJson());
+            json.put("callback", callback.toJson());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return "对象 创建 " + getObjectsCreated() + ", release " + getObjectsReleased()
+                + ", hold " + getObjectsHeld() + ", 已回收 " + getObjectsCleaned() + ", 待回收 " + getPendingCleanerRefs()
+                + ", 回调 " + getLiveCallbacks() + "/" + getCallbacksRegistered()
+                + "\nevaluate " + evaluate
+                + "\nexecute " + execute
+                + "\ncall " + call
+                + "\ncallback " + callback;
+    }
+}
@@ -0,0 +1,129 @@
+package com.whl.quickjs.wrapper;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * JS -> Java 调用的分发开销: 改动前(每次 Method.invoke, 未 setAccessible)和现在的反射调用(MethodCallFunction), 以及 bind 时的注解扫描
+ * 只打印耗时不做断言, 结果随机器变化; 正确性部分检查重载按参数个数选择
+ */
+public class BindingDispatchBenchmarkTest {
+
+    private static final int WARMUP = 200_000;
+    private static final int ROUNDS = 2_000_000;
+    private static final int TRIALS = 5;
+
+    public static class Receiver {
+        @Function
+        public String joinUrl(String parent, String child) {
+            return child;
+        }
+
+        @Function
+        public String encrypt(String data, String key) {
+            return "2";
+        }
+
+        @Function
+        public String encrypt(String data, String key, String options) {
+            return "3";
+        }
+    }
+
+    private static JSCallFunction before(final Object receiver, String name) throws Exception {
+        // 改动前 bind 生成的回调: 没有 setAccessible, 每次都做访问检查
+        final Method method = Receiver.class.getMethod(name, String.class, String.class);
+        return new JSCallFunction() {
+            @Override
+            public Object call(Object... args) {
+                try {
+                    return method.invoke(receiver, args);
+                } catch (Exception e) {
+                    return new Object();
+                }
+            }
+        };
+    }
+
+    private static long run(JSCallFunction function, int rounds) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int i = 0; i < rounds; i++) {
+            Object result = function.call("https://a.com/", (i & 1) == 0 ? "b" : "c");
+            sink += ((String) result).length();
+        }
+        long cost = System.nanoTime() - start;
+        assertEquals(rounds, sink);
+        return cost;
+    }
+
+    @Test
+    public void callOverhead() throws Exception {
+        Receiver receiver = new Receiver();
+        JSCallFunction before = before(receiver, "joinUrl");
+        JSCallFunction reflect = new MethodCallFunction(receiver, BindingContext.of(Receiver.class).getOverloadMap().get("joinUrl"));
+        JSCallFunction[] functions = {before, reflect};
+        String[] names = {"改动前 Method.invoke", "MethodCallFunction"};
+        for (JSCallFunction function : functions) {
+            run(function, WARMUP);
+        }
+        // 两种轮流跑几次取最好的一次, 减少 JIT 和调用顺序的影响
+        long[] best = new long[functions.length];
+        for (int trial = 0; trial < TRIALS; trial++) {
+            for (int i = 0; i < functions.length; i++) {
+                long cost = run(functions[i], ROUNDS);
+                best[i] = trial == 0 ? cost : Math.min(best[i], cost);
+            }
+        }
+        for (int i = 0; i < functions.length; i++) {
+            System.out.printf("%-22s %6.1f ns/call%n", names[i], best[i] / (double) ROUNDS);
+        }
+    }
+
+    @Test
+    public void bindScanCost() {
+        int rounds = 20_000;
+        for (int i = 0; i < rounds; i++) {
+            scan(Receiver.class);
+            BindingContext.of(Receiver.class);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            scan(Receiver.class);
+        }
+        long scan = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            BindingContext.of(Receiver.class);
+        }
+        long cached = System.nanoTime() - start;
+        System.out.printf("每次 bind 扫描注解 %.1f us, 按类缓存 %.3f us%n", scan / 1000.0 / rounds, cached / 1000.0 / rounds);
+    }
+
+    // 改动前每个新上下文 bind 时都要做的注解扫描
+    private static Map<String, Method> scan(Class<?> clz) {
+        Map<String, Method> map = new HashMap<>();
+        for (Method method : clz.getMethods()) {
+            Function function = method.getAnnotation(Function.class);
+            if (function != null && !map.containsKey(method.getName()))
+                map.put(method.getName(), method);
+        }
+        return map;
+    }
+
+    @Test
+    public void overloadByArity() {
+        // 改动前只绑定扫描到的第一个重载, 另一种参数个数的调用会失败
+        JSCallFunction encrypt = new MethodCallFunction(new Receiver(), BindingContext.of(Receiver.class).getOverloadMap().get("encrypt"));
+        assertEquals("2", encrypt.call("a", "b"));
+        assertEquals("3", encrypt.call("a", "b", "c"));
+        // 参数个数都对不上时和改动前一样返回空对象, 不抛回 JS
+        assertSame(Object.class, encrypt.call("a").getClass());
+    }
+}
@@ -0,0 +1,98 @@
+package com.whl.quickjs.wrapper;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * 代理图片、m3u8 这类几百 KB 的 buffer==1 响应在 Java 端的编解码开销
+ * 改动前每个字节一次 JNI(push 或 get), 取回时再拼 JSONArray 逐个 optInt; 现在整段一次 parse / stringify
+ * JVM 上没有 quickjs 的 so, 这里比较两种做法在 Java 端的开销(装箱、JSONArray), 改动前还要再加上每个字节一次 JNI 调用
+ */
+public class ByteMarshalBenchmarkTest {
+
+    private static final int SIZE = 300 * 1024;
+    private static final int TRIALS = 20;
+
+    private static byte[] payload() {
+        byte[] bytes = new byte[SIZE];
+        new Random(1).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void roundTrip() {
+        byte[] bytes = payload();
+        assertArrayEquals(bytes, JSUtils.parseBytes(JSUtils.toJson(bytes)));
+        assertArrayEquals(new byte[0], JSUtils.parseBytes("[]"));
+        assertArrayEquals(new byte[0], JSUtils.parseBytes(" [ ] "));
+        // JS 里拼的 Uint8 数据是 0~255, 和有符号的一样按低 8 位还原
+        assertArrayEquals(new byte[]{-1, -128, 127, 0}, JSUtils.parseBytes("[255,128,127,0]"));
+        assertArrayEquals(new byte[]{-1, 2}, JSUtils.parseBytes("[ -1 , 2 ]"));
+    }
+
+    @Test
+    public void rejectsMalformed() {
+        String[] bad = {"", "1,2", "[1.5]", "[1e3]", "[256]", "[-129]", "[1,]", "[,1]", "[1 2]", "[1,2", "[a]", "[\"1\"]", "[1]x", "[-]", "[null]"};
+        for (String json : bad) {
+            try {
+                JSUtils.parseBytes(json);
+                fail("应当拒绝 " + json);
+            } catch (IllegalArgumentException ignored) {
+            }
+        }
+    }
+
+    // 改动前 Connect.success: for (byte b : body) array.push((int) b), 每个元素装箱后一次 JNI
+    private static List<Object> encodeBefore(byte[] bytes) {
+        List<Object> pushed = new ArrayList<>(bytes.length);
+        for (byte b : bytes) pushed.add((int) b);
+        return pushed;
+    }
+
+    // 改动前 JsSpider.getStream: toJsonArray 逐个 get(每个一次 JNI)放进 JSONArray, 再逐个 optInt
+    private static byte[] decodeBefore(List<Object> elements) {
+        JSONArray array = new JSONArray();
+        for (Object one : elements) array.put(one);
+        byte[] bytes = new byte[array.length()];
+        for (int i = 0; i < array.length(); i++) bytes[i] = (byte) array.optInt(i);
+        return bytes;
+    }
+
+    @Test
+    public void marshalCost() {
+        byte[] bytes = payload();
+        String json = JSUtils.toJson(bytes);
+        List<Object> elements = encodeBefore(bytes);
+        assertArrayEquals(bytes, decodeBefore(elements));
+        for (int i = 0; i < TRIALS; i++) {
+            JSUtils.parseBytes(JSUtils.toJson(bytes));
+            decodeBefore(encodeBefore(bytes));
+        }
+        long[] before = {Long.MAX_VALUE, Long.MAX_VALUE};
+        long[] after = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int i = 0; i < TRIALS; i++) {
+            long start = System.nanoTime();
+            encodeBefore(bytes);
+            before[0] = Math.min(before[0], System.nanoTime() - start);
+            start = System.nanoTime();
+            decodeBefore(elements);
+            before[1] = Math.min(before[1], System.nanoTime() - start);
+            start = System.nanoTime();
+            JSUtils.toJson(bytes);
+            after[0] = Math.min(after[0], System.nanoTime() - start);
+            start = System.nanoTime();
+            JSUtils.parseBytes(json);
+            after[1] = Math.min(after[1], System.nanoTime() - start);
+        }
+        System.out.printf("%d KB, Java 端开销(不含 JNI):%n", SIZE / 1024);
+        System.out.printf("改动前 逐个元素  编码 %6.2f ms, 解码 %6.2f ms, JNI 调用各 %d 次%n", before[0] / 1e6, before[1] / 1e6, SIZE);
+        System.out.printf("整段 JSON       编码 %6.2f ms, 解码 %6.2f ms, JNI 调用各 1 次, JSON %d KB%n", after[0] / 1e6, after[1] / 1e6, json.length() / 1024);
+    }
+}